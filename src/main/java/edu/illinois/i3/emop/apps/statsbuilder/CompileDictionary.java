@@ -0,0 +1,77 @@
+package edu.illinois.i3.emop.apps.statsbuilder;
+
+import com.google.common.base.Joiner;
+import com.martiansoftware.jsap.*;
+import com.martiansoftware.jsap.stringparsers.FileStringParser;
+import edu.illinois.i3.emop.apps.statsbuilder.dict.DictionarySnapshot;
+import edu.illinois.i3.emop.apps.statsbuilder.dict.LoadedDictionary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+
+/**
+ * Compiles dictionary word lists into dictionary snapshots, which can be used with the -d option of {@link Main}
+ * instead of the word lists to speed up loading
+ */
+public class CompileDictionary {
+
+    private static final Logger log = LoggerFactory.getLogger(CompileDictionary.class);
+
+    public static void main(String[] args) throws Exception {
+        JSAPResult cmdLine = parseArguments(args);
+
+        File[] wordLists = cmdLine.getFileArray("dictionary");
+        File outputDir = cmdLine.getFile("output-dir");
+
+        for (File wordList : wordLists) {
+            String name = LoadedDictionary.getDictionaryName(wordList);
+            File dir = outputDir != null ? outputDir : wordList.getAbsoluteFile().getParentFile();
+            File snapshotFile = new File(dir, name + DictionarySnapshot.EXTENSION);
+
+            log.info("Compiling dictionary: {} -> {}", wordList, snapshotFile);
+            DictionarySnapshot snapshot = DictionarySnapshot.compile(wordList, name, snapshotFile);
+
+            log.info("{}: {} words, bins: [{}]", name, snapshot.getWordCount(), Joiner.on(",").join(snapshot.getWordLengthBins()));
+        }
+
+        log.info("Finished");
+    }
+
+    private static Parameter[] getApplicationParameters() {
+        Parameter outputDir = new FlaggedOption("output-dir")
+                .setStringParser(
+                        FileStringParser.getParser()
+                                .setMustBeDirectory(true)
+                                .setMustExist(true))
+                .setRequired(false)
+                .setShortFlag('o')
+                .setLongFlag("output-dir")
+                .setHelp("The directory where the snapshots are created (defaults to the directory of each word list)");
+
+        Parameter dictionary = new UnflaggedOption("dictionary")
+                .setStringParser(
+                        FileStringParser.getParser()
+                                .setMustBeFile(true)
+                                .setMustExist(true))
+                .setRequired(true)
+                .setGreedy(true)
+                .setHelp("The dictionary word lists to compile (one word per line, UTF-8 encoded)");
+
+        return new Parameter[] { outputDir, dictionary };
+    }
+
+    private static String getApplicationHelp() {
+        return "Compiles dictionary word lists into binary dictionary snapshots (<name>" + DictionarySnapshot.EXTENSION + ")";
+    }
+
+    private static JSAPResult parseArguments(String[] args) throws JSAPException {
+        SimpleJSAP jsap = new SimpleJSAP("CompileDictionary", getApplicationHelp(), getApplicationParameters());
+        JSAPResult result = jsap.parse(args);
+
+        if (jsap.messagePrinted())
+            System.exit(1);
+
+        return result;
+    }
+}
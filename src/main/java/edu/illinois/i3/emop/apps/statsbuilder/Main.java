@@ -3,38 +3,60 @@ package edu.illinois.i3.emop.apps.statsbuilder;
 
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
 import com.martiansoftware.jsap.*;
 import com.martiansoftware.jsap.stringparsers.EnumeratedStringParser;
 import com.martiansoftware.jsap.stringparsers.FileStringParser;
+import edu.illinois.i3.emop.apps.statsbuilder.dict.DictionaryEngine;
+import edu.illinois.i3.emop.apps.statsbuilder.dict.DictionaryIndex;
+import edu.illinois.i3.emop.apps.statsbuilder.dict.LoadedDictionary;
+import edu.illinois.i3.emop.apps.statsbuilder.dict.VerdictCache;
+import edu.illinois.i3.emop.apps.statsbuilder.dict.WordDictionary;
+import edu.illinois.i3.emop.apps.statsbuilder.dict.WordLengthStats;
 import edu.illinois.i3.emop.apps.statsbuilder.exceptions.PageParserException;
 import edu.illinois.i3.emop.apps.statsbuilder.hocr.HOCRPage;
 import edu.illinois.i3.emop.apps.statsbuilder.hocr.HOCRPageStats;
+import edu.illinois.i3.emop.apps.statsbuilder.ocrxml.OCRXMLBookReader;
+import edu.illinois.i3.emop.apps.statsbuilder.ocrxml.OCRXMLPage;
+import edu.illinois.i3.emop.apps.statsbuilder.pipeline.*;
 import edu.illinois.i3.emop.apps.statsbuilder.stats.Bin;
-import edu.illinois.i3.emop.apps.statsbuilder.stats.BinFactory;
+import edu.illinois.i3.emop.apps.statsbuilder.stats.HyperLogLog;
+import edu.illinois.i3.emop.apps.statsbuilder.stats.MisspellingLexicon;
+import edu.illinois.i3.emop.apps.statsbuilder.stats.SpaceSaving;
+import edu.illinois.i3.emop.apps.statsbuilder.stats.UniqueTokenSketches;
+import edu.illinois.i3.emop.apps.statsbuilder.stats.WordLengthBins;
+import edu.illinois.i3.emop.apps.statsbuilder.txt.TxtEngine;
 import edu.illinois.i3.emop.apps.statsbuilder.txt.TxtPage;
-import edu.illinois.i3.spellcheck.engine.SpellDictionary;
-import edu.illinois.i3.spellcheck.engine.SpellDictionaryHashMap;
-import opennlp.tools.tokenize.SimpleTokenizer;
-import org.apache.commons.math3.stat.descriptive.AggregateSummaryStatistics;
 import org.apache.commons.math3.stat.descriptive.StatisticalSummary;
-import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.supercsv.encoder.CsvEncoder;
 import org.supercsv.encoder.DefaultCsvEncoder;
+import org.supercsv.io.CsvListWriter;
 import org.supercsv.io.CsvMapWriter;
+import org.supercsv.io.ICsvListWriter;
 import org.supercsv.io.ICsvMapWriter;
 import org.supercsv.prefs.CsvPreference;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -49,47 +71,126 @@ public class Main {
 
     private static final Logger log = LoggerFactory.getLogger(Main.class);
 
+    private static final String MANIFEST_EXTENSION = ".manifest";
+
+    // the number of misspellings written for each document by --top-misspellings
+    private static final int TOP_MISSPELLINGS = 10;
+    private static final String[] TOP_MISSPELLINGS_HEADER = { "docId", "rank", "misspelling", "count", "error", "guaranteed" };
+
     public enum DocumentFormat {
         TXT, HOCR, GALEXML
     }
 
+    public enum OutputLevel {
+        PAGE, DOCUMENT, BOTH
+    }
+
     public static void main(String[] args) throws Exception {
         JSAPResult cmdLine = parseArguments(args);
 
         File directory = cmdLine.getFile("directory");
-        log.info("Using data directory: {}", directory);
+        final String fileList = cmdLine.getString("file-list");
+        if (directory == null && fileList == null) {
+            log.error("Either a data directory or a file list (--file-list) must be specified");
+            System.exit(1);
+        }
+
+        if (directory != null)
+            log.info("Using data directory: {}", directory);
+
+        int walkThreadCount = cmdLine.getInt("walk-threads");
 
         File[] dictFiles = cmdLine.getFileArray("dictionary");
-        SpellDictionary[] dictionaries = getDictionaries(dictFiles);
+        DictionaryEngine dictEngine = DictionaryEngine.valueOf(cmdLine.getString("dictionary-engine").toUpperCase());
+        TxtEngine txtEngine = TxtEngine.valueOf(cmdLine.getString("txt-engine").toUpperCase());
+        LoadedDictionary[] loadedDictionaries = LoadedDictionary.loadAll(dictFiles, dictEngine);
+        WordDictionary[] dictionaries = new WordDictionary[loadedDictionaries.length];
+        for (int i = 0; i < loadedDictionaries.length; i++)
+            dictionaries[i] = loadedDictionaries[i].getDictionary();
 
         File[] replacementRuleFiles = cmdLine.getFileArray("replacements");
         Map<String, String> replacementRules = getReplacementRules(replacementRuleFiles);
 
         String output = cmdLine.getString("output");
         log.info("Output file: {}", output);
-        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output), Charsets.UTF_8));
 
         final DocumentFormat format = DocumentFormat.valueOf(cmdLine.getString("format").toUpperCase());
         String filter = cmdLine.getString("filter");
 
-        // compute word length bins based on dictionary statistics
-        Collection<SummaryStatistics> dictStats = new ArrayList<>();
-        for (File dictFile : dictFiles) {
-            try (Reader reader = new InputStreamReader(new FileInputStream(dictFile), Charsets.UTF_8)) {
-                dictStats.add(createSummaryDictStats(reader));
-            }
+        final Shard shard = cmdLine.contains("shard") ? Shard.parse(cmdLine.getString("shard")) : null;
+        if (shard != null)
+            log.info("Processing shard: {}", shard);
+
+        final OutputLevel level = OutputLevel.valueOf(cmdLine.getString("level").toUpperCase());
+        String documentOutput = cmdLine.getString("document-output");
+        final File documentPagesDir = cmdLine.getFile("document-pages-dir");
+        boolean resume = cmdLine.getBoolean("resume");
+        if (level == OutputLevel.BOTH && documentOutput == null) {
+            log.error("The output file for the document statistics (--document-output) must be specified with --level both");
+            System.exit(1);
+        }
+        if (level != OutputLevel.PAGE && resume) {
+            log.error("Resuming a run is only supported with --level page");
+            System.exit(1);
+        }
+        if (format == DocumentFormat.GALEXML && resume) {
+            log.error("Resuming a run is not supported for GALEXML books");
+            System.exit(1);
+        }
+        if (documentPagesDir != null && level == OutputLevel.PAGE) {
+            log.error("Per-document page statistics (--document-pages-dir) require --level document or both");
+            System.exit(1);
         }
 
-        StatisticalSummary aggDictStats = AggregateSummaryStatistics.aggregate(dictStats);
-        Bin[] wordLengthBins = getStatisticalBins(aggDictStats, new BinFactory<Integer>() {
-            @Override
-            public Bin<Integer> createBin(Double min, Double max) {
-                return new Bin<>(
-                        min != null ? (int) Math.ceil(min) : null,
-                        max != null ? (int) Math.ceil(max) : null
-                );
-            }
-        });
+        String topMisspellingsOutput = cmdLine.getString("top-misspellings");
+        if (topMisspellingsOutput != null && level == OutputLevel.PAGE) {
+            log.error("The most frequent misspellings of each document (--top-misspellings) require --level document or both");
+            System.exit(1);
+        }
+
+        boolean confidenceStats = cmdLine.getBoolean("confidence");
+        if (confidenceStats && format != DocumentFormat.HOCR) {
+            log.error("The confidence statistics (--confidence) are only available for hOCR documents");
+            System.exit(1);
+        }
+
+        int uniqueSketchPrecision = cmdLine.getInt("unique-sketch");
+        String sketchOutput = cmdLine.getString("sketch-output");
+        if (uniqueSketchPrecision != 0 &&
+                (uniqueSketchPrecision < HyperLogLog.MIN_PRECISION || uniqueSketchPrecision > HyperLogLog.MAX_PRECISION)) {
+            log.error("Invalid sketch precision {} (expected {} to {})", uniqueSketchPrecision,
+                    HyperLogLog.MIN_PRECISION, HyperLogLog.MAX_PRECISION);
+            System.exit(1);
+        }
+        if (sketchOutput != null && uniqueSketchPrecision == 0) {
+            log.error("Writing the unique token sketches (--sketch-output) requires --unique-sketch");
+            System.exit(1);
+        }
+        if (sketchOutput != null && resume) {
+            log.error("The unique token sketches of the whole corpus (--sketch-output) cannot be collected when resuming a run");
+            System.exit(1);
+        }
+
+        File columnarOutput = cmdLine.getFile("columnar-output");
+        if (columnarOutput != null && resume) {
+            log.error("The columnar output (--columnar-output) cannot be written when resuming a run");
+            System.exit(1);
+        }
+
+        final File misspellingsFile = cmdLine.getFile("misspellings");
+        long misspellingsMemory = cmdLine.getLong("misspellings-memory");
+        if (misspellingsFile != null && resume) {
+            log.error("The misspellings of the whole corpus (--misspellings) cannot be collected when resuming a run");
+            System.exit(1);
+        }
+
+        // compute word length bins based on dictionary statistics
+        Collection<WordLengthStats> dictStats = new ArrayList<>();
+        for (LoadedDictionary loadedDictionary : loadedDictionaries)
+            dictStats.add(loadedDictionary.getWordLengthStats());
+
+        StatisticalSummary aggDictStats = WordLengthStats.aggregate(dictStats);
+        Bin[] wordLengthBins = WordLengthBins.fromStatistics(aggDictStats);
 
         if (log.isDebugEnabled()) {
             log.debug("n: {}", aggDictStats.getN());
@@ -100,38 +201,233 @@ public class Main {
             log.debug("bins: [{}]", Joiner.on(",").join(wordLengthBins));
         }
 
+        DictionaryIndex dictionaryIndex = DictionaryIndex.build(dictionaries);
+        int verdictCacheSize = cmdLine.getInt("verdict-cache");
+        if (verdictCacheSize > 0)
+            dictionaryIndex = dictionaryIndex.withVerdictCache(verdictCacheSize);
+
         final ProcessingOptions processingOptions = new ProcessingOptions();
-        processingOptions.setDictionaries(dictionaries);
+        processingOptions.setDictionaryIndex(dictionaryIndex);
         processingOptions.setReplacementRules(replacementRules);
         processingOptions.setWordLengthBins(wordLengthBins);
+        processingOptions.setUniqueSketchPrecision(uniqueSketchPrecision);
+        processingOptions.setConfidenceStats(confidenceStats);
+        processingOptions.setTxtEngine(txtEngine);
+
+        // the manifest records the pages written to the output, so that an interrupted run can be resumed
+        File outputFile = new File(output);
+        File manifestFile = new File(output + MANIFEST_EXTENSION);
+        String fingerprint = computeFingerprint(format, filter, shard, level, confidenceStats, loadedDictionaries, replacementRules, wordLengthBins);
+        boolean resumeOutput = resume && outputFile.exists() && manifestFile.exists();
+        if (resume && !resumeOutput)
+            log.warn("No output and manifest found for {} - nothing to resume, starting from scratch", output);
 
         final CsvEncoder csvEncoder = new DefaultCsvEncoder();
         final CsvPreference csvPreference =
                 new CsvPreference.Builder(CsvPreference.EXCEL_PREFERENCE)
                         .useEncoder(csvEncoder).build();
 
-        try (ICsvMapWriter csvWriter = new CsvMapWriter(writer, csvPreference)) {
-            List<String> columns = processingOptions.getCsvColumns(format);
-            columns.add(0, "docId");
-            final String[] header = columns.toArray(new String[columns.size()]);
+        int threadCount = cmdLine.getInt("threads");
+        boolean preserveOrder = !cmdLine.getBoolean("unordered");
+        log.info("Processing threads: {}", threadCount);
+
+        int ioThreadCount = cmdLine.getInt("io-threads");
+        final long prefetchBytes = cmdLine.getLong("prefetch");
+        if (ioThreadCount > 0)
+            log.info("Read-ahead: {} I/O threads, {} bytes", ioThreadCount, prefetchBytes);
+
+        final ExecutorService documentPagesWriters = documentPagesDir != null ?
+                Executors.newFixedThreadPool(Math.max(1, ioThreadCount)) : null;
+        final List<Future<?>> documentPagesWrites = Lists.newArrayList();
+
+        List<String> columns = processingOptions.getCsvColumns(format);
+        columns.add(0, "docId");
+        String[] header = columns.toArray(new String[columns.size()]);
+
+        // document rows have the number of pages in place of the page number
+        columns.set(columns.indexOf("page"), "pages");
+        String[] documentHeader = columns.toArray(new String[columns.size()]);
+
+        String[] dictionaryNames = dictionaryIndex.getNames();
+        boolean hocr = format == DocumentFormat.HOCR;
+        PageStatsColumns pageColumns = new PageStatsColumns(header, wordLengthBins, dictionaryNames, hocr, false);
+        PageStatsColumns documentColumns = new PageStatsColumns(documentHeader, wordLengthBins, dictionaryNames, hocr, true);
+        // the rows of the output are the documents' when only document statistics are output
+        PageStatsColumns outputColumns = level == OutputLevel.DOCUMENT ? documentColumns : pageColumns;
+
+        try (final ProcessedFileManifest manifest = resumeOutput ?
+                ProcessedFileManifest.resume(manifestFile, fingerprint) : ProcessedFileManifest.create(manifestFile, fingerprint);
+             final FileOutputStream outputStream = openOutput(outputFile, manifest.getCommittedOutputLength());
+             final PageStatsCsvWriter csvWriter = new PageStatsCsvWriter(new BufferedWriter(
+                     new OutputStreamWriter(outputStream, Charsets.UTF_8)), csvPreference, outputColumns);
+             PageStatsCsvWriter separateDocumentCsvWriter = level == OutputLevel.BOTH ? new PageStatsCsvWriter(new BufferedWriter(
+                     new OutputStreamWriter(new FileOutputStream(documentOutput), Charsets.UTF_8)), csvPreference, documentColumns) : null;
+             final ICsvMapWriter topMisspellingsWriter = topMisspellingsOutput != null ? new CsvMapWriter(new BufferedWriter(
+                     new OutputStreamWriter(new FileOutputStream(topMisspellingsOutput), Charsets.UTF_8)), csvPreference) : null;
+             final ICsvListWriter sketchWriter = sketchOutput != null ? new CsvListWriter(new BufferedWriter(
+                     new OutputStreamWriter(new FileOutputStream(sketchOutput), Charsets.UTF_8)), csvPreference) : null;
+             final PageStatsColumnarWriter columnarWriter = columnarOutput != null ?
+                     new PageStatsColumnarWriter(new FileOutputStream(columnarOutput), outputColumns) : null;
+             final MisspellingLexicon misspellingLexicon = misspellingsFile != null ?
+                     new MisspellingLexicon(misspellingsMemory, misspellingsFile.getAbsoluteFile().getParentFile()) : null;
+             final FilePrefetcher prefetcher = ioThreadCount > 0 ? new FilePrefetcher(ioThreadCount, prefetchBytes) : null) {
+            final PageStatsCsvWriter documentCsvWriter = level == OutputLevel.BOTH ? separateDocumentCsvWriter : csvWriter;
+            if (manifest.getCommittedOutputLength() == 0)
+                csvWriter.writeHeader();
+            if (level == OutputLevel.BOTH)
+                documentCsvWriter.writeHeader();
+            if (topMisspellingsWriter != null)
+                topMisspellingsWriter.writeHeader(TOP_MISSPELLINGS_HEADER);
+            if (sketchWriter != null)
+                sketchWriter.writeHeader(UniqueTokenSketches.CSV_HEADER);
+
+            final UniqueTokenSketches corpusSketches = uniqueSketchPrecision > 0 ? new UniqueTokenSketches(uniqueSketchPrecision) : null;
+
+            final DocumentTracker documentTracker = level == OutputLevel.PAGE ? null :
+                    new DocumentTracker(documentPagesDir != null, walkThreadCount <= 1, new DocumentTracker.DocumentHandler() {
+                        @Override
+                        public void handle(final OCRDocument<OCRPageStats> document) throws IOException {
+                            documentCsvWriter.write(document.getDocId(), document.getDocumentStats());
+
+                            if (columnarWriter != null && level == OutputLevel.DOCUMENT)
+                                columnarWriter.write(document.getDocId(), document.getDocumentStats());
+
+                            if (topMisspellingsWriter != null)
+                                writeTopMisspellings(document, topMisspellingsWriter);
+
+                            if (sketchWriter != null)
+                                sketchWriter.write(document.getDocumentStats().getUniqueSketches().toCsvRow(document.getDocId()));
+
+                            if (documentPagesWriters != null)
+                                documentPagesWrites.add(documentPagesWriters.submit(new Callable<Void>() {
+                                    @Override
+                                    public Void call() throws IOException {
+                                        writeDocumentPages(document, documentPagesDir);
+                                        return null;
+                                    }
+                                }));
+                        }
+                    });
 
-            csvWriter.writeHeader(header);
+            final ParallelPageProcessor.ResultHandler csvResultHandler = new ParallelPageProcessor.ResultHandler() {
+                @Override
+                public void handle(String docId, PageInput pageInput, OCRPageStats pageStats) throws IOException {
+                    if (pageStats != null && level != OutputLevel.DOCUMENT) {
+                        csvWriter.write(docId, pageStats);
+                        if (columnarWriter != null)
+                            columnarWriter.write(docId, pageStats);
+                    }
 
-            final Pattern filterPattern = Pattern.compile(filter);
-            Path path = FileSystems.getDefault().getPath(directory.getAbsolutePath());
-            Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
-                int count = 1;
+                    if (documentTracker != null)
+                        documentTracker.pageCompleted(docId, pageStats);
 
-                @Override
-                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                    Matcher matcher = filterPattern.matcher(file.toString());
-                    if (matcher.find()) {
-                        if (matcher.groupCount() == 0) {
-                            log.error("No groups matched the specified file filter - cannot compute document id!");
-                            return FileVisitResult.TERMINATE;
+                    if (pageStats == null)
+                        return;
+
+                    if (misspellingLexicon != null)
+                        misspellingLexicon.add(pageStats.getMisspellings(), pageStats.getMisspellingCountsArray());
+
+                    if (corpusSketches != null)
+                        corpusSketches.merge(pageStats.getUniqueSketches());
+
+                    manifest.add(pageInput.getId(), pageInput.getSize(), pageInput.getLastModified());
+                    if (manifest.isCommitDue())
+                        commitOutput(csvWriter, outputStream, manifest);
+                }
+            };
+
+            try (final ParallelPageProcessor pageProcessor = new ParallelPageProcessor(threadCount, preserveOrder, csvResultHandler)) {
+                final Pattern filterPattern = Pattern.compile(filter);
+                if (filterPattern.matcher("").groupCount() == 0) {
+                    log.error("No groups matched the specified file filter - cannot compute document id!");
+                    System.exit(1);
+                }
+
+                // may be called concurrently, depending on how the files are enumerated
+                PageFileHandler pageFileHandler = new PageFileHandler() {
+                    int count = 1;
+
+                    @Override
+                    public boolean handle(Path file, BasicFileAttributes attrs) throws IOException {
+                        if (ArchiveReader.getArchiveType(file) != null) {
+                            ArchiveReader.read(file, attrs, new ArchiveReader.EntryHandler() {
+                                @Override
+                                public boolean handle(Path path, String name, long lastModified, InputStream content) throws IOException {
+                                    handleArchiveEntry(path, name, lastModified, content);
+                                    return true;
+                                }
+                            });
+
+                            return true;
                         }
 
-                        log.info("{}: {}", count, file);
+                        String docId = getDocId(file);
+                        if (docId == null)
+                            return true;
+
+                        long size = attrs.size();
+                        long lastModified = attrs.lastModifiedTime().toMillis();
+                        if (format == DocumentFormat.GALEXML) {
+                            // books are streamed rather than read ahead, as they can be much larger than the read-ahead budget
+                            try (InputStream bookStream = Files.newInputStream(file)) {
+                                synchronized (this) {
+                                    submitBook(docId, file.toString(), file.getFileName().toString(), size, lastModified, bookStream);
+                                }
+                            }
+
+                            return true;
+                        }
+
+                        if (manifest.isProcessed(file.toString(), size, lastModified)) {
+                            log.debug("Skipping unchanged file: {}", file);
+                            return true;
+                        }
+
+                        synchronized (this) {
+                            // pages larger than the read-ahead budget are streamed from their file as they are processed
+                            PageInput pageInput = prefetcher != null && size <= prefetchBytes ?
+                                    prefetcher.prefetch(file, size, lastModified) : new FilePageInput(file, size, lastModified);
+                            submit(docId, pageInput, createPageTask(format, docId, pageInput, processingOptions));
+                        }
+
+                        return true;
+                    }
+
+                    private void handleArchiveEntry(Path path, String name, long lastModified, InputStream content) throws IOException {
+                        String docId = getDocId(path);
+                        if (docId == null)
+                            return;
+
+                        if (format == DocumentFormat.GALEXML) {
+                            synchronized (this) {
+                                submitBook(docId, path.toString(), name, -1, lastModified, content);
+                            }
+
+                            return;
+                        }
+
+                        // archive entries can only be read sequentially, so they are read right away
+                        byte[] pageContent = ByteStreams.toByteArray(content);
+                        if (manifest.isProcessed(path.toString(), pageContent.length, lastModified)) {
+                            log.debug("Skipping unchanged file: {}", path);
+                            return;
+                        }
+
+                        synchronized (this) {
+                            PageInput pageInput = prefetcher != null ?
+                                    prefetcher.buffer(path.toString(), name, pageContent, lastModified) :
+                                    new ByteArrayPageInput(path.toString(), name, pageContent, lastModified);
+                            submit(docId, pageInput, createPageTask(format, docId, pageInput, processingOptions));
+                        }
+                    }
+
+                    /**
+                     * @return The document id of the page, or null if the page should not be processed
+                     */
+                    private String getDocId(Path file) {
+                        Matcher matcher = filterPattern.matcher(file.toString());
+                        if (!matcher.find())
+                            return null;
 
                         StringBuilder sb = new StringBuilder();
                         for (int i = 1, iMax = matcher.groupCount(); i <= iMax; i++)
@@ -139,85 +435,297 @@ public class Main {
 
                         String docId = sb.substring(1);
 
-                        Map<String,Object> csvEntry = null;
-                        switch (format) {
-                            case HOCR:
-                                HOCRPageStats hocrPageStats = processHOCR(docId, file.toFile(), processingOptions);
-                                if (hocrPageStats != null)
-                                    csvEntry = hocrPageStats.toCsvEntry();
-                                break;
-
-                            case GALEXML:
-                                //processGALEXML(docId, file.toFile(), processingOptions);
-                                break;
-
-                            case TXT:
-                                OCRPageStats txtPageStats = processTXT(docId, file.toFile(), processingOptions);
-                                if (txtPageStats != null)
-                                    csvEntry = txtPageStats.toCsvEntry();
-                                break;
-
-                            default:
-                                log.error("Don't know how to process document format: {}", format);
-                                System.exit(1);
+                        return shard == null || shard.contains(docId) ? docId : null;
+                    }
+
+                    /**
+                     * Reads the pages of a book one at a time, submitting each page as soon as it was read, so that
+                     * the pages of a book are processed in parallel while only the pages in flight are kept in memory.
+                     * Callers must hold the lock on this handler, which keeps the pages of each book together.
+                     */
+                    private void submitBook(String docId, String bookId, String bookName, long size, long lastModified,
+                                            InputStream bookStream) throws IOException {
+                        try (OCRXMLBookReader bookReader = new OCRXMLBookReader(bookStream)) {
+                            OCRXMLPage page;
+                            while ((page = bookReader.nextPage()) != null) {
+                                PageInput pageInput = new BookPageInput(bookId, bookName, page.getPageNumber(), size, lastModified);
+                                submit(docId, pageInput, createBookPageTask(pageInput, page, processingOptions));
+                            }
+                        }
+                        catch (PageParserException e) {
+                            // the pages read before the error are still processed
+                            log.error("Error reading book: " + bookId, e);
                         }
+                    }
 
-                        if (csvEntry != null) {
-                            csvEntry.put("docId", docId);
-                            csvWriter.write(csvEntry, header);
+                    // callers must hold the lock on this handler
+                    private void submit(String docId, PageInput pageInput, Callable<OCRPageStats> task) throws IOException {
+                        log.info("{}: {}", count, pageInput);
+
+                        if (documentTracker != null)
+                            documentTracker.pageSubmitted(docId);
+
+                        try {
+                            pageProcessor.submit(docId, pageInput, task);
+                        }
+                        catch (InterruptedException e) {
+                            throw new InterruptedIOException("Interrupted while queueing page: " + pageInput);
                         }
 
                         count++;
                     }
-
-                    return FileVisitResult.CONTINUE;
+                };
+
+                if (fileList != null) {
+                    log.info("Reading the files to process from: {}", fileList);
+                    Path baseDir = directory != null ? directory.toPath().toAbsolutePath() : Paths.get("").toAbsolutePath();
+                    InputStream fileListStream = fileList.equals("-") ? System.in : new FileInputStream(fileList);
+                    try {
+                        FileListReader.read(fileListStream, baseDir, pageFileHandler);
+                    }
+                    finally {
+                        if (fileListStream != System.in)
+                            fileListStream.close();
+                    }
                 }
-            });
+                else {
+                    Path path = FileSystems.getDefault().getPath(directory.getAbsolutePath());
+                    if (walkThreadCount > 1)
+                        new ParallelDirectoryWalker(walkThreadCount).walk(path, pageFileHandler);
+                    else
+                        walkFileTree(path, pageFileHandler);
+                }
+            }
+
+            if (documentTracker != null) {
+                documentTracker.finish();
+                log.info("Documents: {}", documentTracker.getHandledCount());
+            }
+
+            if (corpusSketches != null) {
+                log.info("Corpus unique tokens (estimated): {} unique, {} unique correct, {} unique misspelled",
+                        corpusSketches.getUnique().estimate(), corpusSketches.getUniqueCorrect().estimate(),
+                        corpusSketches.getUniqueMisspelled().estimate());
+
+                if (sketchWriter != null)
+                    sketchWriter.write(corpusSketches.toCsvRow(UniqueTokenSketches.CORPUS_ID));
+            }
+
+            if (misspellingLexicon != null) {
+                long misspellingCount = misspellingLexicon.write(misspellingsFile);
+                log.info("Misspellings: {} distinct tokens written to {}", misspellingCount, misspellingsFile);
+            }
+
+            commitOutput(csvWriter, outputStream, manifest);
+        }
+        finally {
+            if (documentPagesWriters != null)
+                documentPagesWriters.shutdown();
+        }
+
+        for (Future<?> documentPagesWrite : documentPagesWrites) {
+            try {
+                documentPagesWrite.get();
+            }
+            catch (ExecutionException e) {
+                throw new IOException("Could not write the page statistics of a document", e.getCause());
+            }
+        }
+
+        VerdictCache verdictCache = dictionaryIndex.getVerdictCache();
+        if (verdictCache != null) {
+            long hits = verdictCache.getHitCount();
+            long lookups = hits + verdictCache.getMissCount();
+            log.info("Verdict cache: {} hits, {} misses ({}% hits, {} tokens cached)", hits, lookups - hits,
+                    lookups > 0 ? hits * 100 / lookups : 0, verdictCache.size());
         }
 
         log.info("Finished");
     }
 
-    private static OCRPageStats processTXT(String docId, File file, ProcessingOptions options) {
+    private static void walkFileTree(Path path, final PageFileHandler pageFileHandler) throws IOException {
+        Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                return pageFileHandler.handle(file, attrs) ? FileVisitResult.CONTINUE : FileVisitResult.TERMINATE;
+            }
+        });
+    }
+
+    /**
+     * Opens the output, after its committed part when resuming a run: any output written after the last manifest
+     * commit is discarded
+     */
+    private static FileOutputStream openOutput(File outputFile, long committedOutputLength) throws IOException {
+        FileOutputStream outputStream = new FileOutputStream(outputFile, committedOutputLength > 0);
+        if (committedOutputLength > 0)
+            try {
+                outputStream.getChannel().truncate(committedOutputLength);
+            }
+            catch (IOException e) {
+                outputStream.close();
+                throw e;
+            }
+
+        return outputStream;
+    }
+
+    private static void commitOutput(PageStatsCsvWriter csvWriter, FileOutputStream outputStream, ProcessedFileManifest manifest) throws IOException {
+        csvWriter.flush();
+        FileChannel outputChannel = outputStream.getChannel();
+        outputChannel.force(false);
+        manifest.commit(outputChannel.size());
+    }
+
+    /**
+     * Writes the TOP_MISSPELLINGS most frequent misspellings of a document, with the bounds of their counts:
+     * a misspelling occurred between (count - error) and count times, and is guaranteed to be among the most frequent
+     * if it occurred more times than any misspelling listed after it could have
+     */
+    private static void writeTopMisspellings(OCRDocument<OCRPageStats> document, ICsvMapWriter topMisspellingsWriter) throws IOException {
+        SpaceSaving topMisspellings = document.getDocumentStats().getTopMisspellings();
+        List<SpaceSaving.Entry> entries = topMisspellings.getEntries();
+        int count = Math.min(TOP_MISSPELLINGS, entries.size());
+
+        Map<String, Object> csvEntry = Maps.newHashMap();
+        csvEntry.put("docId", document.getDocId());
+        for (int i = 0; i < count; i++) {
+            SpaceSaving.Entry entry = entries.get(i);
+            long nextMaxCount = i + 1 < entries.size() ? entries.get(i + 1).getCount() : topMisspellings.getMaxError();
+
+            csvEntry.put("rank", i + 1);
+            csvEntry.put("misspelling", entry.getToken());
+            csvEntry.put("count", entry.getCount());
+            csvEntry.put("error", entry.getError());
+            csvEntry.put("guaranteed", entry.getCount() - entry.getError() >= nextMaxCount);
+            topMisspellingsWriter.write(csvEntry, TOP_MISSPELLINGS_HEADER);
+        }
+    }
+
+    /**
+     * Writes the statistics of each page of a document to [docId].csv in the given directory
+     */
+    private static void writeDocumentPages(OCRDocument<OCRPageStats> document, File documentPagesDir) throws IOException {
+        File pagesFile = new File(documentPagesDir, document.getDocId().replace(File.separatorChar, '_') + ".csv");
+        try (Writer pagesWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(pagesFile), Charsets.UTF_8))) {
+            document.writePageStatsCsv(pagesWriter, true);
+        }
+    }
+
+    private static String computeFingerprint(DocumentFormat format, String filter, Shard shard, OutputLevel level, boolean confidenceStats,
+                                             LoadedDictionary[] dictionaries, Map<String, String> replacementRules,
+                                             Bin[] wordLengthBins) throws IOException {
+        Hasher hasher = Hashing.md5().newHasher();
+        hasher.putString(format.name(), Charsets.UTF_8);
+        hasher.putString(filter, Charsets.UTF_8);
+        hasher.putString(shard != null ? shard.toString() : "", Charsets.UTF_8);
+        hasher.putString(level.name(), Charsets.UTF_8);
+        if (confidenceStats)
+            hasher.putString("confidence", Charsets.UTF_8);
+
+        // based on the word list content, so that a word list and the snapshot compiled from it are interchangeable
+        for (LoadedDictionary dictionary : dictionaries) {
+            hasher.putString(dictionary.getDictionary().getName(), Charsets.UTF_8);
+            hasher.putBytes(dictionary.getFingerprint());
+        }
+
+        for (Map.Entry<String, String> rule : new TreeMap<>(replacementRules).entrySet()) {
+            hasher.putString(rule.getKey(), Charsets.UTF_8);
+            hasher.putString(rule.getValue(), Charsets.UTF_8);
+        }
+
+        for (Bin bin : wordLengthBins)
+            hasher.putString(bin.getName(), Charsets.UTF_8);
+
+        return hasher.hash().toString();
+    }
+
+    private static Callable<OCRPageStats> createPageTask(final DocumentFormat format, final String docId, final PageInput pageInput,
+                                                        final ProcessingOptions options) {
+        return new Callable<OCRPageStats>() {
+            @Override
+            public OCRPageStats call() {
+                try (InputStream pageStream = pageInput.openStream()) {
+                    Integer pageNumber = OCRPage.parsePageNumber(pageInput.getName());
+
+                    switch (format) {
+                        case HOCR:
+                            return processHOCR(docId, pageInput, pageStream, pageNumber, options);
+
+                        case GALEXML:
+                            throw new IllegalStateException("GALEXML books are processed page by page, as they are read");
+
+                        case TXT:
+                            return processTXT(docId, pageInput, pageStream, pageNumber, options);
+
+                        default:
+                            throw new RuntimeException("Don't know how to process document format: " + format);
+                    }
+                }
+                catch (IOException e) {
+                    log.error("Error reading page: " + pageInput, e);
+                    return null;
+                }
+            }
+        };
+    }
+
+    private static Callable<OCRPageStats> createBookPageTask(final PageInput pageInput, final OCRXMLPage page,
+                                                            final ProcessingOptions options) {
+        return new Callable<OCRPageStats>() {
+            @Override
+            public OCRPageStats call() {
+                return processGALEXML(pageInput, page, options);
+            }
+        };
+    }
+
+    private static OCRPageStats processGALEXML(PageInput pageInput, OCRXMLPage page, ProcessingOptions options) {
         try {
-            TxtPage page = TxtPage.parse(file, SimpleTokenizer.INSTANCE);
             page.setWordLengthBins(options.getWordLengthBins());
-            return page.calculateStatistics(options.getDictionaries(), options.getReplacementRules());
+            return addUniqueSketches(page.calculateStatistics(options.getDictionaryIndex(), options.getReplacementRules()), options);
         }
         catch (PageParserException e) {
-            log.error("Error processing page: " + file, e);
+            log.error("Error processing page: " + pageInput, e);
             return null;
         }
     }
 
-    private static HOCRPageStats processHOCR(String docId, File file, ProcessingOptions options) {
+    private static OCRPageStats processTXT(String docId, PageInput pageInput, InputStream pageStream, Integer pageNumber,
+                                           ProcessingOptions options) {
         try {
-            HOCRPage page = HOCRPage.parse(file);
+            TxtPage page = options.getTxtEngine() == TxtEngine.BYTES ?
+                    TxtPage.streamBytes(pageStream, pageNumber) : TxtPage.stream(pageStream, pageNumber);
             page.setWordLengthBins(options.getWordLengthBins());
-            return page.calculateStatistics(options.getDictionaries(), options.getReplacementRules());
+            return addUniqueSketches(page.calculateStatistics(options.getDictionaryIndex(), options.getReplacementRules()), options);
         }
         catch (PageParserException e) {
-            log.error("Error processing page: " + file, e);
+            log.error("Error processing page: " + pageInput, e);
             return null;
         }
     }
 
-    private static Bin[] getStatisticalBins(StatisticalSummary stat, BinFactory binFactory) {
-        Bin[] bins = new Bin[8];
-
-        double mean = stat.getMean();
-        double stdev = stat.getStandardDeviation();
-
-        Double low = null;
-        for (int i = -3; i <= 3; i++) {
-            double high = mean + i * stdev;
-            bins[i+3] = binFactory.createBin(low, high);
-            low = high;
+    private static HOCRPageStats processHOCR(String docId, PageInput pageInput, InputStream pageStream, Integer pageNumber,
+                                             ProcessingOptions options) {
+        try {
+            HOCRPage page = HOCRPage.parse(pageStream, pageNumber);
+            page.setWordLengthBins(options.getWordLengthBins());
+            page.setCollectConfidence(options.isConfidenceStats());
+            return addUniqueSketches(page.calculateStatistics(options.getDictionaryIndex(), options.getReplacementRules()), options);
+        }
+        catch (PageParserException e) {
+            log.error("Error processing page: " + pageInput, e);
+            return null;
         }
+    }
 
-        bins[7] = binFactory.createBin(low, null);
+    private static <T extends OCRPageStats> T addUniqueSketches(T pageStats, ProcessingOptions options) {
+        int precision = options.getUniqueSketchPrecision();
+        if (precision > 0)
+            pageStats.setUniqueSketches(UniqueTokenSketches.of(precision, pageStats.getUniqueTokens(),
+                    pageStats.getUniqueCorrectTokens(), pageStats.getMisspellings()));
 
-        return bins;
+        return pageStats;
     }
 
     private static void createDictWordLengthsCSV(Map<String, Map<Integer, Integer>> dictWordLengths, Writer writer) throws IOException {
@@ -258,19 +766,6 @@ public class Main {
         }
     }
 
-    private static SummaryStatistics createSummaryDictStats(Reader reader) throws IOException {
-        SummaryStatistics stats = new SummaryStatistics();
-        BufferedReader br = (reader instanceof BufferedReader) ? (BufferedReader) reader : new BufferedReader(reader);
-
-        String word;
-        while ((word = br.readLine()) != null) {
-            int wordLength = word.length();
-            stats.addValue(wordLength);
-        }
-
-        return stats;
-    }
-
     private static Map<Integer, Integer> computeWordLengthDistForDict(File dictFile) throws IOException {
         Map<Integer, Integer> wordLengths = Maps.newHashMap();
 
@@ -288,7 +783,11 @@ public class Main {
         return wordLengths;
     }
 
-    private static Map<String, String> getReplacementRules(File[] replacementRuleFiles) throws IOException {
+    /**
+     * @param replacementRuleFiles The files of replacement rules ("replacement = token;"), or null
+     * @return The replacement of each token
+     */
+    public static Map<String, String> getReplacementRules(File[] replacementRuleFiles) throws IOException {
         Map<String, String> replacementRules = Maps.newHashMap();
 
         if (replacementRuleFiles != null) {
@@ -320,22 +819,6 @@ public class Main {
         return replacementRules;
     }
 
-    private static SpellDictionary[] getDictionaries(File[] dictFiles) throws IOException {
-        int dictCount = dictFiles.length;
-        SpellDictionary[] dictionaries  = new SpellDictionary[dictCount];
-
-        for (int i = 0; i < dictCount; i++) {
-            File dictFile = dictFiles[i];
-            String dictFileName = dictFile.getName();
-            log.info("Loading dictionary: {}", dictFile);
-            SpellDictionary dict = new SpellDictionaryHashMap(dictFile);
-            dict.setName(dictFileName.substring(0, dictFileName.lastIndexOf(".")));
-            dictionaries[i] = dict;
-        }
-
-        return dictionaries;
-    }
-
     private static Parameter[] getApplicationParameters() {
         Parameter dictionary = new FlaggedOption("dictionary")
                 .setStringParser(
@@ -345,7 +828,32 @@ public class Main {
                 .setRequired(true)
                 .setShortFlag('d')
                 .setAllowMultipleDeclarations(true)
-                .setHelp("Specifies one or more dictionaries to use");
+                .setHelp("Specifies one or more dictionaries to use (word lists, or dictionary snapshots created with CompileDictionary)");
+
+        Parameter dictionaryEngine = new FlaggedOption("dictionary-engine")
+                .setStringParser(EnumeratedStringParser.getParser("compact;jazzy"))
+                .setDefault("compact")
+                .setRequired(false)
+                .setLongFlag("dictionary-engine")
+                .setHelp("The implementation used for dictionaries loaded from word lists: compact (immutable, memory-efficient, " +
+                        "safe for concurrent lookups) or jazzy (Jazzy's SpellDictionaryHashMap)");
+
+        Parameter txtEngine = new FlaggedOption("txt-engine")
+                .setStringParser(EnumeratedStringParser.getParser("bytes;chars"))
+                .setDefault("bytes")
+                .setRequired(false)
+                .setLongFlag("txt-engine")
+                .setHelp("The implementation used for tokenizing text pages: bytes (tokens made of ASCII characters only are " +
+                        "tokenized and counted on the UTF-8 bytes of the text) or chars (the text is decoded first); " +
+                        "both give the same statistics");
+
+        Parameter verdictCache = new FlaggedOption("verdict-cache")
+                .setStringParser(JSAP.INTEGER_PARSER)
+                .setDefault("65536")
+                .setRequired(false)
+                .setLongFlag("verdict-cache")
+                .setHelp("The maximum number of distinct tokens whose spellcheck verdicts are cached, shared by all the processing " +
+                        "threads (0 to disable the cache)");
 
         Parameter replacements = new FlaggedOption("replacements")
                 .setStringParser(
@@ -371,17 +879,149 @@ public class Main {
         Parameter output = new FlaggedOption("output")
                 .setRequired(true)
                 .setShortFlag('o')
-                .setHelp("Specifies the output CSV file to be created");
+                .setHelp("Specifies the output CSV file to be created (with the document statistics, for --level document)");
 
         Parameter directory = new UnflaggedOption("directory")
                 .setStringParser(
                         FileStringParser.getParser()
                                 .setMustBeDirectory(true)
                                 .setMustExist(true))
-                .setRequired(true)
-                .setHelp("Directory containing the files to process");
+                .setRequired(false)
+                .setHelp("Directory containing the files to process; .zip, .tar, .tar.gz and .gz archives are read as if they were " +
+                        "extracted into a directory named after the archive");
+
+        Parameter threads = new FlaggedOption("threads")
+                .setStringParser(JSAP.INTEGER_PARSER)
+                .setDefault(Integer.toString(Runtime.getRuntime().availableProcessors()))
+                .setRequired(false)
+                .setShortFlag('t')
+                .setLongFlag("threads")
+                .setHelp("The number of threads to use for processing pages (defaults to the number of available processors)");
+
+        Parameter unordered = new Switch("unordered")
+                .setShortFlag('u')
+                .setLongFlag("unordered")
+                .setHelp("Write the results for each page as soon as they are available, instead of in the order the files were found");
+
+        Parameter ioThreads = new FlaggedOption("io-threads")
+                .setStringParser(JSAP.INTEGER_PARSER)
+                .setDefault("4")
+                .setRequired(false)
+                .setLongFlag("io-threads")
+                .setHelp("The number of threads used for reading files ahead of processing (0 to read each file in the thread processing it)");
+
+        Parameter prefetch = new FlaggedOption("prefetch")
+                .setStringParser(JSAP.LONG_PARSER)
+                .setDefault(Long.toString(64L * 1024 * 1024))
+                .setRequired(false)
+                .setLongFlag("prefetch")
+                .setHelp("The maximum number of bytes read ahead of processing");
+
+        Parameter resume = new Switch("resume")
+                .setLongFlag("resume")
+                .setHelp("Resume a previous (interrupted) run: pages that were already processed and did not change since are skipped, " +
+                        "and the results for new or changed pages are appended to the output");
+
+        Parameter shard = new FlaggedOption("shard")
+                .setRequired(false)
+                .setLongFlag("shard")
+                .setHelp("Only process the documents assigned to shard i out of N (specified as i/N, with 0 <= i < N); " +
+                        "documents are assigned to shards based on a hash of the document id");
+
+        Parameter level = new FlaggedOption("level")
+                .setStringParser(EnumeratedStringParser.getParser("page;document;both"))
+                .setDefault("page")
+                .setRequired(false)
+                .setLongFlag("level")
+                .setHelp("Write statistics for each page, for each document (the statistics of all its pages combined), or both; " +
+                        "document rows are written as soon as all the pages of a document are processed, which requires the pages " +
+                        "of each document to be enumerated consecutively (e.g. one directory per document, and a single walk thread)");
+
+        Parameter documentOutput = new FlaggedOption("document-output")
+                .setRequired(false)
+                .setLongFlag("document-output")
+                .setHelp("The output CSV file for the document statistics, with --level both");
+
+        Parameter documentPagesDir = new FlaggedOption("document-pages-dir")
+                .setStringParser(
+                        FileStringParser.getParser()
+                                .setMustBeDirectory(true)
+                                .setMustExist(true))
+                .setRequired(false)
+                .setLongFlag("document-pages-dir")
+                .setHelp("Also write the statistics of the pages of each document, ordered by page number, to a separate CSV file " +
+                        "[docId].csv in the given directory (with --level document or both)");
+
+        Parameter topMisspellings = new FlaggedOption("top-misspellings")
+                .setRequired(false)
+                .setLongFlag("top-misspellings")
+                .setHelp("Also write the " + TOP_MISSPELLINGS + " most frequent misspellings of each document to the given CSV file " +
+                        "(with --level document or both); the counts are estimated from a summary of at most " +
+                        OCRPageStats.TOP_MISSPELLINGS_CAPACITY + " misspellings per document, and each count is reported with " +
+                        "its maximum error. The memory used by each document in progress only stays constant with --unique-sketch; " +
+                        "otherwise all its unique tokens and misspellings are kept for counting them exactly");
+
+        Parameter confidence = new Switch("confidence")
+                .setLongFlag("confidence")
+                .setHelp("Also calculate statistics of the confidence of the OCR engine in the words (x_wconf) of hOCR pages: " +
+                        "the number of words having a confidence, the mean, standard deviation and minimum confidence, " +
+                        "and the fraction of words with a confidence below " + (int) HOCRPageStats.LOW_CONFIDENCE);
+
+        Parameter uniqueSketch = new FlaggedOption("unique-sketch")
+                .setStringParser(JSAP.INTEGER_PARSER)
+                .setDefault("0")
+                .setRequired(false)
+                .setLongFlag("unique-sketch")
+                .setHelp("Count the unique tokens of documents and of the whole corpus with HyperLogLog sketches of the given " +
+                        "precision p (" + HyperLogLog.MIN_PRECISION + " to " + HyperLogLog.MAX_PRECISION + ") instead of " +
+                        "keeping all the unique tokens; each document in progress then uses 3 * 2^p bytes, for a standard error " +
+                        "of about 1.04 / sqrt(2^p) (e.g. 1.6% for p = 12). 0 counts the unique tokens exactly");
+
+        Parameter sketchOutput = new FlaggedOption("sketch-output")
+                .setRequired(false)
+                .setLongFlag("sketch-output")
+                .setHelp("Also write the unique token sketches of each document (with --level document or both) and of the " +
+                        "whole corpus to the given CSV file, so they can be combined with those of other runs (see MergeShards)");
+
+        Parameter columnarOutput = new FlaggedOption("columnar-output")
+                .setStringParser(FileStringParser.getParser())
+                .setRequired(false)
+                .setLongFlag("columnar-output")
+                .setHelp("Also write the rows of the output (-o) to the given file in a compressed binary columnar format, " +
+                        "faster to write and to load than the CSV (see PageStatsColumnarReader)");
+
+        Parameter misspellings = new FlaggedOption("misspellings")
+                .setStringParser(FileStringParser.getParser())
+                .setRequired(false)
+                .setLongFlag("misspellings")
+                .setHelp("Also write the misspelled tokens of all the pages, with their total number of occurrences, " +
+                        "to the given file (tab-separated, sorted by token); temporary files are created next to it " +
+                        "when the misspellings do not fit in memory");
+
+        Parameter misspellingsMemory = new FlaggedOption("misspellings-memory")
+                .setStringParser(JSAP.LONG_PARSER)
+                .setDefault(Long.toString(256L * 1024 * 1024))
+                .setRequired(false)
+                .setLongFlag("misspellings-memory")
+                .setHelp("The (approximate) maximum number of bytes of memory used for tallying the misspellings");
+
+        Parameter fileList = new FlaggedOption("file-list")
+                .setRequired(false)
+                .setLongFlag("file-list")
+                .setHelp("Read the files to process from the given list (one path per line, or NUL-separated), " +
+                        "instead of walking the data directory; use - to read the list from stdin. " +
+                        "Relative paths are resolved against the data directory, if specified");
+
+        Parameter walkThreads = new FlaggedOption("walk-threads")
+                .setStringParser(JSAP.INTEGER_PARSER)
+                .setDefault("1")
+                .setRequired(false)
+                .setLongFlag("walk-threads")
+                .setHelp("The number of threads used for walking the data directory; with more than 1 thread, " +
+                        "subdirectories are walked concurrently and the order in which files are processed is not deterministic");
 
-        return new Parameter[] { dictionary, replacements, format, filter, output, directory };
+        return new Parameter[] { dictionary, dictionaryEngine, txtEngine, verdictCache, replacements, format, filter, output, threads, unordered, ioThreads, prefetch, resume, shard,
+                level, documentOutput, documentPagesDir, topMisspellings, confidence, uniqueSketch, sketchOutput, columnarOutput, misspellings, misspellingsMemory, fileList, walkThreads, directory };
     }
 
     private static String getApplicationHelp() {
@@ -0,0 +1,309 @@
+package edu.illinois.i3.emop.apps.statsbuilder;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.martiansoftware.jsap.*;
+import com.martiansoftware.jsap.stringparsers.FileStringParser;
+import edu.illinois.i3.emop.apps.statsbuilder.stats.SpilledRuns;
+import edu.illinois.i3.emop.apps.statsbuilder.stats.UniqueTokenSketches;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.supercsv.encoder.DefaultCsvEncoder;
+import org.supercsv.io.CsvListReader;
+import org.supercsv.io.CsvListWriter;
+import org.supercsv.io.ICsvListReader;
+import org.supercsv.io.ICsvListWriter;
+import org.supercsv.prefs.CsvPreference;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Merges the CSV files produced by the shards of a sharded run (see the --shard option of {@link Main})
+ * into a single CSV file, or combines the unique token sketches of the shards (see the --sketch-output option)
+ */
+public class MergeShards {
+
+    private static final Logger log = LoggerFactory.getLogger(MergeShards.class);
+
+    private static final String DOC_ID_COLUMN = "docId";
+
+    // the estimated memory used by each row and each value besides its characters (list, String and char[] headers)
+    private static final int ROW_OVERHEAD_BYTES = 64;
+    private static final int VALUE_OVERHEAD_BYTES = 56;
+
+    /**
+     * Rows are written as their number of values followed by the values as (UTF-8 byte length, UTF-8 bytes),
+     * a length of -1 standing for an empty (null) value
+     */
+    private static final SpilledRuns.RecordCodec<List<String>> ROW_CODEC = new SpilledRuns.RecordCodec<List<String>>() {
+        @Override
+        public void write(DataOutput output, List<String> row) throws IOException {
+            output.writeInt(row.size());
+            for (String value : row) {
+                if (value == null) {
+                    output.writeInt(-1);
+                    continue;
+                }
+
+                byte[] bytes = value.getBytes(Charsets.UTF_8);
+                output.writeInt(bytes.length);
+                output.write(bytes);
+            }
+        }
+
+        @Override
+        public List<String> read(DataInput input) throws IOException {
+            int size = input.readInt();
+            List<String> row = Lists.newArrayListWithCapacity(size);
+            for (int i = 0; i < size; i++) {
+                int length = input.readInt();
+                if (length < 0) {
+                    row.add(null);
+                    continue;
+                }
+
+                byte[] bytes = new byte[length];
+                input.readFully(bytes);
+                row.add(new String(bytes, Charsets.UTF_8));
+            }
+
+            return row;
+        }
+    };
+
+    public static void main(String[] args) throws Exception {
+        JSAPResult cmdLine = parseArguments(args);
+
+        File[] shardFiles = cmdLine.getFileArray("shards");
+        String output = cmdLine.getString("output");
+        boolean sort = cmdLine.getBoolean("sort");
+        long sortMemory = cmdLine.getLong("sort-memory");
+
+        final CsvPreference csvPreference =
+                new CsvPreference.Builder(CsvPreference.EXCEL_PREFERENCE)
+                        .useEncoder(new DefaultCsvEncoder()).build();
+
+        if (cmdLine.getBoolean("sketches")) {
+            mergeSketches(shardFiles, output, csvPreference);
+            log.info("Finished");
+            return;
+        }
+
+        List<ICsvListReader> readers = Lists.newArrayListWithExpectedSize(shardFiles.length);
+        try (ICsvListWriter csvWriter = new CsvListWriter(
+                new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output), Charsets.UTF_8)), csvPreference)) {
+
+            String[] header = null;
+            for (File shardFile : shardFiles) {
+                ICsvListReader reader = new CsvListReader(
+                        new BufferedReader(new InputStreamReader(new FileInputStream(shardFile), Charsets.UTF_8)), csvPreference);
+                readers.add(reader);
+
+                String[] shardHeader = reader.getHeader(true);
+                if (shardHeader == null) {
+                    log.warn("Empty shard: {}", shardFile);
+                    continue;
+                }
+
+                if (header == null)
+                    header = shardHeader;
+                else if (!Arrays.equals(header, shardHeader))
+                    throw new RuntimeException("The columns of shard " + shardFile + " do not match the columns of the other shards");
+            }
+
+            if (header == null) {
+                log.error("All shards are empty - nothing to merge");
+                System.exit(1);
+            }
+
+            csvWriter.writeHeader(header);
+
+            if (sort) {
+                int docIdColumn = Arrays.asList(header).indexOf(DOC_ID_COLUMN);
+                if (docIdColumn < 0)
+                    throw new RuntimeException("Cannot sort - the shards do not have a '" + DOC_ID_COLUMN + "' column");
+
+                File spillDir = new File(output).getAbsoluteFile().getParentFile();
+                mergeSorted(readers, docIdColumn, csvWriter, sortMemory, spillDir);
+            }
+            else
+                for (ICsvListReader reader : readers) {
+                    List<String> row;
+                    while ((row = reader.read()) != null)
+                        csvWriter.write(row);
+                }
+        }
+        finally {
+            for (ICsvListReader reader : readers)
+                reader.close();
+        }
+
+        log.info("Finished");
+    }
+
+    /**
+     * Sorts the rows of the shards by document id within a bounded amount of memory: the rows are read in chunks whose
+     * estimated size is within the memory budget, each chunk is sorted and spilled to disk as a run, and the runs are
+     * then merged (see {@link SpilledRuns}). Rows with the same document id keep their order within a shard, and rows
+     * from earlier shards come first. When all the rows fit in a single chunk, nothing is spilled.
+     */
+    private static void mergeSorted(List<ICsvListReader> readers, final int docIdColumn, final ICsvListWriter csvWriter,
+                                    long memoryBudget, File spillDir) throws IOException {
+        Comparator<List<String>> docIdComparator = new Comparator<List<String>>() {
+            @Override
+            public int compare(List<String> r1, List<String> r2) {
+                return r1.get(docIdColumn).compareTo(r2.get(docIdColumn));
+            }
+        };
+
+        // the runs hold consecutive chunks of the rows, in order, so that ties are resolved by run
+        try (SpilledRuns<List<String>> runs = new SpilledRuns<>("merge", spillDir, docIdComparator, ROW_CODEC)) {
+            List<List<String>> chunk = Lists.newArrayList();
+            long chunkSize = 0;
+            for (ICsvListReader reader : readers) {
+                List<String> row;
+                while ((row = reader.read()) != null) {
+                    chunk.add(row);
+                    chunkSize += estimateSize(row);
+
+                    if (chunkSize > memoryBudget) {
+                        spill(chunk, docIdComparator, runs);
+                        chunk = Lists.newArrayList();
+                        chunkSize = 0;
+                    }
+                }
+            }
+
+            // (the sort is stable, and linear for shards that are already sorted)
+            Collections.sort(chunk, docIdComparator);
+
+            SpilledRuns.RecordSink<List<String>> csvSink = new SpilledRuns.RecordSink<List<String>>() {
+                @Override
+                public void write(List<String> row) throws IOException {
+                    csvWriter.write(row);
+                }
+            };
+
+            if (runs.size() == 0) {
+                for (List<String> row : chunk)
+                    csvSink.write(row);
+                return;
+            }
+
+            log.info("Merging {} sorted runs", runs.size() + (chunk.isEmpty() ? 0 : 1));
+            runs.merge(chunk.iterator(), csvSink);
+        }
+    }
+
+    private static long estimateSize(List<String> row) {
+        long size = ROW_OVERHEAD_BYTES;
+        for (String value : row)
+            size += VALUE_OVERHEAD_BYTES + (value != null ? 2L * value.length() : 0);
+
+        return size;
+    }
+
+    private static void spill(List<List<String>> chunk, Comparator<List<String>> docIdComparator,
+                              SpilledRuns<List<String>> runs) throws IOException {
+        Collections.sort(chunk, docIdComparator);
+
+        try (SpilledRuns.RunWriter<List<String>> runWriter = runs.newRun()) {
+            log.debug("Spilling {} rows to {}", chunk.size(), runWriter.getRun());
+            for (List<String> row : chunk)
+                runWriter.write(row);
+        }
+    }
+
+    /**
+     * Combines the unique token sketches with the same id (document id, or the corpus) across the shards
+     */
+    private static void mergeSketches(File[] shardFiles, String output, CsvPreference csvPreference) throws IOException {
+        Map<String, UniqueTokenSketches> sketches = Maps.newLinkedHashMap();
+        for (File shardFile : shardFiles)
+            try (ICsvListReader reader = new CsvListReader(
+                    new BufferedReader(new InputStreamReader(new FileInputStream(shardFile), Charsets.UTF_8)), csvPreference)) {
+                String[] shardHeader = reader.getHeader(true);
+                if (shardHeader == null) {
+                    log.warn("Empty shard: {}", shardFile);
+                    continue;
+                }
+                if (!Arrays.equals(shardHeader, UniqueTokenSketches.CSV_HEADER))
+                    throw new RuntimeException("Shard " + shardFile + " does not contain unique token sketches");
+
+                List<String> row;
+                while ((row = reader.read()) != null) {
+                    UniqueTokenSketches rowSketches = UniqueTokenSketches.fromCsvRow(row);
+                    UniqueTokenSketches merged = sketches.get(row.get(0));
+                    if (merged == null)
+                        sketches.put(row.get(0), rowSketches);
+                    else
+                        merged.merge(rowSketches);
+                }
+            }
+
+        try (ICsvListWriter csvWriter = new CsvListWriter(
+                new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output), Charsets.UTF_8)), csvPreference)) {
+            csvWriter.writeHeader(UniqueTokenSketches.CSV_HEADER);
+            for (Map.Entry<String, UniqueTokenSketches> entry : sketches.entrySet())
+                csvWriter.write(entry.getValue().toCsvRow(entry.getKey()));
+        }
+
+        UniqueTokenSketches corpusSketches = sketches.get(UniqueTokenSketches.CORPUS_ID);
+        if (corpusSketches != null)
+            log.info("Corpus unique tokens (estimated): {} unique, {} unique correct, {} unique misspelled",
+                    corpusSketches.getUnique().estimate(), corpusSketches.getUniqueCorrect().estimate(),
+                    corpusSketches.getUniqueMisspelled().estimate());
+    }
+
+    private static Parameter[] getApplicationParameters() {
+        Parameter output = new FlaggedOption("output")
+                .setRequired(true)
+                .setShortFlag('o')
+                .setHelp("Specifies the merged output CSV file to be created");
+
+        Parameter sort = new Switch("sort")
+                .setShortFlag('s')
+                .setLongFlag("sort")
+                .setHelp("Sort the merged rows by document id");
+
+        Parameter sortMemory = new FlaggedOption("sort-memory")
+                .setStringParser(JSAP.LONG_PARSER)
+                .setDefault(Long.toString(256L * 1024 * 1024))
+                .setRequired(false)
+                .setLongFlag("sort-memory")
+                .setHelp("The (approximate) maximum number of bytes of memory used for sorting the rows (with --sort); " +
+                        "beyond that, sorted runs are spilled to temporary files next to the output and merged");
+
+        Parameter sketches = new Switch("sketches")
+                .setLongFlag("sketches")
+                .setHelp("The shard files are unique token sketches (see the --sketch-output option of StatsBuilder): " +
+                        "the sketches of each document, and of the whole corpus, are combined across the shards");
+
+        Parameter shards = new UnflaggedOption("shards")
+                .setStringParser(
+                        FileStringParser.getParser()
+                                .setMustBeFile(true)
+                                .setMustExist(true))
+                .setRequired(true)
+                .setGreedy(true)
+                .setHelp("The shard CSV files to merge");
+
+        return new Parameter[] { output, sort, sortMemory, sketches, shards };
+    }
+
+    private static String getApplicationHelp() {
+        return "Merges the CSV files created by the shards of a sharded StatsBuilder run into a single CSV file";
+    }
+
+    private static JSAPResult parseArguments(String[] args) throws JSAPException {
+        SimpleJSAP jsap = new SimpleJSAP("MergeShards", getApplicationHelp(), getApplicationParameters());
+        JSAPResult result = jsap.parse(args);
+
+        if (jsap.messagePrinted())
+            System.exit(1);
+
+        return result;
+    }
+}
@@ -1,19 +1,17 @@
 package edu.illinois.i3.emop.apps.statsbuilder;
 
 import com.google.common.collect.Sets;
+import edu.illinois.i3.emop.apps.statsbuilder.hocr.HOCRPageStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.supercsv.encoder.CsvEncoder;
 import org.supercsv.encoder.DefaultCsvEncoder;
-import org.supercsv.io.CsvMapWriter;
-import org.supercsv.io.ICsvMapWriter;
 import org.supercsv.prefs.CsvPreference;
 
 import java.io.IOException;
 import java.io.Writer;
 import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 public class OCRDocument<T extends OCRPageStats> {
@@ -22,25 +20,54 @@ public class OCRDocument<T extends OCRPageStats> {
 
     private final String _docId;
     private final Set<T> _pages;
+    private T _documentStats;
 
     public OCRDocument(String docId) {
+        this(docId, true);
+    }
+
+    /**
+     * @param docId     The document id
+     * @param keepPages True to keep the statistics of each page (see {@link #writePageStatsCsv}),
+     *                  False to only keep the document statistics
+     */
+    public OCRDocument(String docId, boolean keepPages) {
         _docId = docId;
-        _pages = Sets.newTreeSet(new PageNumberComparator());
+        _pages = keepPages ? Sets.<T>newTreeSet(new PageNumberComparator()) : null;
     }
 
     public String getDocId() {
         return _docId;
     }
 
+    /**
+     * @return The statistics of each page, ordered by page number, or null if the pages are not kept
+     */
     public Set<T> getPagesStats() {
         return _pages;
     }
 
+    /**
+     * @return The statistics of all the pages added so far merged together, or null if no page was added
+     */
+    public T getDocumentStats() {
+        return _documentStats;
+    }
+
+    @SuppressWarnings("unchecked")
     public void addPageStats(T pageStats) {
-        _pages.add(pageStats);
+        if (_pages != null)
+            _pages.add(pageStats);
+
+        if (_documentStats == null)
+            _documentStats = (T) pageStats.createEmpty();
+        _documentStats.merge(pageStats);
     }
 
     public void writePageStatsCsv(Writer writer, boolean includeHeader) throws IOException {
+        if (_pages == null)
+            throw new IllegalStateException("The page statistics of document " + _docId + " were not kept");
+
         if (_pages.isEmpty()) {
             log.warn(String.format("Document %s contains 0 pages - no stats CSV will be created", _docId));
             return;
@@ -51,17 +78,19 @@ public class OCRDocument<T extends OCRPageStats> {
                 new CsvPreference.Builder(CsvPreference.EXCEL_PREFERENCE)
                         .useEncoder(csvEncoder).build();
 
-        try (ICsvMapWriter csvWriter = new CsvMapWriter(writer, csvPreference)) {
-            List<String> columns = _pages.iterator().next().getAvailableColumns();
-            String[] header = columns.toArray(new String[columns.size()]);
+        T firstPageStats = _pages.iterator().next();
+        List<String> columns = firstPageStats.getAvailableColumns();
+        String[] header = columns.toArray(new String[columns.size()]);
+
+        PageStatsColumns pageColumns = new PageStatsColumns(header, firstPageStats.getWordLengthBins(),
+                firstPageStats.getDictionaryNames(), firstPageStats instanceof HOCRPageStats, false);
 
+        try (PageStatsCsvWriter csvWriter = new PageStatsCsvWriter(writer, csvPreference, pageColumns)) {
             if (includeHeader)
-                csvWriter.writeHeader(header);
+                csvWriter.writeHeader();
 
-            for (T pageStats : _pages) {
-                Map<String, Object> csvEntry = pageStats.toCsvEntry();
-                csvWriter.write(csvEntry, header);
-            }
+            for (T pageStats : _pages)
+                csvWriter.write(null, pageStats);
         }
     }
 
@@ -2,13 +2,34 @@ package edu.illinois.i3.emop.apps.statsbuilder;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import edu.illinois.i3.emop.apps.statsbuilder.stats.Bin;
+import edu.illinois.i3.emop.apps.statsbuilder.stats.IntSet;
+import edu.illinois.i3.emop.apps.statsbuilder.stats.SpaceSaving;
+import edu.illinois.i3.emop.apps.statsbuilder.stats.SymbolTable;
+import edu.illinois.i3.emop.apps.statsbuilder.stats.UniqueTokenSketches;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class OCRPageStats {
 
+    // the number of misspellings counted by the statistics of merged pages (see getTopMisspellings)
+    public static final int TOP_MISSPELLINGS_CAPACITY = 100;
+
+    // the fixed columns of the CSV entries, in the order they are put in them (see toCsvEntry)
+    public static final String[] CSV_COLUMNS = {
+            "page", "quality", "score", "tokens", "ignored", "numberObjects", "punct", "singleLetter",
+            "correct", "correctP", "misspelled", "misspelledP", "cleanOneNonAlphaNoRep", "cleanTwoNonAlphaNoRep", "cleanAllAlphaNoRep",
+            "lenGt1NonAlpha", "cleanThreeOrMoreNonAlpha", "cleanShortWord", "ge3RepChars", "ge4RepChars",
+            "unique", "uniqueCorrect", "uniqueCorrectP", "uniqueMisspelled", "uniqueMisspelledP",
+            "oneNonAlpha", "twoNonAlpha", "threeOrMoreNonAlpha", "allNonAlpha",
+            "allAlpha", "1nAlpha", "2nAlpha", "3nAlpha", "ltHalfNAlpha", "applicableReplacements"
+    };
+
     ///////////////////////////////////////////
     // Page statistics
     ///////////////////////////////////////////
@@ -24,6 +45,7 @@ public class OCRPageStats {
     // TODO: use PROPORTIONS not COUNTS as features; also deal with NaN situations
 
     private int _pageNumber;                        // page number
+    private int _pageCount = 1;                     // number of pages the statistics are for (> 1 for merged statistics)
 
                                                     // number of...
     private int _tokenCount;                        // tokens on page
@@ -55,44 +77,142 @@ public class OCRPageStats {
     private int _cleanShortWordCount;               // tokens which, after cleaning, have length < 3 and are supposed to be words (i.e. no numbers, no single punctuation, no single letters)
     private int _singleLetterCount;                 // tokens made up of exactly 1 alpha character
 
-    protected Map<Character, Integer> _charCountsCorrectable;       // character counts for tokens matching the "correctable profile" (for alpha and punct characters, case insensitive)
-    protected Map<Character, Integer> _charCounts;                  // character counts for entire page (for alpha and punct characters, case insensitive)
-    protected Map<String, Integer> _misspellingCounts;              // count of occurrences for each misspelled word
-    protected Map<Integer, Integer> _tokenLengths;                  // distribution of token lengths for the raw tokens
-    protected Map<String, Integer> _dictionaryMatches;              // number of dictionary matches for each dictionary
-    protected Map<Bin<Integer>, Integer> _binTokenLengths;          // binned token lengths for the raw tokens
-    protected Map<Bin<Integer>, Integer> _correctableTokenLengths;  // binned token lengths for the cleaned tokens that match the "correctable profile"
+    protected int[] _charCountsCorrectable;                         // character counts for tokens matching the "correctable profile" (for alpha and punct characters, case insensitive), by position in OCRPage.CHARS
+    protected int[] _charCounts;                                    // character counts for entire page (for alpha and punct characters, case insensitive), by position in OCRPage.CHARS
+    protected String[] _uniqueTokens;                               // the unique (normalized) tokens
+    protected String[] _uniqueCorrectTokens;                        // the unique correct tokens (after cleaning)
+    protected String[] _misspellings;                               // the misspelled words
+    protected int[] _misspellingCounts;                             // count of occurrences for each misspelled word, by position in _misspellings
+    protected int[] _tokenLengths;                                  // distribution of token lengths for the raw tokens, by length
+    protected String[] _dictionaryNames;                            // dictionary names, by dictionary position
+    protected int[] _dictionaryMatches;                             // number of dictionary matches for each dictionary, by dictionary position
+    protected Bin<Integer>[] _wordLengthBins;                       // the word length bins
+    protected int[] _binTokenLengths;                               // binned token lengths for the raw tokens, by bin position
+    protected int[] _correctableTokenLengths;                       // binned token lengths for the cleaned tokens that match the "correctable profile", by bin position
+
+    protected UniqueTokenSketches _uniqueSketches;                  // the sketches of the unique tokens, if counted approximately when merged
+    private MergedTokens _mergedTokens;                             // the unique tokens and misspellings of merged statistics
 
 
     public Map<String, Integer> getMisspellingCounts() {
-        return _misspellingCounts;
+        String[] misspellings = getMisspellings();
+        int[] counts = getMisspellingCountsArray();
+
+        Map<String, Integer> misspellingCounts = Maps.newHashMapWithExpectedSize(misspellings.length);
+        for (int i = 0; i < misspellings.length; i++)
+            misspellingCounts.put(misspellings[i], counts[i]);
+
+        return misspellingCounts;
+    }
+
+    /**
+     * @return The misspelled words; for merged statistics, only the most frequent ones (see {@link #getTopMisspellings})
+     */
+    public String[] getMisspellings() {
+        return _mergedTokens != null ? _mergedTokens.getMisspellings() : _misspellings;
+    }
+
+    /**
+     * @return The number of occurrences of each misspelled word, by position in {@link #getMisspellings};
+     * for merged statistics, these are estimates (see {@link #getTopMisspellings})
+     */
+    public int[] getMisspellingCountsArray() {
+        return _mergedTokens != null ? _mergedTokens.getMisspellingCounts() : _misspellingCounts;
+    }
+
+    /**
+     * @return The summary of the most frequent misspellings of merged statistics (which counts at most
+     * TOP_MISSPELLINGS_CAPACITY misspellings, whatever the number of pages), or null for the statistics of a page
+     */
+    public SpaceSaving getTopMisspellings() {
+        return _mergedTokens != null ? _mergedTokens._topMisspellings : null;
+    }
+
+    /**
+     * @return The sketches of the unique tokens, or null if the unique tokens of merged statistics are counted exactly
+     */
+    public UniqueTokenSketches getUniqueSketches() {
+        return _uniqueSketches;
+    }
+
+    public void setUniqueSketches(UniqueTokenSketches uniqueSketches) {
+        _uniqueSketches = uniqueSketches;
+    }
+
+    /**
+     * @return The unique tokens; empty for merged statistics whose unique tokens are counted with sketches
+     */
+    public String[] getUniqueTokens() {
+        return _mergedTokens != null ? _mergedTokens.getUniqueTokens() : _uniqueTokens;
+    }
+
+    public void setUniqueTokens(String[] uniqueTokens) {
+        _uniqueTokens = uniqueTokens;
+    }
+
+    public String[] getUniqueCorrectTokens() {
+        return _mergedTokens != null ? _mergedTokens.getUniqueCorrectTokens() : _uniqueCorrectTokens;
+    }
+
+    public void setUniqueCorrectTokens(String[] uniqueCorrectTokens) {
+        _uniqueCorrectTokens = uniqueCorrectTokens;
     }
 
     public Map<Integer, Integer> getTokenLengths() {
+        Map<Integer, Integer> tokenLengths = Maps.newHashMap();
+        for (int length = 0; length < _tokenLengths.length; length++)
+            if (_tokenLengths[length] > 0)
+                tokenLengths.put(length, _tokenLengths[length]);
+
+        return tokenLengths;
+    }
+
+    public int[] getTokenLengthsArray() {
         return _tokenLengths;
     }
 
-    public Map<String, Integer> getDictionaryMatches() {
+    public String[] getDictionaryNames() {
+        return _dictionaryNames;
+    }
+
+    public int[] getDictionaryMatches() {
         return _dictionaryMatches;
     }
 
+    public Bin<Integer>[] getWordLengthBins() {
+        return _wordLengthBins;
+    }
+
     public Map<Bin<Integer>, Integer> getBinTokenLengths() {
+        return toBinMap(_binTokenLengths);
+    }
+
+    public int[] getBinTokenLengthsArray() {
         return _binTokenLengths;
     }
 
-    public void setMisspellingCounts(Map<String, Integer> misspellingCounts) {
+    public void setMisspellingCounts(String[] misspellings, int[] misspellingCounts) {
+        _misspellings = misspellings;
         _misspellingCounts = misspellingCounts;
     }
 
-    public void setTokenLengths(Map<Integer, Integer> tokenLengths) {
+    public void setTokenLengths(int[] tokenLengths) {
         _tokenLengths = tokenLengths;
     }
 
-    public void setDictionaryMatches(Map<String, Integer> dictionaryMatches) {
+    public void setDictionaryNames(String[] dictionaryNames) {
+        _dictionaryNames = dictionaryNames;
+    }
+
+    public void setDictionaryMatches(int[] dictionaryMatches) {
         _dictionaryMatches = dictionaryMatches;
     }
 
-    public void setBinTokenLengths(Map<Bin<Integer>, Integer> binTokenLengths) {
+    public void setWordLengthBins(Bin<Integer>[] wordLengthBins) {
+        _wordLengthBins = wordLengthBins;
+    }
+
+    public void setBinTokenLengths(int[] binTokenLengths) {
         _binTokenLengths = binTokenLengths;
     }
 
@@ -104,6 +224,14 @@ public class OCRPageStats {
         _pageNumber = pageNumber;
     }
 
+    public int getPageCount() {
+        return _pageCount;
+    }
+
+    public void setPageCount(int pageCount) {
+        _pageCount = pageCount;
+    }
+
     public int getTokenCount() {
         return _tokenCount;
     }
@@ -325,29 +453,57 @@ public class OCRPageStats {
     }
 
     public Map<Character, Integer> getCharCountsCorrectable() {
+        return toCharMap(_charCountsCorrectable);
+    }
+
+    public int[] getCharCountsCorrectableArray() {
         return _charCountsCorrectable;
     }
 
-    public void setCharCountsCorrectable(Map<Character, Integer> charCountsCorrectable) {
+    public void setCharCountsCorrectable(int[] charCountsCorrectable) {
         _charCountsCorrectable = charCountsCorrectable;
     }
 
     public Map<Character, Integer> getCharCounts() {
+        return toCharMap(_charCounts);
+    }
+
+    public int[] getCharCountsArray() {
         return _charCounts;
     }
 
-    public void setCharCounts(Map<Character, Integer> charCounts) {
+    public void setCharCounts(int[] charCounts) {
         _charCounts = charCounts;
     }
 
     public Map<Bin<Integer>, Integer> getCorrectableTokenLengths() {
+        return toBinMap(_correctableTokenLengths);
+    }
+
+    public int[] getCorrectableTokenLengthsArray() {
         return _correctableTokenLengths;
     }
 
-    public void setCorrectableTokenLengths(Map<Bin<Integer>, Integer> correctableTokenLengths) {
+    public void setCorrectableTokenLengths(int[] correctableTokenLengths) {
         _correctableTokenLengths = correctableTokenLengths;
     }
 
+    private static Map<Character, Integer> toCharMap(int[] charCounts) {
+        Map<Character, Integer> charMap = Maps.newLinkedHashMap();
+        for (int i = 0; i < OCRPage.CHARS.length; i++)
+            charMap.put(OCRPage.CHARS[i], charCounts[i]);
+
+        return charMap;
+    }
+
+    private Map<Bin<Integer>, Integer> toBinMap(int[] binCounts) {
+        Map<Bin<Integer>, Integer> binMap = Maps.newLinkedHashMap();
+        for (int i = 0; i < _wordLengthBins.length; i++)
+            binMap.put(_wordLengthBins[i], binCounts[i]);
+
+        return binMap;
+    }
+
     public double getPercentCorrect() {
         return (double) _correctTokenCount / (_tokenCount - getIgnoredTokenCount());
     }
@@ -378,6 +534,109 @@ public class OCRPageStats {
                 (_tokenCount - getIgnoredTokenCount() - _cleanShortWordCount);
     }
 
+    /**
+     * @return Empty statistics of the same type, to merge page statistics into (see {@link #merge})
+     */
+    public OCRPageStats createEmpty() {
+        OCRPageStats stats = new OCRPageStats();
+        stats.setPageCount(0);
+
+        return stats;
+    }
+
+    /**
+     * Adds the statistics of other pages to these: the counts are summed and the unique tokens are unioned,
+     * so statistics can be merged in any order and grouping. The page number is left unchanged.
+     *
+     * @param other The statistics to add
+     */
+    public void merge(OCRPageStats other) {
+        _pageCount += other._pageCount;
+        _tokenCount += other._tokenCount;
+        _correctTokenCount += other._correctTokenCount;
+        _incorrectTokenCount += other._incorrectTokenCount;
+        _oneNonAlphaTokenCount += other._oneNonAlphaTokenCount;
+        _twoNonAlphaTokenCount += other._twoNonAlphaTokenCount;
+        _threeOrMoreNonAlphaTokenCount += other._threeOrMoreNonAlphaTokenCount;
+        _allNonAlphaTokenCount += other._allNonAlphaTokenCount;
+        _allAlphaTokenCount += other._allAlphaTokenCount;
+        _1numAlphaTokenCount += other._1numAlphaTokenCount;
+        _2numAlphaTokenCount += other._2numAlphaTokenCount;
+        _3numAlphaTokenCount += other._3numAlphaTokenCount;
+        _ltHalfNumAlphaTokenCount += other._ltHalfNumAlphaTokenCount;
+        _ge3RepeatedCharsTokenCount += other._ge3RepeatedCharsTokenCount;
+        _ge4RepeatedCharsTokenCount += other._ge4RepeatedCharsTokenCount;
+        _applicableReplacementRulesCount += other._applicableReplacementRulesCount;
+        _numberObjectsTokenCount += other._numberObjectsTokenCount;
+        _punctTokenCount += other._punctTokenCount;
+        _lenGt1NonAlphaTokenCount += other._lenGt1NonAlphaTokenCount;
+        _cleanOneNonAlphaNoRepTokenCount += other._cleanOneNonAlphaNoRepTokenCount;
+        _cleanTwoNonAlphaNoRepTokenCount += other._cleanTwoNonAlphaNoRepTokenCount;
+        _cleanThreeOrMoreNonAlphaTokenCount += other._cleanThreeOrMoreNonAlphaTokenCount;
+        _cleanAllAlphaNoRepTokenCount += other._cleanAllAlphaNoRepTokenCount;
+        _cleanShortWordCount += other._cleanShortWordCount;
+        _singleLetterCount += other._singleLetterCount;
+
+        _charCountsCorrectable = add(_charCountsCorrectable, other._charCountsCorrectable);
+        _charCounts = add(_charCounts, other._charCounts);
+        _tokenLengths = add(_tokenLengths, other._tokenLengths);
+        _dictionaryMatches = add(_dictionaryMatches, other._dictionaryMatches);
+        _binTokenLengths = add(_binTokenLengths, other._binTokenLengths);
+        _correctableTokenLengths = add(_correctableTokenLengths, other._correctableTokenLengths);
+
+        if (_dictionaryNames == null)
+            _dictionaryNames = other._dictionaryNames;
+        if (_wordLengthBins == null)
+            _wordLengthBins = other._wordLengthBins;
+
+        // with sketches, the unique counts are estimated in constant memory instead of keeping all the unique tokens
+        if (other._uniqueSketches != null) {
+            if (_uniqueSketches == null)
+                _uniqueSketches = other._uniqueSketches.copy();
+            else
+                _uniqueSketches.merge(other._uniqueSketches);
+        }
+
+        if (_mergedTokens == null) {
+            _mergedTokens = new MergedTokens(_uniqueSketches == null);
+            _mergedTokens.add(_uniqueTokens, _uniqueCorrectTokens, _misspellings, _misspellingCounts);
+            _uniqueTokens = _uniqueCorrectTokens = _misspellings = null;
+            _misspellingCounts = null;
+        }
+
+        if (other._mergedTokens != null)
+            _mergedTokens.add(other._mergedTokens);
+        else
+            _mergedTokens.add(other._uniqueTokens, other._uniqueCorrectTokens, other._misspellings, other._misspellingCounts);
+
+        if (_uniqueSketches != null) {
+            _uniqueTokenCount = (int) _uniqueSketches.getUnique().estimate();
+            _uniqueCorrectTokenCount = (int) _uniqueSketches.getUniqueCorrect().estimate();
+            _uniqueIncorrectTokenCount = (int) _uniqueSketches.getUniqueMisspelled().estimate();
+        }
+        else {
+            _uniqueTokenCount = _mergedTokens._uniqueTokens.size();
+            _uniqueCorrectTokenCount = _mergedTokens._uniqueCorrectTokens.size();
+            _uniqueIncorrectTokenCount = _mergedTokens._misspelledTokens.size();
+        }
+    }
+
+    private static int[] add(int[] counts, int[] otherCounts) {
+        if (otherCounts == null)
+            return counts;
+
+        if (counts == null)
+            return otherCounts.clone();
+
+        if (counts.length < otherCounts.length)
+            counts = Arrays.copyOf(counts, otherCounts.length);
+
+        for (int i = 0; i < otherCounts.length; i++)
+            counts[i] += otherCounts[i];
+
+        return counts;
+    }
+
     public Map<String, Object> toCsvEntry() {
         Map<String, Object> csvEntry = Maps.newLinkedHashMap();
 
@@ -417,26 +676,127 @@ public class OCRPageStats {
         csvEntry.put("ltHalfNAlpha", getLtHalfNumAlphaTokenCount());
         csvEntry.put("applicableReplacements", getApplicableReplacementRulesCount());
 
-        for (Map.Entry<Bin<Integer>, Integer> entry : getBinTokenLengths().entrySet())
-            csvEntry.put(entry.getKey().getName(), entry.getValue());
+        for (int i = 0; i < _wordLengthBins.length; i++)
+            csvEntry.put(_wordLengthBins[i].getName(), _binTokenLengths[i]);
 
-        for (Map.Entry<Character,Integer> entry : getCharCounts().entrySet())
-            csvEntry.put(entry.getKey().toString(), entry.getValue());
+        for (int i = 0; i < OCRPage.CHARS.length; i++)
+            csvEntry.put(String.valueOf(OCRPage.CHARS[i]), _charCounts[i]);
 
-        for (Map.Entry<Bin<Integer>, Integer> entry : getCorrectableTokenLengths().entrySet())
-            csvEntry.put("C_"+entry.getKey().getName(), entry.getValue());
+        for (int i = 0; i < _wordLengthBins.length; i++)
+            csvEntry.put("C_" + _wordLengthBins[i].getName(), _correctableTokenLengths[i]);
 
-        for (Map.Entry<Character,Integer> entry : getCharCountsCorrectable().entrySet())
-            csvEntry.put("C_"+entry.getKey().toString(), entry.getValue());
+        for (int i = 0; i < OCRPage.CHARS.length; i++)
+            csvEntry.put("C_" + OCRPage.CHARS[i], _charCountsCorrectable[i]);
 
-        for (Map.Entry<String,Integer> entry : getDictionaryMatches().entrySet())
-            csvEntry.put(entry.getKey(), entry.getValue());
+        for (int i = 0; i < _dictionaryNames.length; i++)
+            csvEntry.put(_dictionaryNames[i], _dictionaryMatches[i]);
 
         return csvEntry;
     }
 
+    /**
+     * @return The names of the columns of the CSV entry, in order
+     */
     public List<String> getAvailableColumns() {
-        return Lists.newArrayList(toCsvEntry().keySet());
+        Set<String> columns = Sets.newLinkedHashSet(Arrays.asList(CSV_COLUMNS));
+
+        for (Bin<Integer> bin : _wordLengthBins)
+            columns.add(bin.getName());
+
+        for (char c : OCRPage.CHARS)
+            columns.add(String.valueOf(c));
+
+        for (Bin<Integer> bin : _wordLengthBins)
+            columns.add("C_" + bin.getName());
+
+        for (char c : OCRPage.CHARS)
+            columns.add("C_" + c);
+
+        Collections.addAll(columns, _dictionaryNames);
+
+        return Lists.newArrayList(columns);
+    }
+
+    /**
+     * The unique tokens and misspellings of merged statistics: the summary of the most frequent misspellings, of
+     * constant size, and the unique tokens, unique correct tokens and misspelled tokens themselves, only when they are
+     * counted exactly (which grows with the number of pages merged)
+     */
+    private static final class MergedTokens {
+        private final boolean _exact;       // False if the unique tokens are not kept (being counted with sketches)
+        private final SymbolTable _symbols = new SymbolTable();
+        private final IntSet _uniqueTokens = new IntSet();
+        private final IntSet _uniqueCorrectTokens = new IntSet();
+        private final IntSet _misspelledTokens = new IntSet();
+        private final SpaceSaving _topMisspellings = new SpaceSaving(TOP_MISSPELLINGS_CAPACITY);
+
+        private MergedTokens(boolean exact) {
+            _exact = exact;
+        }
+
+        private void add(String[] uniqueTokens, String[] uniqueCorrectTokens, String[] misspellings, int[] misspellingCounts) {
+            if (uniqueTokens != null && _exact)
+                for (String token : uniqueTokens)
+                    _uniqueTokens.add(_symbols.intern(token));
+
+            if (uniqueCorrectTokens != null && _exact)
+                for (String token : uniqueCorrectTokens)
+                    _uniqueCorrectTokens.add(_symbols.intern(token));
+
+            if (misspellings != null)
+                for (int i = 0; i < misspellings.length; i++) {
+                    if (_exact)
+                        _misspelledTokens.add(_symbols.intern(misspellings[i]));
+                    _topMisspellings.offer(misspellings[i], misspellingCounts[i]);
+                }
+        }
+
+        private void add(MergedTokens other) {
+            for (int id : other._uniqueTokens.toArray())
+                _uniqueTokens.add(_symbols.intern(other._symbols.get(id)));
+
+            for (int id : other._uniqueCorrectTokens.toArray())
+                _uniqueCorrectTokens.add(_symbols.intern(other._symbols.get(id)));
+
+            for (int id : other._misspelledTokens.toArray())
+                _misspelledTokens.add(_symbols.intern(other._symbols.get(id)));
+
+            _topMisspellings.merge(other._topMisspellings);
+        }
+
+        private String[] getUniqueTokens() {
+            return toSymbols(_uniqueTokens.toArray());
+        }
+
+        private String[] getUniqueCorrectTokens() {
+            return toSymbols(_uniqueCorrectTokens.toArray());
+        }
+
+        private String[] getMisspellings() {
+            List<SpaceSaving.Entry> entries = _topMisspellings.getEntries();
+            String[] misspellings = new String[entries.size()];
+            for (int i = 0; i < misspellings.length; i++)
+                misspellings[i] = entries.get(i).getToken();
+
+            return misspellings;
+        }
+
+        private int[] getMisspellingCounts() {
+            List<SpaceSaving.Entry> entries = _topMisspellings.getEntries();
+            int[] counts = new int[entries.size()];
+            for (int i = 0; i < counts.length; i++)
+                counts[i] = (int) entries.get(i).getCount();
+
+            return counts;
+        }
+
+        private String[] toSymbols(int[] ids) {
+            String[] symbols = new String[ids.length];
+            for (int i = 0; i < ids.length; i++)
+                symbols[i] = _symbols.get(ids[i]);
+
+            return symbols;
+        }
     }
 
 }
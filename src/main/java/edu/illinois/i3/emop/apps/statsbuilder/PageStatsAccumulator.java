@@ -0,0 +1,458 @@
+package edu.illinois.i3.emop.apps.statsbuilder;
+
+import com.google.common.base.Charsets;
+import edu.illinois.i3.emop.apps.statsbuilder.dict.DictionaryIndex;
+import edu.illinois.i3.emop.apps.statsbuilder.stats.Bin;
+import edu.illinois.i3.emop.apps.statsbuilder.stats.IntIntMap;
+import edu.illinois.i3.emop.apps.statsbuilder.stats.IntSet;
+import edu.illinois.i3.emop.apps.statsbuilder.stats.LengthBinIndex;
+import edu.illinois.i3.emop.apps.statsbuilder.stats.SymbolTable;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Accumulates the statistics of the tokens of a page, one token at a time (see {@link OCRPage#calculateStatistics}).
+ *
+ * Tokens made of ASCII characters only can also be added straight from their bytes: they are lowercased, classified
+ * and interned without being decoded into strings, giving the same statistics as if they were added as strings.
+ * Not thread-safe.
+ */
+public class PageStatsAccumulator {
+
+    // the tokens seen by each processing thread are interned across pages, and forgotten once there are too many
+    private static final int MAX_TOKEN_SYMBOLS = 1 << 18;
+    private static final ThreadLocal<SymbolTable> TokenSymbols = new ThreadLocal<SymbolTable>() {
+        @Override
+        protected SymbolTable initialValue() {
+            return new SymbolTable();
+        }
+    };
+
+    // the keys of the replacement rules last used by each processing thread, for looking up ASCII tokens
+    private static final ThreadLocal<ReplacementKeys> ReplacementKeysCache = new ThreadLocal<>();
+
+    // lowercasing ASCII letters only gives the same strings as String.toLowerCase when the default locale is not
+    // one with special casing rules for them (e.g. Turkish, where 'I' becomes a dotless i)
+    private static final boolean ASCII_LOWERCASE = "ABCDEFGHIJKLMNOPQRSTUVWXYZ".toLowerCase().equals("abcdefghijklmnopqrstuvwxyz");
+
+    private final DictionaryIndex _dictionaryIndex;
+    private final Map<String, String> _replacementRules;
+    private final LengthBinIndex _wordLengthBinIndex;
+    private final SymbolTable _tokenSymbols;
+    private SymbolTable _replacementKeys;
+    private final TokenFeatures _features = new TokenFeatures();
+    private byte[] _normToken = new byte[64];
+
+    private int _tokenCount;
+    private int _correctTokenCount;
+    private int _incorrectTokenCount;
+    private int _oneNonAlphaTokenCount;
+    private int _twoNonAlphaTokenCount;
+    private int _threeOrMoreNonAlphaTokenCount;
+    private int _allNonAlphaTokenCount;
+    private int _allAlphaTokenCount;
+    private int _oneNumAlphaTokenCount;
+    private int _twoNumAlphaTokenCount;
+    private int _threeNumAlphaTokenCount;
+    private int _ltHalfNumAlphaTokenCount;
+    private int _ge3RepeatedCharsTokenCount;
+    private int _ge4RepeatedCharsTokenCount;
+    private int _applicableReplacementRulesCount;
+
+    private int _numberObjectsTokenCount;
+    private int _punctTokenCount;
+    private int _lenGt1NonAlphaTokenCount;
+    private int _cleanOneNonAlphaNoRepTokenCount;
+    private int _cleanTwoNonAlphaNoRepTokenCount;
+    private int _cleanThreeOrMoreNonAlphaTokenCount;
+    private int _cleanAllAlphaNoRepTokenCount;
+    private int _cleanShortWordCount;
+    private int _singleLetterCount;
+
+    private final int[] _charCountsCorrectable = new int[OCRPage.CHARS.length];
+    private final int[] _charCounts = new int[OCRPage.CHARS.length];
+    private final int[] _correctableTokenLengths;
+    private final int[] _binTokenLengths;
+    private int[] _tokenLengths = new int[32];
+    private final int[] _dictionaryMatches;
+
+    // the token ids are only used within the page
+    private final IntIntMap _misspellingCounts = new IntIntMap();
+    private final IntSet _uniqueTokens = new IntSet();
+    private final IntSet _uniqueCorrectTokens = new IntSet();
+
+    /**
+     * @param dictionaryIndex    The dictionaries
+     * @param replacementRules   The replacement rules
+     * @param wordLengthBinIndex The index of the word length bins
+     * @param wordLengthBinCount The number of word length bins
+     */
+    public PageStatsAccumulator(DictionaryIndex dictionaryIndex, Map<String, String> replacementRules,
+                                LengthBinIndex wordLengthBinIndex, int wordLengthBinCount) {
+        _dictionaryIndex = dictionaryIndex;
+        _replacementRules = replacementRules;
+        _wordLengthBinIndex = wordLengthBinIndex;
+        _correctableTokenLengths = new int[wordLengthBinCount];
+        _binTokenLengths = new int[wordLengthBinCount];
+        _dictionaryMatches = new int[dictionaryIndex.size()];
+
+        _tokenSymbols = TokenSymbols.get();
+        if (_tokenSymbols.size() > MAX_TOKEN_SYMBOLS)
+            _tokenSymbols.clear();
+    }
+
+    /**
+     * @param tokenText The token (trimmed); empty tokens are ignored
+     */
+    public void add(String tokenText) {
+        if (tokenText.isEmpty())
+            return;
+
+        String normTokenText = tokenText.toLowerCase();
+        _features.classify(tokenText, normTokenText);
+        String cleanTokenText = _features.getCleanToken();
+
+        int normTokenId = _tokenSymbols.intern(normTokenText);
+        boolean applicableReplacementRules = _replacementRules.containsKey(tokenText) ||
+                (cleanTokenText != null && _replacementRules.containsKey(cleanTokenText));
+        countChars(normTokenText, _charCounts);
+
+        add(tokenText.length(), normTokenText, normTokenId, applicableReplacementRules);
+    }
+
+    /**
+     * Adds a token made of ASCII characters only; same as {@link #add(String)} for the (trimmed) string of the characters
+     *
+     * @param ascii  The ASCII characters of the token (bytes < 0x80)
+     * @param offset The position of the first character
+     * @param length The number of characters
+     */
+    public void addAscii(byte[] ascii, int offset, int length) {
+        // trim the token
+        int end = offset + length;
+        while (offset < end && ascii[offset] <= ' ')
+            offset++;
+        while (end > offset && ascii[end - 1] <= ' ')
+            end--;
+        length = end - offset;
+
+        if (length == 0)
+            return;
+
+        if (!ASCII_LOWERCASE) {
+            add(new String(ascii, offset, length, Charsets.US_ASCII));
+            return;
+        }
+
+        if (_normToken.length < length)
+            _normToken = new byte[Math.max(length, _normToken.length * 2)];
+
+        boolean hasUpperCase = false;
+        for (int i = 0; i < length; i++) {
+            byte c = ascii[offset + i];
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+                hasUpperCase = true;
+            }
+            _normToken[i] = c;
+
+            int charIndex = OCRPage.getCharIndex((char) c);
+            if (charIndex >= 0)
+                _charCounts[charIndex]++;
+        }
+
+        int normTokenId = _tokenSymbols.intern(_normToken, 0, length);
+        String normTokenText = _tokenSymbols.get(normTokenId);
+        _features.classifyAscii(_normToken, length, normTokenText);
+        String cleanTokenText = _features.getCleanToken();
+
+        boolean applicableReplacementRules = false;
+        if (!_replacementRules.isEmpty()) {
+            SymbolTable replacementKeys = getReplacementKeys();
+            applicableReplacementRules = (hasUpperCase ? replacementKeys.find(ascii, offset, length) >= 0 :
+                    replacementKeys.find(_normToken, 0, length) >= 0) ||
+                    (cleanTokenText != null && _replacementRules.containsKey(cleanTokenText));
+        }
+
+        add(length, normTokenText, normTokenId, applicableReplacementRules);
+    }
+
+    /**
+     * Sets the statistics of the tokens added on the page statistics
+     *
+     * @param pageStats      The page statistics
+     * @param pageNumber     The page number
+     * @param wordLengthBins The word length bins
+     */
+    public void setStatistics(OCRPageStats pageStats, Integer pageNumber, Bin<Integer>[] wordLengthBins) {
+        int[] misspellingIds = _misspellingCounts.keys();
+        String[] misspellings = new String[misspellingIds.length];
+        int[] misspellingOccurrences = new int[misspellingIds.length];
+        for (int i = 0; i < misspellingIds.length; i++) {
+            misspellings[i] = _tokenSymbols.get(misspellingIds[i]);
+            misspellingOccurrences[i] = _misspellingCounts.get(misspellingIds[i]);
+        }
+
+        pageStats.set1numAlphaTokenCount(_oneNumAlphaTokenCount);
+        pageStats.set2numAlphaTokenCount(_twoNumAlphaTokenCount);
+        pageStats.set3numAlphaTokenCount(_threeNumAlphaTokenCount);
+        pageStats.setAllAlphaTokenCount(_allAlphaTokenCount);
+        pageStats.setAllNonAlphaTokenCount(_allNonAlphaTokenCount);
+        pageStats.setApplicableReplacementRulesCount(_applicableReplacementRulesCount);
+        pageStats.setCleanAllAlphaNoRepTokenCount(_cleanAllAlphaNoRepTokenCount);
+        pageStats.setCleanOneNonAlphaNoRepTokenCount(_cleanOneNonAlphaNoRepTokenCount);
+        pageStats.setCleanShortWordCount(_cleanShortWordCount);
+        pageStats.setCleanThreeOrMoreNonAlphaTokenCount(_cleanThreeOrMoreNonAlphaTokenCount);
+        pageStats.setCleanTwoNonAlphaNoRepTokenCount(_cleanTwoNonAlphaNoRepTokenCount);
+        pageStats.setCorrectTokenCount(_correctTokenCount);
+        pageStats.setGe3RepeatedCharsTokenCount(_ge3RepeatedCharsTokenCount);
+        pageStats.setGe4RepeatedCharsTokenCount(_ge4RepeatedCharsTokenCount);
+        pageStats.setIncorrectTokenCount(_incorrectTokenCount);
+        pageStats.setLenGt1NonAlphaTokenCount(_lenGt1NonAlphaTokenCount);
+        pageStats.setLtHalfNumAlphaTokenCount(_ltHalfNumAlphaTokenCount);
+        pageStats.setNumberObjectsTokenCount(_numberObjectsTokenCount);
+        pageStats.setOneNonAlphaTokenCount(_oneNonAlphaTokenCount);
+        pageStats.setPageNumber(pageNumber);
+        pageStats.setPunctTokenCount(_punctTokenCount);
+        pageStats.setSingleLetterCount(_singleLetterCount);
+        pageStats.setThreeOrMoreNonAlphaTokenCount(_threeOrMoreNonAlphaTokenCount);
+        pageStats.setTokenCount(_tokenCount);
+        pageStats.setTwoNonAlphaTokenCount(_twoNonAlphaTokenCount);
+        pageStats.setUniqueCorrectTokenCount(_uniqueCorrectTokens.size());
+        pageStats.setUniqueIncorrectTokenCount(_misspellingCounts.size());
+        pageStats.setUniqueTokenCount(_uniqueTokens.size());
+
+        pageStats.setWordLengthBins(wordLengthBins);
+        pageStats.setBinTokenLengths(_binTokenLengths);
+        pageStats.setCharCounts(_charCounts);
+        pageStats.setCharCountsCorrectable(_charCountsCorrectable);
+        pageStats.setCorrectableTokenLengths(_correctableTokenLengths);
+        pageStats.setDictionaryNames(_dictionaryIndex.getNames());
+        pageStats.setDictionaryMatches(_dictionaryMatches);
+        pageStats.setMisspellingCounts(misspellings, misspellingOccurrences);
+        pageStats.setUniqueTokens(toSymbols(_uniqueTokens));
+        pageStats.setUniqueCorrectTokens(toSymbols(_uniqueCorrectTokens));
+        pageStats.setTokenLengths(_tokenLengths);
+    }
+
+    /**
+     * Counts a classified token (the features of which are in _features)
+     *
+     * @param tokenLength                The length of the token
+     * @param normTokenText              The normalized (lowercased) token
+     * @param normTokenId                The id of the normalized token
+     * @param applicableReplacementRules True if a replacement rule applies to the token or its clean form
+     */
+    private void add(int tokenLength, String normTokenText, int normTokenId, boolean applicableReplacementRules) {
+        // normTokenText  = the normalized (lowercased) token
+        // cleanTokenText = the normTokenText with MAX_LEADING_PUNCT_REMOVE punctuation removed, and MAX_TRAILING_PUNCT_REMOVE punctuation removed
+        //                  (can be 'null' if, after cleaning, the remaining substring has a length < CLEAN_TOKEN_LEN_THRESHOLD)
+        TokenFeatures features = _features;
+        String cleanTokenText = features.getCleanToken();
+        int cleanTokenLength = (cleanTokenText != null) ? cleanTokenText.length() : 0;
+
+        _tokenCount++;
+        _uniqueTokens.add(normTokenId);
+
+        if (applicableReplacementRules)
+            _applicableReplacementRulesCount++;
+
+        // update token length distribution for raw tokens
+        if (tokenLength >= _tokenLengths.length)
+            _tokenLengths = Arrays.copyOf(_tokenLengths, Math.max(tokenLength + 1, _tokenLengths.length * 2));
+        _tokenLengths[tokenLength]++;
+
+        // update token length bins for raw tokens
+        int binIndex = _wordLengthBinIndex.indexOf(tokenLength);
+        if (binIndex >= 0)
+            _binTokenLengths[binIndex]++;
+
+        // the number of non-alpha characters in the raw token
+        {
+            int nonAlphaCount = features.getNonAlphaCount();
+
+            if (nonAlphaCount == 0)
+                _allAlphaTokenCount++;
+
+            else
+
+            if (nonAlphaCount == 1 && tokenLength > nonAlphaCount)
+                _oneNonAlphaTokenCount++;
+
+            else
+
+            if (nonAlphaCount == 2 && tokenLength > nonAlphaCount)
+                _twoNonAlphaTokenCount++;
+
+            else
+
+            if (nonAlphaCount > 2 && tokenLength > nonAlphaCount)
+                _threeOrMoreNonAlphaTokenCount++;
+
+            else
+
+            if (nonAlphaCount == tokenLength) {
+                _allNonAlphaTokenCount++;
+
+                if (tokenLength > 1 && !features.isNumberObject())
+                    _lenGt1NonAlphaTokenCount++;
+            }
+
+            // (the character counts for the token, for alpha and punct characters, case insensitive, are updated by the callers)
+        }
+
+        if (features.isPunct()) {
+            _punctTokenCount++;
+            return;
+        }
+
+        if (features.isNumberObject()) {
+            _numberObjectsTokenCount++;
+            return;
+        }
+
+        if (features.isSingleLetter()) {
+            _singleLetterCount++;
+            return;
+        }
+
+
+        // check whether the token contains more than 2 repeated characters in a run
+        if (features.hasGe3RepeatedChars())
+            _ge3RepeatedCharsTokenCount++;
+
+        boolean rep = false;
+        if (features.hasGe4RepeatedChars()) {
+            _ge4RepeatedCharsTokenCount++;
+            rep = true;
+        }
+
+        // compute the number of non-alpha characters in the cleaned token (if it contains no more than 3 repeated characters in a run)
+        if (cleanTokenText != null) {
+            if (!rep) {
+                boolean matchesCorrectableProfile = false;
+                int nonAlphaCount = features.getCleanNonAlphaCount();
+
+                if (nonAlphaCount == 0) {
+                    _cleanAllAlphaNoRepTokenCount++;
+                    matchesCorrectableProfile = true;
+                }
+
+                else
+
+                if (nonAlphaCount == 1 && cleanTokenLength > nonAlphaCount) {
+                    _cleanOneNonAlphaNoRepTokenCount++;
+                    matchesCorrectableProfile = true;
+                }
+
+                else
+
+                if (nonAlphaCount == 2 && cleanTokenLength > nonAlphaCount) {
+                    _cleanTwoNonAlphaNoRepTokenCount++;
+                    matchesCorrectableProfile = true;
+                }
+
+                else
+
+                if (nonAlphaCount > 2 && cleanTokenLength > nonAlphaCount)
+                    _cleanThreeOrMoreNonAlphaTokenCount++;
+
+                if (matchesCorrectableProfile) {
+                    // update character counts for cleaned token (for alpha and punct characters, case insensitive)
+                    countChars(cleanTokenText, _charCountsCorrectable);
+
+                    // update token length bins for clean tokens matching the correctable profile
+                    int cleanBinIndex = _wordLengthBinIndex.indexOf(cleanTokenLength);
+                    if (cleanBinIndex >= 0)
+                        _correctableTokenLengths[cleanBinIndex]++;
+
+                }
+            }
+        } else
+            _cleanShortWordCount++;
+
+        // if normTokenText contains at least 1 alpha, then figure out how many digits are also included
+        if (features.containsLetter()) {
+            int numDigitsInToken = features.getDigitCount();
+            switch (numDigitsInToken) {
+                case 1:
+                    _oneNumAlphaTokenCount++;
+                    break;
+
+                case 2:
+                    _twoNumAlphaTokenCount++;
+                    break;
+
+                case 3:
+                    _threeNumAlphaTokenCount++;
+                    break;
+            }
+
+            if (numDigitsInToken > 0 && numDigitsInToken < normTokenText.length() / 2)
+                _ltHalfNumAlphaTokenCount++;
+        }
+
+        if (cleanTokenText == null)
+            // use the original normalized token
+            cleanTokenText = normTokenText;
+
+        // check if token in dictionary, and update the dictionary match count for each dictionary containing it
+        long dictionaryMask = _dictionaryIndex.lookup(cleanTokenText);
+        for (long mask = dictionaryMask; mask != 0; mask &= mask - 1)
+            _dictionaryMatches[Long.numberOfTrailingZeros(mask)]++;
+
+        int cleanTokenId = cleanTokenText.equals(normTokenText) ? normTokenId : _tokenSymbols.intern(cleanTokenText);
+        if (dictionaryMask != 0) {
+            _correctTokenCount++;
+            _uniqueCorrectTokens.add(cleanTokenId);
+        } else {
+            _incorrectTokenCount++;
+
+            // update the misspelling count for this misspelling
+            _misspellingCounts.add(cleanTokenId, 1);
+        }
+    }
+
+    private SymbolTable getReplacementKeys() {
+        if (_replacementKeys == null) {
+            ReplacementKeys replacementKeys = ReplacementKeysCache.get();
+            if (replacementKeys == null || replacementKeys._rules != _replacementRules) {
+                replacementKeys = new ReplacementKeys(_replacementRules);
+                ReplacementKeysCache.set(replacementKeys);
+            }
+
+            _replacementKeys = replacementKeys._keys;
+        }
+
+        return _replacementKeys;
+    }
+
+    private String[] toSymbols(IntSet ids) {
+        int[] idArray = ids.toArray();
+        String[] tokens = new String[idArray.length];
+        for (int i = 0; i < idArray.length; i++)
+            tokens[i] = _tokenSymbols.get(idArray[i]);
+
+        return tokens;
+    }
+
+    private static void countChars(String s, int[] charCounts) {
+        for (int i = 0, iMax = s.length(); i < iMax; i++) {
+            int charIndex = OCRPage.getCharIndex(s.charAt(i));
+            if (charIndex >= 0)
+                charCounts[charIndex]++;
+        }
+    }
+
+    private static final class ReplacementKeys {
+        private final Map<String, String> _rules;
+        private final SymbolTable _keys = new SymbolTable();
+
+        private ReplacementKeys(Map<String, String> rules) {
+            _rules = rules;
+            for (String key : rules.keySet())
+                _keys.intern(key);
+        }
+    }
+}
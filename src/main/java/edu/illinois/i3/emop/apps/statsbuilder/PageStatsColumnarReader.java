@@ -0,0 +1,295 @@
+package edu.illinois.i3.emop.apps.statsbuilder;
+
+import com.google.common.base.Charsets;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads page statistics written by {@link PageStatsColumnarWriter}, one row group at a time; only the columns asked for
+ * are decompressed.
+ */
+public class PageStatsColumnarReader implements Closeable {
+
+    private final File _file;
+    private final RandomAccessFile _input;
+    private final String[] _names;
+    private final int[] _types;
+    private final long[] _rowGroupOffsets;
+    private final int[] _rowGroupRowCounts;
+    private final long _rowCount;
+    private final long _footerOffset;
+
+    public PageStatsColumnarReader(File file) throws IOException {
+        _file = file;
+        _input = new RandomAccessFile(file, "r");
+
+        try {
+            byte[] magic = PageStatsColumnarWriter.MAGIC;
+            long length = _input.length();
+            if (length < 2 * magic.length + 16)
+                throw invalidFile();
+
+            checkMagic(length - magic.length);
+            checkMagic(0);
+            int version = _input.readUnsignedByte();
+            if (version != PageStatsColumnarWriter.VERSION)
+                throw new IOException("Unsupported version " + version + ": " + file);
+
+            int columnCount = _input.readInt();
+            _names = new String[columnCount];
+            _types = new int[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                _names[i] = _input.readUTF();
+                _types[i] = _input.readUnsignedByte();
+            }
+
+            _input.seek(length - magic.length - 16);
+            _rowCount = _input.readLong();
+            _footerOffset = _input.readLong();
+
+            _input.seek(_footerOffset);
+            int rowGroupCount = _input.readInt();
+            _rowGroupOffsets = new long[rowGroupCount];
+            _rowGroupRowCounts = new int[rowGroupCount];
+            for (int i = 0; i < rowGroupCount; i++) {
+                _rowGroupOffsets[i] = _input.readLong();
+                _rowGroupRowCounts[i] = _input.readInt();
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            _input.close();
+            throw e;
+        }
+    }
+
+    private void checkMagic(long offset) throws IOException {
+        byte[] magic = new byte[PageStatsColumnarWriter.MAGIC.length];
+        _input.seek(offset);
+        _input.readFully(magic);
+        if (!Arrays.equals(magic, PageStatsColumnarWriter.MAGIC))
+            throw invalidFile();
+    }
+
+    private IOException invalidFile() {
+        return new IOException("Not a page statistics file: " + _file);
+    }
+
+    public int getColumnCount() {
+        return _names.length;
+    }
+
+    public String getColumnName(int column) {
+        return _names[column];
+    }
+
+    /**
+     * @param column The column
+     * @return The type of the values of the column (PageStatsColumns.TYPE_*)
+     */
+    public int getColumnType(int column) {
+        return _types[column];
+    }
+
+    /**
+     * @param name The name of a column
+     * @return The (first) column with the given name, or -1
+     */
+    public int indexOf(String name) {
+        return Arrays.asList(_names).indexOf(name);
+    }
+
+    public long getRowCount() {
+        return _rowCount;
+    }
+
+    public int getRowGroupCount() {
+        return _rowGroupOffsets.length;
+    }
+
+    public int getRowGroupRowCount(int rowGroup) {
+        return _rowGroupRowCounts[rowGroup];
+    }
+
+    /**
+     * @param rowGroup The row group (in the order they were written)
+     * @return The row group
+     * @throws IOException If the row group could not be read
+     */
+    public RowGroup readRowGroup(int rowGroup) throws IOException {
+        long offset = _rowGroupOffsets[rowGroup];
+        long end = rowGroup + 1 < _rowGroupOffsets.length ? _rowGroupOffsets[rowGroup + 1] : _footerOffset;
+
+        byte[] data = new byte[(int) (end - offset)];
+        _input.seek(offset);
+        _input.readFully(data);
+
+        return new RowGroup(data, _types);
+    }
+
+    @Override
+    public void close() throws IOException {
+        _input.close();
+    }
+
+    /**
+     * The rows of a row group
+     */
+    public static final class RowGroup {
+        private final byte[] _data;
+        private final int[] _types;
+        private final int _rowCount;
+        private final int[] _chunkOffsets;      // the offset of each column chunk in the data, or -1
+        private final int[] _chunkLengths;
+
+        private RowGroup(byte[] data, int[] types) throws IOException {
+            _data = data;
+            _types = types;
+            _chunkOffsets = new int[types.length];
+            _chunkLengths = new int[types.length];
+
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(data));
+            _rowCount = input.readInt();
+            int offset = 4;
+            for (int i = 0; i < types.length; i++) {
+                if (types[i] == PageStatsColumns.TYPE_NONE) {
+                    _chunkOffsets[i] = -1;
+                    continue;
+                }
+
+                int length = input.readInt();
+                _chunkOffsets[i] = offset + 4;
+                _chunkLengths[i] = length;
+                input.skipBytes(length);
+                offset += 4 + length;
+            }
+        }
+
+        public int getRowCount() {
+            return _rowCount;
+        }
+
+        public int[] getInts(int column) throws IOException {
+            checkType(column, PageStatsColumns.TYPE_INT);
+            ChunkReader chunk = new ChunkReader(inflate(column));
+
+            int[] values = new int[_rowCount];
+            for (int row = 0; row < _rowCount; row++) {
+                int value = chunk.readVarint();
+                values[row] = (value >>> 1) ^ -(value & 1);
+            }
+
+            return values;
+        }
+
+        public double[] getDoubles(int column) throws IOException {
+            checkType(column, PageStatsColumns.TYPE_DOUBLE);
+            ChunkReader chunk = new ChunkReader(inflate(column));
+
+            double[] values = new double[_rowCount];
+            for (int row = 0; row < _rowCount; row++)
+                values[row] = Double.longBitsToDouble(chunk.readLong());
+
+            return values;
+        }
+
+        public String[] getStrings(int column) throws IOException {
+            checkType(column, PageStatsColumns.TYPE_STRING);
+            ChunkReader chunk = new ChunkReader(inflate(column));
+
+            String[] values = new String[_rowCount];
+            for (int row = 0; row < _rowCount; row++) {
+                int length = chunk.readVarint() - 1;
+                if (length >= 0)
+                    values[row] = chunk.readString(length);
+            }
+
+            return values;
+        }
+
+        private void checkType(int column, int type) {
+            if (_types[column] != type)
+                throw new IllegalArgumentException("Column " + column + " is of type " + _types[column] + ", not " + type);
+        }
+
+        private byte[] inflate(int column) throws IOException {
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(_data, _chunkOffsets[column], _chunkLengths[column]);
+
+                byte[] chunk = new byte[Math.max(64, _rowCount * (_types[column] == PageStatsColumns.TYPE_DOUBLE ? 8 : 2))];
+                int length = 0;
+                while (!inflater.finished()) {
+                    if (length == chunk.length)
+                        chunk = Arrays.copyOf(chunk, chunk.length * 2);
+
+                    int count = inflater.inflate(chunk, length, chunk.length - length);
+                    if (count == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                        throw new IOException("Truncated column chunk " + column);
+                    length += count;
+                }
+
+                return Arrays.copyOf(chunk, length);
+            }
+            catch (DataFormatException e) {
+                throw new IOException("Invalid column chunk " + column, e);
+            }
+            finally {
+                inflater.end();
+            }
+        }
+    }
+
+    private static final class ChunkReader {
+        private final byte[] _chunk;
+        private int _position;
+
+        private ChunkReader(byte[] chunk) {
+            _chunk = chunk;
+        }
+
+        private int readVarint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte b = readByte();
+                value |= (b & 0x7F) << shift;
+                if (b >= 0)
+                    return value;
+            }
+
+            throw new IOException("Invalid varint");
+        }
+
+        private long readLong() throws IOException {
+            long value = 0;
+            for (int i = 0; i < 8; i++)
+                value = (value << 8) | (readByte() & 0xFF);
+
+            return value;
+        }
+
+        private String readString(int length) throws IOException {
+            if (_position + length > _chunk.length)
+                throw new IOException("Unexpected end of column chunk");
+
+            String value = new String(_chunk, _position, length, Charsets.UTF_8);
+            _position += length;
+
+            return value;
+        }
+
+        private byte readByte() throws IOException {
+            if (_position == _chunk.length)
+                throw new IOException("Unexpected end of column chunk");
+
+            return _chunk[_position++];
+        }
+    }
+}
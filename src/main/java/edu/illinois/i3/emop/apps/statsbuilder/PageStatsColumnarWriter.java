@@ -0,0 +1,253 @@
+package edu.illinois.i3.emop.apps.statsbuilder;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Writes page (or document) statistics in a binary columnar format, with the same columns as the CSV output
+ * (see {@link PageStatsColumns}), typed as ints, doubles or strings (the document ids).
+ *
+ * The rows are written in groups, each column of a group being stored as a Deflate-compressed chunk; the row groups
+ * are indexed in a footer, so that they can be read independently (see {@link PageStatsColumnarReader}).
+ * Format (big-endian):
+ * <pre>
+ *   MAGIC, VERSION (byte)
+ *   the number of columns (int), then the name (modified UTF-8, as DataOutput.writeUTF) and type (byte) of each column
+ *   each row group: the number of rows (int), then for each column having values (type other than TYPE_NONE),
+ *                   the length (int) and compressed data of its chunk:
+ *                     ints:    zigzag-encoded varints
+ *                     doubles: IEEE 754 doubles (8 bytes)
+ *                     strings: varint (UTF-8 length + 1, or 0 for null) followed by the UTF-8 bytes
+ *   footer: the number of row groups (int), then the offset (long) and number of rows (int) of each row group,
+ *           the total number of rows (long), the offset of the footer (long), MAGIC
+ * </pre>
+ * The columns without a value for some statistics (see {@link PageStatsColumns#hasValue}) are written as 0 or NaN.
+ */
+public class PageStatsColumnarWriter implements Closeable {
+
+    public static final byte[] MAGIC = "EMOPSTAT".getBytes(Charsets.US_ASCII);
+    public static final int VERSION = 1;
+
+    public static final int DEFAULT_ROW_GROUP_SIZE = 8192;
+
+    private final DataOutputStream _output;
+    private final PageStatsColumns _columns;
+    private final int _rowGroupSize;
+    private final int[][] _ints;                // the values of each int column in the current row group
+    private final double[][] _doubles;          // the values of each double column in the current row group
+    private final String[][] _strings;          // the values of each string column in the current row group
+    private int _rowCount;                      // the number of rows in the current row group
+
+    private long _position;
+    private final List<long[]> _rowGroups = Lists.newArrayList();    // the offset and row count of each row group
+    private long _totalRowCount;
+
+    private final Deflater _deflater = new Deflater(Deflater.BEST_SPEED);
+    private byte[] _chunk = new byte[65536];
+    private int _chunkLength;
+    private byte[] _compressedChunk = new byte[65536];
+
+    /**
+     * @param output  The output; closed with the writer
+     * @param columns The columns
+     */
+    public PageStatsColumnarWriter(OutputStream output, PageStatsColumns columns) throws IOException {
+        this(output, columns, DEFAULT_ROW_GROUP_SIZE);
+    }
+
+    /**
+     * @param output       The output; closed with the writer
+     * @param columns      The columns
+     * @param rowGroupSize The (maximum) number of rows of each row group
+     */
+    public PageStatsColumnarWriter(OutputStream output, PageStatsColumns columns, int rowGroupSize) throws IOException {
+        _output = new DataOutputStream(new BufferedOutputStream(output, 65536));
+        _columns = columns;
+        _rowGroupSize = rowGroupSize;
+
+        int columnCount = columns.size();
+        _ints = new int[columnCount][];
+        _doubles = new double[columnCount][];
+        _strings = new String[columnCount][];
+        for (int i = 0; i < columnCount; i++) {
+            switch (columns.getType(i)) {
+                case PageStatsColumns.TYPE_INT:
+                    _ints[i] = new int[rowGroupSize];
+                    break;
+
+                case PageStatsColumns.TYPE_DOUBLE:
+                    _doubles[i] = new double[rowGroupSize];
+                    break;
+
+                case PageStatsColumns.TYPE_STRING:
+                    _strings[i] = new String[rowGroupSize];
+                    break;
+            }
+        }
+
+        writeHeader();
+    }
+
+    private void writeHeader() throws IOException {
+        _output.write(MAGIC);
+        _output.writeByte(VERSION);
+        _output.writeInt(_columns.size());
+        for (int i = 0; i < _columns.size(); i++) {
+            _output.writeUTF(_columns.getName(i));
+            _output.writeByte(_columns.getType(i));
+        }
+
+        // (DataOutputStream.size() is an int)
+        _position = _output.size();
+    }
+
+    /**
+     * @param docId The document id (for the "docId" column)
+     * @param stats The page or document statistics
+     */
+    public void write(String docId, OCRPageStats stats) throws IOException {
+        int row = _rowCount;
+        for (int i = 0; i < _columns.size(); i++) {
+            boolean hasValue = _columns.hasValue(i, stats);
+            switch (_columns.getType(i)) {
+                case PageStatsColumns.TYPE_INT:
+                    _ints[i][row] = hasValue ? _columns.getInt(i, stats) : 0;
+                    break;
+
+                case PageStatsColumns.TYPE_DOUBLE:
+                    _doubles[i][row] = hasValue ? _columns.getDouble(i, stats) : Double.NaN;
+                    break;
+
+                case PageStatsColumns.TYPE_STRING:
+                    _strings[i][row] = docId;
+                    break;
+            }
+        }
+
+        if (++_rowCount == _rowGroupSize)
+            writeRowGroup();
+    }
+
+    private void writeRowGroup() throws IOException {
+        _rowGroups.add(new long[] { _position, _rowCount });
+        _totalRowCount += _rowCount;
+
+        _output.writeInt(_rowCount);
+        _position += 4;
+
+        for (int i = 0; i < _columns.size(); i++) {
+            _chunkLength = 0;
+            switch (_columns.getType(i)) {
+                case PageStatsColumns.TYPE_INT:
+                    for (int row = 0; row < _rowCount; row++) {
+                        int value = _ints[i][row];
+                        writeVarint((value << 1) ^ (value >> 31));
+                    }
+                    break;
+
+                case PageStatsColumns.TYPE_DOUBLE:
+                    for (int row = 0; row < _rowCount; row++)
+                        writeLong(Double.doubleToRawLongBits(_doubles[i][row]));
+                    break;
+
+                case PageStatsColumns.TYPE_STRING:
+                    for (int row = 0; row < _rowCount; row++) {
+                        String value = _strings[i][row];
+                        if (value == null)
+                            writeVarint(0);
+                        else {
+                            byte[] bytes = value.getBytes(Charsets.UTF_8);
+                            writeVarint(bytes.length + 1);
+                            writeBytes(bytes);
+                        }
+                    }
+                    Arrays.fill(_strings[i], 0, _rowCount, null);
+                    break;
+
+                default:
+                    continue;
+            }
+
+            writeChunk();
+        }
+
+        _rowCount = 0;
+    }
+
+    private void writeChunk() throws IOException {
+        _deflater.reset();
+        _deflater.setInput(_chunk, 0, _chunkLength);
+        _deflater.finish();
+
+        int length = 0;
+        while (!_deflater.finished()) {
+            if (length == _compressedChunk.length)
+                _compressedChunk = Arrays.copyOf(_compressedChunk, _compressedChunk.length * 2);
+            length += _deflater.deflate(_compressedChunk, length, _compressedChunk.length - length);
+        }
+
+        _output.writeInt(length);
+        _output.write(_compressedChunk, 0, length);
+        _position += 4 + length;
+    }
+
+    private void writeVarint(int value) {
+        ensureChunkCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            _chunk[_chunkLength++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        _chunk[_chunkLength++] = (byte) value;
+    }
+
+    private void writeLong(long value) {
+        ensureChunkCapacity(8);
+        for (int shift = 56; shift >= 0; shift -= 8)
+            _chunk[_chunkLength++] = (byte) (value >>> shift);
+    }
+
+    private void writeBytes(byte[] bytes) {
+        ensureChunkCapacity(bytes.length);
+        System.arraycopy(bytes, 0, _chunk, _chunkLength, bytes.length);
+        _chunkLength += bytes.length;
+    }
+
+    private void ensureChunkCapacity(int length) {
+        if (_chunkLength + length > _chunk.length)
+            _chunk = Arrays.copyOf(_chunk, Math.max(_chunkLength + length, _chunk.length * 2));
+    }
+
+    /**
+     * Writes the last row group and the footer, and closes the output
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (_rowCount > 0)
+                writeRowGroup();
+
+            long footerOffset = _position;
+            _output.writeInt(_rowGroups.size());
+            for (long[] rowGroup : _rowGroups) {
+                _output.writeLong(rowGroup[0]);
+                _output.writeInt((int) rowGroup[1]);
+            }
+            _output.writeLong(_totalRowCount);
+            _output.writeLong(footerOffset);
+            _output.write(MAGIC);
+        }
+        finally {
+            _deflater.end();
+            _output.close();
+        }
+    }
+}
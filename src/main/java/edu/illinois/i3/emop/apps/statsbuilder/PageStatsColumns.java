@@ -0,0 +1,292 @@
+package edu.illinois.i3.emop.apps.statsbuilder;
+
+import edu.illinois.i3.emop.apps.statsbuilder.hocr.HOCRPageStats;
+import edu.illinois.i3.emop.apps.statsbuilder.stats.Bin;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The layout of the columns of page (or document) statistics rows, given by their names: the value of each column
+ * is the one a CsvMapWriter would write for it from the {@link OCRPageStats#toCsvEntry CSV entry} of the statistics
+ * (with a "docId" column), read from the statistics without building the entry.
+ */
+public class PageStatsColumns {
+
+    // the types of columns
+    public static final int TYPE_NONE = 0;          // no value (not in the CSV entry)
+    public static final int TYPE_STRING = 1;        // the document id
+    public static final int TYPE_INT = 2;
+    public static final int TYPE_DOUBLE = 3;
+
+    // the kinds of columns
+    private static final int EMPTY = 0;
+    private static final int DOC_ID = 1;
+    private static final int PAGE_COUNT = 2;
+    private static final int PAGE_COLUMN = 3;       // OCRPageStats.CSV_COLUMNS
+    private static final int HOCR_COLUMN = 4;       // HOCRPageStats.HOCR_CSV_COLUMNS
+    private static final int BIN = 5;
+    private static final int CHAR = 6;
+    private static final int CORRECTABLE_BIN = 7;
+    private static final int CORRECTABLE_CHAR = 8;
+    private static final int DICTIONARY = 9;
+
+    // the columns of the CSV entries with double values (the others are ints)
+    private static final List<String> DOUBLE_COLUMNS = Arrays.asList("quality", "score", "correctP", "misspelledP",
+            "uniqueCorrectP", "uniqueMisspelledP", "confMean", "confStdDev", "confMin", "confLowP");
+
+    private final String[] _names;
+    private final int[] _kinds;
+    private final int[] _indexes;
+    private final int[] _types;
+
+    /**
+     * @param names           The names of the columns
+     * @param wordLengthBins  The word length bins of the statistics
+     * @param dictionaryNames The dictionary names of the statistics
+     * @param hocr            True if the statistics are HOCRPageStats
+     * @param documentRows    True if the rows are document statistics, with a "pages" column (the number of pages)
+     *                        in place of the "page" column
+     */
+    public PageStatsColumns(String[] names, Bin[] wordLengthBins, String[] dictionaryNames, boolean hocr, boolean documentRows) {
+        _names = names.clone();
+        _kinds = new int[names.length];
+        _indexes = new int[names.length];
+        _types = new int[names.length];
+
+        for (int i = 0; i < names.length; i++) {
+            resolve(i, names[i], wordLengthBins, dictionaryNames, hocr, documentRows);
+
+            switch (_kinds[i]) {
+                case EMPTY:
+                    _types[i] = TYPE_NONE;
+                    break;
+
+                case DOC_ID:
+                    _types[i] = TYPE_STRING;
+                    break;
+
+                case PAGE_COLUMN:
+                case HOCR_COLUMN:
+                    _types[i] = DOUBLE_COLUMNS.contains(names[i]) ? TYPE_DOUBLE : TYPE_INT;
+                    break;
+
+                default:
+                    _types[i] = TYPE_INT;
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Resolves a column to the value put last for its name in the CSV entry (later values replacing earlier ones)
+     */
+    private void resolve(int column, String name, Bin[] wordLengthBins, String[] dictionaryNames,
+                         boolean hocr, boolean documentRows) {
+        _kinds[column] = EMPTY;
+
+        if (name.equals("docId")) {
+            _kinds[column] = DOC_ID;
+            return;
+        }
+
+        if (documentRows && name.equals("pages")) {
+            _kinds[column] = PAGE_COUNT;
+            return;
+        }
+
+        if (documentRows && name.equals("page"))
+            // removed from the document entries
+            return;
+
+        int index;
+        if (hocr && (index = Arrays.asList(HOCRPageStats.HOCR_CSV_COLUMNS).indexOf(name)) >= 0)
+            set(column, HOCR_COLUMN, index);
+        else if ((index = Arrays.asList(dictionaryNames).lastIndexOf(name)) >= 0)
+            set(column, DICTIONARY, index);
+        else if (name.startsWith("C_") && (index = indexOfChar(name.substring(2))) >= 0)
+            set(column, CORRECTABLE_CHAR, index);
+        else if (name.startsWith("C_") && (index = lastIndexOfBin(wordLengthBins, name.substring(2))) >= 0)
+            set(column, CORRECTABLE_BIN, index);
+        else if ((index = indexOfChar(name)) >= 0)
+            set(column, CHAR, index);
+        else if ((index = lastIndexOfBin(wordLengthBins, name)) >= 0)
+            set(column, BIN, index);
+        else if ((index = Arrays.asList(OCRPageStats.CSV_COLUMNS).indexOf(name)) >= 0)
+            set(column, PAGE_COLUMN, index);
+    }
+
+    private void set(int column, int kind, int index) {
+        _kinds[column] = kind;
+        _indexes[column] = index;
+    }
+
+    private static int indexOfChar(String name) {
+        if (name.length() != 1)
+            return -1;
+
+        return OCRPage.getCharIndex(name.charAt(0));
+    }
+
+    private static int lastIndexOfBin(Bin[] bins, String name) {
+        for (int i = bins.length - 1; i >= 0; i--)
+            if (bins[i].getName().equals(name))
+                return i;
+
+        return -1;
+    }
+
+    public int size() {
+        return _names.length;
+    }
+
+    public String getName(int column) {
+        return _names[column];
+    }
+
+    /**
+     * @param column The column
+     * @return The type of the values of the column (TYPE_*)
+     */
+    public int getType(int column) {
+        return _types[column];
+    }
+
+    /**
+     * @param column The column
+     * @param stats  The statistics
+     * @return False if the statistics have no value for the column (the hOCR columns of non-hOCR statistics, and
+     *         the confidence columns of statistics without confidence statistics)
+     */
+    public boolean hasValue(int column, OCRPageStats stats) {
+        if (_types[column] == TYPE_NONE)
+            return false;
+        if (_kinds[column] != HOCR_COLUMN)
+            return true;
+
+        return stats instanceof HOCRPageStats && (_indexes[column] < HOCRPageStats.CONFIDENCE_COLUMNS_START ||
+                ((HOCRPageStats) stats).hasConfidenceStats());
+    }
+
+    /**
+     * @param column An int column (with a value for the statistics)
+     * @param stats  The statistics
+     * @return The value of the column
+     */
+    public int getInt(int column, OCRPageStats stats) {
+        int index = _indexes[column];
+        switch (_kinds[column]) {
+            case PAGE_COUNT:
+                return stats.getPageCount();
+
+            case PAGE_COLUMN:
+                return getPageInt(stats, index);
+
+            case HOCR_COLUMN:
+                return getHOCRInt((HOCRPageStats) stats, index);
+
+            case BIN:
+                return stats._binTokenLengths[index];
+
+            case CHAR:
+                return stats._charCounts[index];
+
+            case CORRECTABLE_BIN:
+                return stats._correctableTokenLengths[index];
+
+            case CORRECTABLE_CHAR:
+                return stats._charCountsCorrectable[index];
+
+            case DICTIONARY:
+                return stats._dictionaryMatches[index];
+
+            default:
+                throw new IllegalArgumentException("Not an int column: " + _names[column]);
+        }
+    }
+
+    /**
+     * @param column A double column (with a value for the statistics)
+     * @param stats  The statistics
+     * @return The value of the column
+     */
+    public double getDouble(int column, OCRPageStats stats) {
+        int index = _indexes[column];
+        switch (_kinds[column]) {
+            case PAGE_COLUMN:
+                return getPageDouble(stats, index);
+
+            case HOCR_COLUMN:
+                return getHOCRDouble((HOCRPageStats) stats, index);
+
+            default:
+                throw new IllegalArgumentException("Not a double column: " + _names[column]);
+        }
+    }
+
+    private static int getPageInt(OCRPageStats stats, int index) {
+        switch (index) {
+            case 0: return stats.getPageNumber();
+            case 3: return stats.getTokenCount();
+            case 4: return stats.getIgnoredTokenCount();
+            case 5: return stats.getNumberObjectsTokenCount();
+            case 6: return stats.getPunctTokenCount();
+            case 7: return stats.getSingleLetterCount();
+            case 8: return stats.getCorrectTokenCount();
+            case 10: return stats.getIncorrectTokenCount();
+            case 12: return stats.getCleanOneNonAlphaNoRepTokenCount();
+            case 13: return stats.getCleanTwoNonAlphaNoRepTokenCount();
+            case 14: return stats.getCleanAllAlphaNoRepTokenCount();
+            case 15: return stats.getLenGt1NonAlphaTokenCount();
+            case 16: return stats.getCleanThreeOrMoreNonAlphaTokenCount();
+            case 17: return stats.getCleanShortWordCount();
+            case 18: return stats.getGe3RepeatedCharsTokenCount();
+            case 19: return stats.getGe4RepeatedCharsTokenCount();
+            case 20: return stats.getUniqueTokenCount();
+            case 21: return stats.getUniqueCorrectTokenCount();
+            case 23: return stats.getUniqueIncorrectTokenCount();
+            case 25: return stats.getOneNonAlphaTokenCount();
+            case 26: return stats.getTwoNonAlphaTokenCount();
+            case 27: return stats.getThreeOrMoreNonAlphaTokenCount();
+            case 28: return stats.getAllNonAlphaTokenCount();
+            case 29: return stats.getAllAlphaTokenCount();
+            case 30: return stats.get1numAlphaTokenCount();
+            case 31: return stats.get2numAlphaTokenCount();
+            case 32: return stats.get3numAlphaTokenCount();
+            case 33: return stats.getLtHalfNumAlphaTokenCount();
+            case 34: return stats.getApplicableReplacementRulesCount();
+            default: throw new IllegalArgumentException("Not an int column: " + OCRPageStats.CSV_COLUMNS[index]);
+        }
+    }
+
+    private static double getPageDouble(OCRPageStats stats, int index) {
+        switch (index) {
+            case 1: return stats.getPageQualityScore();
+            case 2: return stats.getScore();
+            case 9: return stats.getPercentCorrect();
+            case 11: return stats.getPercentIncorrect();
+            case 22: return stats.getPercentUniqueCorrect();
+            case 24: return stats.getPercentUniqueIncorrect();
+            default: throw new IllegalArgumentException("Not a double column: " + OCRPageStats.CSV_COLUMNS[index]);
+        }
+    }
+
+    private static int getHOCRInt(HOCRPageStats stats, int index) {
+        switch (index) {
+            case 0: return stats.getParagraphCount();
+            case 1: return stats.getLinesCount();
+            case 2: return stats.getConfidenceTokenCount();
+            default: throw new IllegalArgumentException("Not an int column: " + HOCRPageStats.HOCR_CSV_COLUMNS[index]);
+        }
+    }
+
+    private static double getHOCRDouble(HOCRPageStats stats, int index) {
+        switch (index) {
+            case 3: return stats.getConfidenceMean();
+            case 4: return stats.getConfidenceStdDev();
+            case 5: return stats.getConfidenceMin();
+            case 6: return stats.getPercentLowConfidence();
+            default: throw new IllegalArgumentException("Not a double column: " + HOCRPageStats.HOCR_CSV_COLUMNS[index]);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package edu.illinois.i3.emop.apps.statsbuilder;
+
+import org.supercsv.encoder.CsvEncoder;
+import org.supercsv.prefs.CsvPreference;
+import org.supercsv.util.CsvContext;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes page (or document) statistics as CSV rows, the same way a CsvMapWriter would write their
+ * {@link OCRPageStats#toCsvEntry CSV entries} (with a "docId" column): the columns are resolved once
+ * (see {@link PageStatsColumns}), and the values of each row are appended to a reused buffer, without building
+ * any map or boxing any number.
+ */
+public class PageStatsCsvWriter implements Closeable, Flushable {
+
+    // the characters numbers are written with (including NaN and Infinity)
+    private static final String NUMBER_CHARS = "-0123456789.EINaefinty";
+
+    private final Writer _writer;
+    private final CsvPreference _preference;
+    private final CsvEncoder _encoder;
+    private final PageStatsColumns _columns;
+    private final boolean[] _plainNumbers;      // true if the numbers of a column are written as they are
+    private final StringBuilder _row = new StringBuilder(1024);
+    private char[] _rowChars = new char[1024];
+
+    /**
+     * @param writer     The output
+     * @param preference The CSV preferences
+     * @param columns    The columns
+     */
+    public PageStatsCsvWriter(Writer writer, CsvPreference preference, PageStatsColumns columns) {
+        _writer = writer;
+        _preference = preference;
+        _encoder = preference.getEncoder();
+        _columns = columns;
+
+        _plainNumbers = new boolean[columns.size()];
+        for (int i = 0; i < _plainNumbers.length; i++)
+            _plainNumbers[i] = NUMBER_CHARS.equals(encode(NUMBER_CHARS, i));
+    }
+
+    public void writeHeader() throws IOException {
+        _row.setLength(0);
+        for (int i = 0; i < _columns.size(); i++) {
+            if (i > 0)
+                _row.append((char) _preference.getDelimiterChar());
+            _row.append(encode(_columns.getName(i), i));
+        }
+
+        writeRow();
+    }
+
+    /**
+     * @param docId The document id (for the "docId" column)
+     * @param stats The page or document statistics
+     */
+    public void write(String docId, OCRPageStats stats) throws IOException {
+        _row.setLength(0);
+        for (int i = 0; i < _columns.size(); i++) {
+            if (i > 0)
+                _row.append((char) _preference.getDelimiterChar());
+
+            if (!_columns.hasValue(i, stats))
+                continue;
+
+            int length = _row.length();
+            switch (_columns.getType(i)) {
+                case PageStatsColumns.TYPE_STRING:
+                    if (docId != null)
+                        _row.append(encode(docId, i));
+                    continue;
+
+                case PageStatsColumns.TYPE_INT:
+                    _row.append(_columns.getInt(i, stats));
+                    break;
+
+                case PageStatsColumns.TYPE_DOUBLE:
+                    _row.append(_columns.getDouble(i, stats));
+                    break;
+            }
+
+            if (!_plainNumbers[i]) {
+                String value = _row.substring(length);
+                _row.setLength(length);
+                _row.append(encode(value, i));
+            }
+        }
+
+        writeRow();
+    }
+
+    private String encode(String value, int column) {
+        return _encoder.encode(value, new CsvContext(1, 1, column + 1), _preference);
+    }
+
+    private void writeRow() throws IOException {
+        _row.append(_preference.getEndOfLineSymbols());
+
+        int length = _row.length();
+        if (_rowChars.length < length)
+            _rowChars = new char[Math.max(length, _rowChars.length * 2)];
+        _row.getChars(0, length, _rowChars, 0);
+        _writer.write(_rowChars, 0, length);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        _writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        _writer.close();
+    }
+}
@@ -2,23 +2,27 @@ package edu.illinois.i3.emop.apps.statsbuilder;
 
 
 import com.google.common.collect.Lists;
+import edu.illinois.i3.emop.apps.statsbuilder.dict.DictionaryIndex;
 import edu.illinois.i3.emop.apps.statsbuilder.stats.Bin;
-import edu.illinois.i3.spellcheck.engine.SpellDictionary;
+import edu.illinois.i3.emop.apps.statsbuilder.txt.TxtEngine;
 
 import java.util.List;
 import java.util.Map;
 
 public class ProcessingOptions {
-    private SpellDictionary[] _dictionaries;
+    private DictionaryIndex _dictionaryIndex;
     private Map<String, String> _replacementRules;
     private Bin[] _wordLengthBins;
+    private int _uniqueSketchPrecision;
+    private boolean _confidenceStats;
+    private TxtEngine _txtEngine = TxtEngine.BYTES;
 
-    public SpellDictionary[] getDictionaries() {
-        return _dictionaries;
+    public DictionaryIndex getDictionaryIndex() {
+        return _dictionaryIndex;
     }
 
-    public void setDictionaries(SpellDictionary[] dictionaries) {
-        _dictionaries = dictionaries;
+    public void setDictionaryIndex(DictionaryIndex dictionaryIndex) {
+        _dictionaryIndex = dictionaryIndex;
     }
 
     public Map<String, String> getReplacementRules() {
@@ -37,6 +41,40 @@ public class ProcessingOptions {
         _wordLengthBins = wordLengthBins;
     }
 
+    /**
+     * @return The precision of the sketches of the unique tokens of each page (see UniqueTokenSketches),
+     * or 0 if the unique tokens of merged statistics are counted exactly
+     */
+    public int getUniqueSketchPrecision() {
+        return _uniqueSketchPrecision;
+    }
+
+    public void setUniqueSketchPrecision(int uniqueSketchPrecision) {
+        _uniqueSketchPrecision = uniqueSketchPrecision;
+    }
+
+    /**
+     * @return True to calculate the statistics of the confidence of the words, for the formats that have it (hOCR)
+     */
+    public boolean isConfidenceStats() {
+        return _confidenceStats;
+    }
+
+    public void setConfidenceStats(boolean confidenceStats) {
+        _confidenceStats = confidenceStats;
+    }
+
+    /**
+     * @return The implementation used for tokenizing text pages
+     */
+    public TxtEngine getTxtEngine() {
+        return _txtEngine;
+    }
+
+    public void setTxtEngine(TxtEngine txtEngine) {
+        _txtEngine = txtEngine;
+    }
+
     private List<String> getDefaultColumns() {
         List<String> columns = Lists.newArrayList("page", "quality", "score", "tokens", "ignored", "numberObjects", "punct", "singleLetter",
                 "correct", "correctP", "misspelled", "misspelledP", "cleanOneNonAlphaNoRep", "cleanTwoNonAlphaNoRep", "cleanAllAlphaNoRep",
@@ -57,8 +95,8 @@ public class ProcessingOptions {
         for (Character c : OCRPage.CHARS)
             columns.add("C_" + c.toString());
 
-        for (SpellDictionary dictionary : _dictionaries)
-            columns.add(dictionary.getName());
+        for (int i = 0; i < _dictionaryIndex.size(); i++)
+            columns.add(_dictionaryIndex.getName(i));
 
         return columns;
     }
@@ -69,9 +107,12 @@ public class ProcessingOptions {
         switch (format) {
             case HOCR:
                 columns.addAll(1, Lists.newArrayList("paragraphs", "lines"));
+                if (_confidenceStats)
+                    columns.addAll(3, Lists.newArrayList("confTokens", "confMean", "confStdDev", "confMin", "confLowP"));
                 break;
 
             case TXT:
+            case GALEXML:
                 // No extra columns
                 break;
 
@@ -0,0 +1,397 @@
+package edu.illinois.i3.emop.apps.statsbuilder;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The features of a token used by {@link OCRPage#calculateStatistics}, computed by scanning the token
+ * (and its lowercase form) once, using a table of the Unicode categories of all the chars.
+ *
+ * The features are defined by the regular expressions that used to compute them, some of which use
+ * {@link Pattern#CANON_EQ}: depending on the Java version, such a pattern may match a character together with
+ * the combining marks (and other grapheme extenders) following it. The rare tokens containing such characters,
+ * or surrogates, are therefore still classified using the regular expressions, so that the features are the same
+ * either way. Instances are reusable, but not thread-safe.
+ */
+public class TokenFeatures {
+
+    private static final byte LETTER = 1;
+    private static final byte NUMBER = 1 << 1;
+    private static final byte CURRENCY = 1 << 2;
+    private static final byte PUNCT = 1 << 3;
+    private static final byte NUMBER_SEPARATOR = 1 << 4;
+    private static final byte REQUIRES_PATTERNS = 1 << 5;
+
+    private static final byte[] CHAR_CLASSES = new byte[Character.MAX_VALUE + 1];
+
+    static {
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            byte charClass = 0;
+            switch (Character.getType(c)) {
+                case Character.UPPERCASE_LETTER:
+                case Character.LOWERCASE_LETTER:
+                case Character.TITLECASE_LETTER:
+                case Character.MODIFIER_LETTER:
+                case Character.OTHER_LETTER:
+                    charClass |= LETTER;
+                    break;
+
+                case Character.DECIMAL_DIGIT_NUMBER:
+                case Character.LETTER_NUMBER:
+                case Character.OTHER_NUMBER:
+                    charClass |= NUMBER;
+                    break;
+
+                case Character.CURRENCY_SYMBOL:
+                    charClass |= CURRENCY;
+                    break;
+
+                // grapheme extenders, spacing marks, joiners and prepended characters
+                case Character.NON_SPACING_MARK:
+                case Character.ENCLOSING_MARK:
+                case Character.COMBINING_SPACING_MARK:
+                case Character.FORMAT:
+                case Character.SURROGATE:
+                    charClass |= REQUIRES_PATTERNS;
+                    break;
+            }
+
+            // the POSIX (ASCII) punctuation characters
+            if (c > 0x20 && c < 0x7f && !Character.isLetterOrDigit(c))
+                charClass |= PUNCT;
+
+            if (c == '.' || c == ',' || c == '/' || c == '-')
+                charClass |= NUMBER_SEPARATOR;
+
+            // Hangul jamo and syllables, which combine into grapheme clusters,
+            // other letters behaving as grapheme extenders or prepended characters, and line terminators
+            if ((c >= 0x1100 && c <= 0x11ff) || (c >= 0xa960 && c <= 0xa97f) || (c >= 0xac00 && c <= 0xd7ff) ||
+                    c == 0x0d4e || c == 0x0e33 || c == 0x0eb3 || c == 0xff9e || c == 0xff9f ||
+                    c == '\n' || c == '\r' || c == 0x0085 || c == 0x2028 || c == 0x2029)
+                charClass |= REQUIRES_PATTERNS;
+
+            CHAR_CLASSES[c] = charClass;
+        }
+    }
+
+    private static final Pattern NonAlphaPattern = Pattern.compile("\\P{L}", Pattern.CANON_EQ);
+    private static final Pattern PunctPattern = Pattern.compile("^\\p{Punct}$");
+    private static final Pattern NumberBasedObjectPattern = Pattern.compile("^\\p{Sc}?[\\.,/\\-]?(\\p{N}+[\\.,/%\\-]?)+\\p{Sc}?$");
+    private static final Pattern OneAlphaPattern = Pattern.compile("^\\p{L}$", Pattern.CANON_EQ);
+    private static final Pattern Repeated3orMoreCharsPattern = Pattern.compile("(\\P{N})\\1{2,}", Pattern.CANON_EQ);
+    private static final Pattern Repeated4orMoreCharsPattern = Pattern.compile("(\\P{N})\\1{3,}", Pattern.CANON_EQ);
+    private static final Pattern LeadingPunctPattern = Pattern.compile("^\\p{Punct}{0," + OCRPage.MAX_LEADING_PUNCT_TO_REMOVE + "}");
+    private static final Pattern TrailingPunctPattern = Pattern.compile("\\p{Punct}{0," + OCRPage.MAX_TRAILING_PUNCT_TO_REMOVE + "}$");
+    private static final Pattern LetterPattern = Pattern.compile("\\p{L}");
+    private static final Pattern NumberPattern = Pattern.compile("\\p{N}");
+
+    private int _nonAlphaCount;
+    private boolean _punct;
+    private boolean _numberObject;
+    private boolean _singleLetter;
+    private boolean _ge3RepeatedChars;
+    private boolean _ge4RepeatedChars;
+    private boolean _containsLetter;
+    private int _digitCount;
+    private String _cleanToken;
+    private int _cleanNonAlphaCount;
+
+    /**
+     * Computes the features of a token
+     *
+     * @param token     The token (trimmed)
+     * @param normToken The normalized (lowercased) token
+     */
+    public void classify(String token, String normToken) {
+        if (requiresPatterns(token) || requiresPatterns(normToken)) {
+            classifyWithPatterns(token, normToken);
+            return;
+        }
+
+        int length = token.length();
+        int nonAlphaCount = 0;
+        for (int i = 0; i < length; i++)
+            if ((CHAR_CLASSES[token.charAt(i)] & LETTER) == 0)
+                nonAlphaCount++;
+
+        _nonAlphaCount = nonAlphaCount;
+        _punct = length == 1 && (CHAR_CLASSES[token.charAt(0)] & PUNCT) != 0;
+        _singleLetter = length == 1 && (CHAR_CLASSES[token.charAt(0)] & LETTER) != 0;
+        _numberObject = isNumberObject(token);
+
+        int normLength = normToken.length();
+        int normNonAlphaCount = 0;
+        int digitCount = 0;
+        boolean containsLetter = false;
+        int maxRun = 0;
+        int run = 0;
+        int leadingPunctCount = 0;
+        int trailingPunctCount = 0;
+        char previous = 0;
+
+        for (int i = 0; i < normLength; i++) {
+            char c = normToken.charAt(i);
+            byte charClass = CHAR_CLASSES[c];
+
+            if ((charClass & LETTER) != 0)
+                containsLetter = true;
+            else
+                normNonAlphaCount++;
+
+            if ((charClass & NUMBER) != 0) {
+                digitCount++;
+                run = 0;
+            }
+            else {
+                // the length of the run of the same (non-number) character
+                run = i > 0 && c == previous ? run + 1 : 1;
+                maxRun = Math.max(maxRun, run);
+            }
+
+            if ((charClass & PUNCT) != 0) {
+                if (leadingPunctCount == i)
+                    leadingPunctCount++;
+                trailingPunctCount++;
+            }
+            else
+                trailingPunctCount = 0;
+
+            previous = c;
+        }
+
+        _ge3RepeatedChars = maxRun >= 3;
+        _ge4RepeatedChars = maxRun >= 4;
+        _digitCount = digitCount;
+        // removing the first letter (a single char, as there are no surrogates) makes the token shorter than the raw token
+        _containsLetter = containsLetter && normLength - 1 < length;
+
+        // remove the leading and trailing punctuation (which is not alphabetic)
+        int cleanStart = Math.min(OCRPage.MAX_LEADING_PUNCT_TO_REMOVE, leadingPunctCount);
+        int trailingPunctToRemove = Math.min(OCRPage.MAX_TRAILING_PUNCT_TO_REMOVE,
+                Math.min(trailingPunctCount, normLength - cleanStart));
+        int cleanEnd = normLength - trailingPunctToRemove;
+
+        // a token can be cleaned only if, after cleaning, the remaining substring has a length >= 3
+        if (cleanEnd - cleanStart >= OCRPage.CLEAN_TOKEN_LEN_THRESHOLD) {
+            _cleanToken = normToken.substring(cleanStart, cleanEnd);
+            _cleanNonAlphaCount = normNonAlphaCount - cleanStart - trailingPunctToRemove;
+        }
+        else {
+            _cleanToken = null;
+            _cleanNonAlphaCount = 0;
+        }
+    }
+
+    /**
+     * Computes the features of a token made of ASCII characters only, from its lowercase characters: the features
+     * are the same as those computed by {@link #classify} for the token (the case of ASCII letters changing
+     * none of them)
+     *
+     * @param normToken     The lowercase ASCII characters of the token (trimmed)
+     * @param length        The number of characters
+     * @param normTokenText The normalized token, as a string
+     */
+    public void classifyAscii(byte[] normToken, int length, String normTokenText) {
+        int nonAlphaCount = 0;
+        int digitCount = 0;
+        int maxRun = 0;
+        int run = 0;
+        int leadingPunctCount = 0;
+        int trailingPunctCount = 0;
+        byte previous = 0;
+
+        for (int i = 0; i < length; i++) {
+            byte c = normToken[i];
+            byte charClass = CHAR_CLASSES[c];
+
+            if ((charClass & LETTER) == 0)
+                nonAlphaCount++;
+
+            if ((charClass & NUMBER) != 0) {
+                digitCount++;
+                run = 0;
+            }
+            else {
+                // the length of the run of the same (non-number) character
+                run = i > 0 && c == previous ? run + 1 : 1;
+                maxRun = Math.max(maxRun, run);
+            }
+
+            if ((charClass & PUNCT) != 0) {
+                if (leadingPunctCount == i)
+                    leadingPunctCount++;
+                trailingPunctCount++;
+            }
+            else
+                trailingPunctCount = 0;
+
+            previous = c;
+        }
+
+        _nonAlphaCount = nonAlphaCount;
+        _punct = length == 1 && (CHAR_CLASSES[normToken[0]] & PUNCT) != 0;
+        _singleLetter = length == 1 && (CHAR_CLASSES[normToken[0]] & LETTER) != 0;
+        _numberObject = digitCount > 0 && isNumberObject(normTokenText);
+        _ge3RepeatedChars = maxRun >= 3;
+        _ge4RepeatedChars = maxRun >= 4;
+        _digitCount = digitCount;
+        _containsLetter = nonAlphaCount < length;
+
+        // remove the leading and trailing punctuation (which is not alphabetic)
+        int cleanStart = Math.min(OCRPage.MAX_LEADING_PUNCT_TO_REMOVE, leadingPunctCount);
+        int trailingPunctToRemove = Math.min(OCRPage.MAX_TRAILING_PUNCT_TO_REMOVE,
+                Math.min(trailingPunctCount, length - cleanStart));
+        int cleanEnd = length - trailingPunctToRemove;
+
+        // a token can be cleaned only if, after cleaning, the remaining substring has a length >= 3
+        if (cleanEnd - cleanStart >= OCRPage.CLEAN_TOKEN_LEN_THRESHOLD) {
+            _cleanToken = normTokenText.substring(cleanStart, cleanEnd);
+            _cleanNonAlphaCount = nonAlphaCount - cleanStart - trailingPunctToRemove;
+        }
+        else {
+            _cleanToken = null;
+            _cleanNonAlphaCount = 0;
+        }
+    }
+
+    private static boolean requiresPatterns(String token) {
+        for (int i = 0, iMax = token.length(); i < iMax; i++)
+            if ((CHAR_CLASSES[token.charAt(i)] & REQUIRES_PATTERNS) != 0)
+                return true;
+
+        return false;
+    }
+
+    /**
+     * Matches ^\p{Sc}?[\.,/\-]?(\p{N}+[\.,/%\-]?)+\p{Sc}?$ - that is, digits separated by single separators,
+     * optionally preceded by a separator, and optionally surrounded by currency symbols
+     */
+    private static boolean isNumberObject(String token) {
+        int length = token.length();
+        int i = 0;
+
+        if (i < length && (CHAR_CLASSES[token.charAt(i)] & CURRENCY) != 0)
+            i++;
+        if (i < length && (CHAR_CLASSES[token.charAt(i)] & NUMBER_SEPARATOR) != 0)
+            i++;
+        if (i == length || (CHAR_CLASSES[token.charAt(i)] & NUMBER) == 0)
+            return false;
+
+        boolean afterNumber = false;
+        for (; i < length; i++) {
+            char c = token.charAt(i);
+            if ((CHAR_CLASSES[c] & NUMBER) != 0)
+                afterNumber = true;
+            else if (afterNumber && ((CHAR_CLASSES[c] & NUMBER_SEPARATOR) != 0 || c == '%'))
+                afterNumber = false;
+            else
+                break;
+        }
+
+        if (i < length && (CHAR_CLASSES[token.charAt(i)] & CURRENCY) != 0)
+            i++;
+
+        return i == length;
+    }
+
+    private void classifyWithPatterns(String token, String normToken) {
+        _nonAlphaCount = countMatches(NonAlphaPattern, token);
+        _punct = PunctPattern.matcher(token).matches();
+        _numberObject = NumberBasedObjectPattern.matcher(token).matches();
+        _singleLetter = OneAlphaPattern.matcher(token).matches();
+        _ge3RepeatedChars = Repeated3orMoreCharsPattern.matcher(normToken).find();
+        _ge4RepeatedChars = Repeated4orMoreCharsPattern.matcher(normToken).find();
+        _containsLetter = LetterPattern.matcher(normToken).replaceFirst("").length() < token.length();
+        _digitCount = countMatches(NumberPattern, normToken);
+
+        String cleanToken = TrailingPunctPattern.matcher(LeadingPunctPattern.matcher(normToken).replaceFirst("")).replaceFirst("");
+        if (cleanToken.length() >= OCRPage.CLEAN_TOKEN_LEN_THRESHOLD) {
+            _cleanToken = cleanToken;
+            _cleanNonAlphaCount = countMatches(NonAlphaPattern, cleanToken);
+        }
+        else {
+            _cleanToken = null;
+            _cleanNonAlphaCount = 0;
+        }
+    }
+
+    private static int countMatches(Pattern pattern, String s) {
+        Matcher matcher = pattern.matcher(s);
+        int count = 0;
+        while (matcher.find())
+            count++;
+
+        return count;
+    }
+
+    /**
+     * @return The number of non-alphabetic characters in the raw token
+     */
+    public int getNonAlphaCount() {
+        return _nonAlphaCount;
+    }
+
+    /**
+     * @return True if the token is a single punctuation character
+     */
+    public boolean isPunct() {
+        return _punct;
+    }
+
+    /**
+     * @return True if the token is a number-based object (a number, date, amount, percentage...)
+     */
+    public boolean isNumberObject() {
+        return _numberObject;
+    }
+
+    /**
+     * @return True if the token is a single letter
+     */
+    public boolean isSingleLetter() {
+        return _singleLetter;
+    }
+
+    /**
+     * @return True if the normalized token contains a (non-number) character repeated 3 or more times in a run
+     */
+    public boolean hasGe3RepeatedChars() {
+        return _ge3RepeatedChars;
+    }
+
+    /**
+     * @return True if the normalized token contains a (non-number) character repeated 4 or more times in a run
+     */
+    public boolean hasGe4RepeatedChars() {
+        return _ge4RepeatedChars;
+    }
+
+    /**
+     * @return True if the normalized token contains at least 1 letter
+     */
+    public boolean containsLetter() {
+        return _containsLetter;
+    }
+
+    /**
+     * @return The number of digits in the normalized token
+     */
+    public int getDigitCount() {
+        return _digitCount;
+    }
+
+    /**
+     * @return The normalized token with MAX_LEADING_PUNCT_TO_REMOVE leading and MAX_TRAILING_PUNCT_TO_REMOVE trailing
+     *         punctuation removed, or null if the remaining substring has a length < CLEAN_TOKEN_LEN_THRESHOLD
+     */
+    public String getCleanToken() {
+        return _cleanToken;
+    }
+
+    /**
+     * @return The number of non-alphabetic characters in the clean token
+     */
+    public int getCleanNonAlphaCount() {
+        return _cleanNonAlphaCount;
+    }
+}
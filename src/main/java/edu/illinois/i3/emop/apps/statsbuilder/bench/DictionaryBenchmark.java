@@ -0,0 +1,219 @@
+package edu.illinois.i3.emop.apps.statsbuilder.bench;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.martiansoftware.jsap.*;
+import com.martiansoftware.jsap.stringparsers.FileStringParser;
+import edu.illinois.i3.emop.apps.statsbuilder.dict.DictionaryEngine;
+import edu.illinois.i3.emop.apps.statsbuilder.dict.DictionarySnapshot;
+import edu.illinois.i3.emop.apps.statsbuilder.dict.LoadedDictionary;
+import edu.illinois.i3.emop.apps.statsbuilder.dict.WordDictionary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the lookup throughput and heap footprint of the dictionary implementations
+ */
+public class DictionaryBenchmark {
+
+    private static final Logger log = LoggerFactory.getLogger(DictionaryBenchmark.class);
+
+    public static void main(String[] args) throws Exception {
+        JSAPResult cmdLine = parseArguments(args);
+
+        File dictFile = cmdLine.getFile("dictionary");
+        File tokensFile = cmdLine.getFile("tokens");
+        File snapshotFile = cmdLine.getFile("snapshot");
+        int seconds = cmdLine.getInt("seconds");
+        int threadCount = cmdLine.getInt("threads");
+
+        String[] tokens = tokensFile != null ? readLines(tokensFile) : createTokens(dictFile);
+        log.info("Lookups: {} distinct tokens, {} s per run", tokens.length, seconds);
+
+        for (DictionaryEngine engine : DictionaryEngine.values()) {
+            long heapBefore = usedHeap();
+            WordDictionary dictionary = LoadedDictionary.load(dictFile, engine).getDictionary();
+            long heapAfter = usedHeap();
+            log.info("{}: {} MB heap", engine, String.format("%.1f", (heapAfter - heapBefore) / 1048576d));
+
+            run(engine.toString(), dictionary, tokens, 1, seconds);
+            // Jazzy makes no thread-safety guarantees, so it is only measured single-threaded
+            if (threadCount > 1 && engine != DictionaryEngine.JAZZY)
+                run(engine.toString(), dictionary, tokens, threadCount, seconds);
+        }
+
+        if (snapshotFile != null) {
+            DictionarySnapshot snapshot = DictionarySnapshot.open(snapshotFile);
+            run("SNAPSHOT", snapshot, tokens, 1, seconds);
+            if (threadCount > 1)
+                run("SNAPSHOT", snapshot, tokens, threadCount, seconds);
+        }
+    }
+
+    private static void run(String name, final WordDictionary dictionary, final String[] tokens,
+                            int threadCount, int seconds) throws InterruptedException {
+        // warm up
+        measure(dictionary, tokens, threadCount, Math.max(1, seconds / 2));
+
+        final AtomicLong hits = new AtomicLong();
+        long lookups = measure(dictionary, tokens, threadCount, seconds, hits);
+
+        log.info("{} ({} threads): {} lookups/s ({}% hits)", name, threadCount,
+                String.format("%,d", lookups / seconds), lookups > 0 ? hits.get() * 100 / lookups : 0);
+    }
+
+    private static long measure(WordDictionary dictionary, String[] tokens, int threadCount, int seconds) throws InterruptedException {
+        return measure(dictionary, tokens, threadCount, seconds, new AtomicLong());
+    }
+
+    private static long measure(final WordDictionary dictionary, final String[] tokens, int threadCount, int seconds,
+                                final AtomicLong hits) throws InterruptedException {
+        final long deadline = System.nanoTime() + seconds * 1000000000L;
+        final AtomicLong lookups = new AtomicLong();
+
+        List<Thread> threads = Lists.newArrayList();
+        for (int t = 0; t < threadCount; t++) {
+            final int start = t * tokens.length / threadCount;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    long threadLookups = 0;
+                    long threadHits = 0;
+                    int i = start;
+
+                    while (System.nanoTime() < deadline) {
+                        // check the clock every 1024 lookups
+                        for (int j = 0; j < 1024; j++) {
+                            if (dictionary.isCorrect(tokens[i]))
+                                threadHits++;
+                            if (++i == tokens.length)
+                                i = 0;
+                        }
+                        threadLookups += 1024;
+                    }
+
+                    lookups.addAndGet(threadLookups);
+                    hits.addAndGet(threadHits);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        for (Thread thread : threads)
+            thread.join();
+
+        return lookups.get();
+    }
+
+    /**
+     * Creates a lookup workload with about as many hits as misses: the dictionary words, and the same words
+     * with one character changed, in random order
+     */
+    private static String[] createTokens(File dictFile) throws IOException {
+        Random random = new Random(42);
+        List<String> tokens = Lists.newArrayList();
+        for (String word : readLines(dictFile)) {
+            if (word.isEmpty())
+                continue;
+
+            tokens.add(word);
+
+            char[] chars = word.toCharArray();
+            chars[random.nextInt(chars.length)] = (char) ('a' + random.nextInt(26));
+            tokens.add(new String(chars));
+        }
+
+        Collections.shuffle(tokens, random);
+
+        return tokens.toArray(new String[tokens.size()]);
+    }
+
+    private static String[] readLines(File file) throws IOException {
+        List<String> lines = Lists.newArrayList();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), Charsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null)
+                lines.add(line);
+        }
+
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static Parameter[] getApplicationParameters() {
+        Parameter dictionary = new FlaggedOption("dictionary")
+                .setStringParser(
+                        FileStringParser.getParser()
+                                .setMustBeFile(true)
+                                .setMustExist(true))
+                .setRequired(true)
+                .setShortFlag('d')
+                .setHelp("The dictionary word list");
+
+        Parameter snapshot = new FlaggedOption("snapshot")
+                .setStringParser(
+                        FileStringParser.getParser()
+                                .setMustBeFile(true)
+                                .setMustExist(true))
+                .setRequired(false)
+                .setShortFlag('s')
+                .setLongFlag("snapshot")
+                .setHelp("Also measure the given dictionary snapshot (see CompileDictionary)");
+
+        Parameter tokens = new FlaggedOption("tokens")
+                .setStringParser(
+                        FileStringParser.getParser()
+                                .setMustBeFile(true)
+                                .setMustExist(true))
+                .setRequired(false)
+                .setLongFlag("tokens")
+                .setHelp("The tokens to look up, one per line (defaults to the dictionary words, and as many misspelled words)");
+
+        Parameter seconds = new FlaggedOption("seconds")
+                .setStringParser(JSAP.INTEGER_PARSER)
+                .setDefault("5")
+                .setRequired(false)
+                .setLongFlag("seconds")
+                .setHelp("The duration of each measurement, in seconds");
+
+        Parameter threads = new FlaggedOption("threads")
+                .setStringParser(JSAP.INTEGER_PARSER)
+                .setDefault(Integer.toString(Runtime.getRuntime().availableProcessors()))
+                .setRequired(false)
+                .setShortFlag('t')
+                .setLongFlag("threads")
+                .setHelp("The number of threads used for measuring concurrent lookups");
+
+        return new Parameter[] { dictionary, snapshot, tokens, seconds, threads };
+    }
+
+    private static String getApplicationHelp() {
+        return "Measures the dictionary lookup throughput (lookups/s) and heap usage of the Jazzy and compact dictionaries";
+    }
+
+    private static JSAPResult parseArguments(String[] args) throws JSAPException {
+        SimpleJSAP jsap = new SimpleJSAP("DictionaryBenchmark", getApplicationHelp(), getApplicationParameters());
+        JSAPResult result = jsap.parse(args);
+
+        if (jsap.messagePrinted())
+            System.exit(1);
+
+        return result;
+    }
+}
@@ -0,0 +1,191 @@
+package edu.illinois.i3.emop.apps.statsbuilder.bench;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.martiansoftware.jsap.*;
+import com.martiansoftware.jsap.stringparsers.FileStringParser;
+import edu.illinois.i3.emop.apps.statsbuilder.Main;
+import edu.illinois.i3.emop.apps.statsbuilder.OCRPageStats;
+import edu.illinois.i3.emop.apps.statsbuilder.dict.DictionaryEngine;
+import edu.illinois.i3.emop.apps.statsbuilder.dict.DictionaryIndex;
+import edu.illinois.i3.emop.apps.statsbuilder.dict.LoadedDictionary;
+import edu.illinois.i3.emop.apps.statsbuilder.dict.WordDictionary;
+import edu.illinois.i3.emop.apps.statsbuilder.dict.WordLengthStats;
+import edu.illinois.i3.emop.apps.statsbuilder.exceptions.PageParserException;
+import edu.illinois.i3.emop.apps.statsbuilder.stats.Bin;
+import edu.illinois.i3.emop.apps.statsbuilder.stats.WordLengthBins;
+import edu.illinois.i3.emop.apps.statsbuilder.txt.TxtEngine;
+import edu.illinois.i3.emop.apps.statsbuilder.txt.TxtPage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures the throughput (bytes/s) of the text page engines, on the text pages of a directory
+ */
+public class TxtEngineBenchmark {
+
+    private static final Logger log = LoggerFactory.getLogger(TxtEngineBenchmark.class);
+
+    public static void main(String[] args) throws Exception {
+        JSAPResult cmdLine = parseArguments(args);
+
+        File[] dictFiles = cmdLine.getFileArray("dictionary");
+        int seconds = cmdLine.getInt("seconds");
+
+        LoadedDictionary[] loadedDictionaries = LoadedDictionary.loadAll(dictFiles, DictionaryEngine.COMPACT);
+        WordDictionary[] dictionaries = new WordDictionary[loadedDictionaries.length];
+        List<WordLengthStats> dictStats = Lists.newArrayList();
+        for (int i = 0; i < loadedDictionaries.length; i++) {
+            dictionaries[i] = loadedDictionaries[i].getDictionary();
+            dictStats.add(loadedDictionaries[i].getWordLengthStats());
+        }
+
+        DictionaryIndex dictionaryIndex = DictionaryIndex.build(dictionaries);
+        Map<String, String> replacementRules = Main.getReplacementRules(cmdLine.getFileArray("replacements"));
+        Bin[] wordLengthBins = WordLengthBins.fromStatistics(WordLengthStats.aggregate(dictStats));
+
+        byte[][] pages = readPages(cmdLine.getFile("directory"));
+        long size = 0;
+        for (byte[] page : pages)
+            size += page.length;
+        log.info("Pages: {} ({} bytes), {} s per run", pages.length, String.format("%,d", size), seconds);
+
+        // the engines must give the same statistics
+        int mismatches = 0;
+        for (byte[] page : pages) {
+            OCRPageStats byteStats = calculateStatistics(TxtEngine.BYTES, page, dictionaryIndex, replacementRules, wordLengthBins);
+            OCRPageStats charStats = calculateStatistics(TxtEngine.CHARS, page, dictionaryIndex, replacementRules, wordLengthBins);
+            if (!isSame(byteStats, charStats))
+                mismatches++;
+        }
+        if (mismatches > 0)
+            log.warn("The engines gave different statistics for {} pages", mismatches);
+
+        for (TxtEngine engine : TxtEngine.values()) {
+            // warm up
+            measure(engine, pages, dictionaryIndex, replacementRules, wordLengthBins, Math.max(1, seconds / 2));
+
+            long start = System.nanoTime();
+            long bytes = measure(engine, pages, dictionaryIndex, replacementRules, wordLengthBins, seconds);
+            double elapsed = (System.nanoTime() - start) / 1e9;
+
+            log.info("{}: {} bytes/s ({} MB/s)", engine, String.format("%,d", (long) (bytes / elapsed)),
+                    String.format("%.1f", bytes / elapsed / 1048576));
+        }
+    }
+
+    private static long measure(TxtEngine engine, byte[][] pages, DictionaryIndex dictionaryIndex,
+                                Map<String, String> replacementRules, Bin[] wordLengthBins, int seconds) throws PageParserException {
+        long deadline = System.nanoTime() + seconds * 1000000000L;
+        long bytes = 0;
+
+        int i = 0;
+        while (System.nanoTime() < deadline) {
+            calculateStatistics(engine, pages[i], dictionaryIndex, replacementRules, wordLengthBins);
+            bytes += pages[i].length;
+            if (++i == pages.length)
+                i = 0;
+        }
+
+        return bytes;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static OCRPageStats calculateStatistics(TxtEngine engine, byte[] page, DictionaryIndex dictionaryIndex,
+                                                    Map<String, String> replacementRules, Bin[] wordLengthBins) throws PageParserException {
+        ByteArrayInputStream pageStream = new ByteArrayInputStream(page);
+        TxtPage txtPage = engine == TxtEngine.BYTES ? TxtPage.streamBytes(pageStream, 1) : TxtPage.stream(pageStream, 1);
+        txtPage.setWordLengthBins(wordLengthBins);
+
+        return txtPage.calculateStatistics(dictionaryIndex, replacementRules);
+    }
+
+    private static boolean isSame(OCRPageStats stats1, OCRPageStats stats2) {
+        return stats1.getTokenCount() == stats2.getTokenCount() &&
+                stats1.getCorrectTokenCount() == stats2.getCorrectTokenCount() &&
+                stats1.getUniqueTokenCount() == stats2.getUniqueTokenCount() &&
+                stats1.getApplicableReplacementRulesCount() == stats2.getApplicableReplacementRulesCount() &&
+                stats1.getCleanAllAlphaNoRepTokenCount() == stats2.getCleanAllAlphaNoRepTokenCount() &&
+                Arrays.equals(stats1.getCharCountsArray(), stats2.getCharCountsArray()) &&
+                Arrays.equals(stats1.getCharCountsCorrectableArray(), stats2.getCharCountsCorrectableArray()) &&
+                Arrays.equals(stats1.getTokenLengthsArray(), stats2.getTokenLengthsArray()) &&
+                Arrays.equals(stats1.getDictionaryMatches(), stats2.getDictionaryMatches()) &&
+                stats1.getMisspellingCounts().equals(stats2.getMisspellingCounts());
+    }
+
+    private static byte[][] readPages(File directory) throws IOException {
+        List<byte[]> pages = Lists.newArrayList();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files)
+                if (file.isFile() && file.getName().endsWith(".txt"))
+                    pages.add(Files.toByteArray(file));
+        }
+
+        if (pages.isEmpty())
+            throw new IOException("No text pages (*.txt) found in " + directory);
+
+        return pages.toArray(new byte[pages.size()][]);
+    }
+
+    private static Parameter[] getApplicationParameters() {
+        Parameter dictionary = new FlaggedOption("dictionary")
+                .setStringParser(
+                        FileStringParser.getParser()
+                                .setMustBeFile(true)
+                                .setMustExist(true))
+                .setRequired(true)
+                .setShortFlag('d')
+                .setAllowMultipleDeclarations(true)
+                .setHelp("The dictionary word lists");
+
+        Parameter replacements = new FlaggedOption("replacements")
+                .setStringParser(
+                        FileStringParser.getParser()
+                                .setMustBeFile(true)
+                                .setMustExist(true))
+                .setRequired(false)
+                .setShortFlag('r')
+                .setAllowMultipleDeclarations(true)
+                .setHelp("The files containing the replacement rules");
+
+        Parameter seconds = new FlaggedOption("seconds")
+                .setStringParser(JSAP.INTEGER_PARSER)
+                .setDefault("5")
+                .setRequired(false)
+                .setLongFlag("seconds")
+                .setHelp("The duration of each measurement, in seconds");
+
+        Parameter directory = new UnflaggedOption("directory")
+                .setStringParser(
+                        FileStringParser.getParser()
+                                .setMustBeDirectory(true)
+                                .setMustExist(true))
+                .setRequired(true)
+                .setHelp("The directory of the text pages (*.txt)");
+
+        return new Parameter[] { dictionary, replacements, seconds, directory };
+    }
+
+    private static String getApplicationHelp() {
+        return "Measures the throughput (bytes/s) of the byte and char text page engines, which must give the same statistics";
+    }
+
+    private static JSAPResult parseArguments(String[] args) throws JSAPException {
+        SimpleJSAP jsap = new SimpleJSAP("TxtEngineBenchmark", getApplicationHelp(), getApplicationParameters());
+        JSAPResult result = jsap.parse(args);
+
+        if (jsap.messagePrinted())
+            System.exit(1);
+
+        return result;
+    }
+}
@@ -0,0 +1,323 @@
+package edu.illinois.i3.emop.apps.statsbuilder.dict;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.UnsignedBytes;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable dictionary storing its words encoded as UTF-8 in a single buffer, partitioned by their encoded length.
+ * Within a partition all words have the same length, so they are stored back to back (sorted) without any per-word
+ * object. Words are found through an open-addressing hash table holding the offsets of the words in the buffer,
+ * so a lookup is usually a single probe and a byte comparison. Tokens made up of ASCII characters, the vast majority,
+ * are hashed and compared without being encoded.
+ *
+ * The buffers are only accessed using absolute reads, so lookups are safe from any number of threads.
+ * Compared to a hash map of strings, this takes little more memory than the UTF-8 encoded words themselves.
+ */
+public class CompactWordDictionary implements WordDictionary {
+
+    private static final int FNV_OFFSET_BASIS = 0x811c9dc5;
+    private static final int FNV_PRIME = 0x01000193;
+
+    private final String _name;
+    private final ByteBuffer _words;
+    private final int[] _counts;
+    private final int[] _offsets;
+    private final IntBuffer _table;
+    private final int _tableMask;
+    private final int[] _firstOrdinals;
+
+    /**
+     * @param name    The dictionary name
+     * @param words   The buffer holding the partitions
+     * @param counts  The number of words of each length (in bytes), indexed by length
+     * @param offsets The offset within the buffer of the partition of each length, indexed by length
+     * @param table   The hash table (see {@link #buildTable}), whose size must be a power of 2
+     */
+    protected CompactWordDictionary(String name, ByteBuffer words, int[] counts, int[] offsets, IntBuffer table) {
+        if (Integer.bitCount(table.capacity()) != 1)
+            throw new IllegalArgumentException("Invalid hash table size: " + table.capacity());
+
+        _name = name;
+        _words = words;
+        _counts = counts;
+        _offsets = offsets;
+        _table = table;
+        _tableMask = table.capacity() - 1;
+
+        _firstOrdinals = new int[counts.length];
+        for (int length = 1; length < counts.length; length++)
+            _firstOrdinals[length] = _firstOrdinals[length - 1] + counts[length - 1];
+    }
+
+    /**
+     * Builds a dictionary in memory
+     *
+     * @param name  The dictionary name
+     * @param words The words (duplicates and empty words are ignored)
+     * @return The dictionary
+     */
+    public static CompactWordDictionary build(String name, Collection<String> words) {
+        List<List<byte[]>> partitions = partition(words);
+        int[] counts = new int[Math.max(1, partitions.size())];
+        int[] offsets = new int[counts.length];
+
+        long size = 0;
+        for (int length = 0; length < partitions.size(); length++) {
+            counts[length] = partitions.get(length).size();
+            offsets[length] = (int) size;
+            size += (long) counts[length] * length;
+            if (size > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("Dictionary too large: " + name);
+        }
+
+        byte[] buffer = new byte[(int) size];
+        int offset = 0;
+        for (List<byte[]> partition : partitions)
+            for (byte[] word : partition) {
+                System.arraycopy(word, 0, buffer, offset, word.length);
+                offset += word.length;
+            }
+
+        ByteBuffer wordBuffer = ByteBuffer.wrap(buffer);
+
+        return new CompactWordDictionary(name, wordBuffer, counts, offsets,
+                IntBuffer.wrap(buildTable(wordBuffer, counts, offsets)));
+    }
+
+    /**
+     * Encodes the words as UTF-8, removing duplicates and empty words, and partitions them by their encoded length
+     *
+     * @param words The words
+     * @return The partitions, indexed by word length, each sorted in unsigned lexicographical order
+     */
+    private static List<List<byte[]>> partition(Collection<String> words) {
+        List<List<byte[]>> partitions = Lists.newArrayList();
+        for (String word : words) {
+            if (word.isEmpty())
+                continue;
+
+            byte[] encoded = word.getBytes(Charsets.UTF_8);
+            while (partitions.size() <= encoded.length)
+                partitions.add(Lists.<byte[]>newArrayList());
+            partitions.get(encoded.length).add(encoded);
+        }
+
+        for (List<byte[]> partition : partitions) {
+            Collections.sort(partition, UnsignedBytes.lexicographicalComparator());
+
+            // remove duplicates (adjacent, after sorting)
+            int unique = 0;
+            for (int i = 0, iMax = partition.size(); i < iMax; i++)
+                if (unique == 0 || UnsignedBytes.lexicographicalComparator().compare(partition.get(unique - 1), partition.get(i)) != 0)
+                    partition.set(unique++, partition.get(i));
+            partition.subList(unique, partition.size()).clear();
+        }
+
+        return partitions;
+    }
+
+    /**
+     * Builds the hash table of a dictionary: each used slot holds the offset (plus 1) of a word in the word buffer,
+     * and empty slots hold 0. The table is at most half full.
+     *
+     * @param words   The buffer holding the partitions
+     * @param counts  The number of words of each length
+     * @param offsets The offset of the partition of each length
+     * @return The hash table
+     */
+    private static int[] buildTable(ByteBuffer words, int[] counts, int[] offsets) {
+        long wordCount = 0;
+        for (int count : counts)
+            wordCount += count;
+
+        if (wordCount > (1 << 29))
+            throw new IllegalArgumentException("Too many words: " + wordCount);
+
+        int[] table = new int[Math.max(2, Integer.highestOneBit((int) Math.max(1, wordCount * 2 - 1)) << 1)];
+        int mask = table.length - 1;
+
+        for (int length = 1; length < counts.length; length++)
+            for (int i = 0, offset = offsets[length]; i < counts[length]; i++, offset += length) {
+                int hash = FNV_OFFSET_BASIS;
+                for (int j = 0; j < length; j++)
+                    hash = (hash ^ (words.get(offset + j) & 0xff)) * FNV_PRIME;
+
+                int slot = mix(hash) & mask;
+                while (table[slot] != 0)
+                    slot = (slot + 1) & mask;
+                table[slot] = offset + 1;
+            }
+
+        return table;
+    }
+
+    /**
+     * Writes the partition table, the words and the hash table, in the format expected by {@link DictionarySnapshot}
+     *
+     * @param output The output
+     * @throws IOException If the dictionary could not be written
+     */
+    void writeTo(DataOutput output) throws IOException {
+        output.writeInt(_counts.length - 1);
+        for (int length = 0; length < _counts.length; length++) {
+            output.writeInt(_counts[length]);
+            output.writeInt(_offsets[length]);
+        }
+
+        output.writeInt(_words.capacity());
+        for (int i = 0, iMax = _words.capacity(); i < iMax; i++)
+            output.writeByte(_words.get(i));
+
+        output.writeInt(_table.capacity());
+        for (int i = 0, iMax = _table.capacity(); i < iMax; i++)
+            output.writeInt(_table.get(i));
+    }
+
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return hash;
+    }
+
+    @Override
+    public String getName() {
+        return _name;
+    }
+
+    public int getWordCount() {
+        int wordCount = 0;
+        for (int count : _counts)
+            wordCount += count;
+
+        return wordCount;
+    }
+
+    @Override
+    public boolean isCorrect(String word) {
+        if (contains(word))
+            return true;
+
+        String lowerCaseWord = word.toLowerCase();
+        return !lowerCaseWord.equals(word) && contains(lowerCaseWord);
+    }
+
+    /**
+     * @param word The word
+     * @return True if the dictionary contains the word exactly as given, False otherwise
+     */
+    public boolean contains(String word) {
+        return indexOf(word) >= 0;
+    }
+
+    /**
+     * @param word The word
+     * @return The ordinal of the word (between 0 and the word count, in the order the words are stored),
+     *         or -1 if the dictionary does not contain the word exactly as given
+     */
+    public int indexOf(String word) {
+        // the UTF-8 encoding is at least as long as the word, so overly long tokens are rejected without encoding
+        int length = word.length();
+        if (length >= _counts.length)
+            return -1;
+
+        int hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < length; i++) {
+            char c = word.charAt(i);
+            if (c >= 0x80)
+                return indexOf(word.getBytes(Charsets.UTF_8));
+
+            // the UTF-8 encoding of an ASCII character is the character itself
+            hash = (hash ^ c) * FNV_PRIME;
+        }
+
+        if (_counts[length] == 0)
+            return -1;
+
+        for (int slot = mix(hash) & _tableMask; ; slot = (slot + 1) & _tableMask) {
+            int entry = _table.get(slot);
+            if (entry == 0)
+                return -1;
+
+            int offset = entry - 1;
+            if (isInPartition(offset, length) && equalsAscii(word, offset))
+                return getOrdinal(offset, length);
+        }
+    }
+
+    private int indexOf(byte[] key) {
+        int length = key.length;
+        if (length >= _counts.length || _counts[length] == 0)
+            return -1;
+
+        int hash = FNV_OFFSET_BASIS;
+        for (byte b : key)
+            hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+
+        for (int slot = mix(hash) & _tableMask; ; slot = (slot + 1) & _tableMask) {
+            int entry = _table.get(slot);
+            if (entry == 0)
+                return -1;
+
+            int offset = entry - 1;
+            if (isInPartition(offset, length) && equalsBytes(key, offset))
+                return getOrdinal(offset, length);
+        }
+    }
+
+    /**
+     * @return The words, in the order of their ordinals
+     */
+    public List<String> getWords() {
+        List<String> words = Lists.newArrayListWithExpectedSize(getWordCount());
+        byte[] word = new byte[_counts.length];
+
+        for (int length = 1; length < _counts.length; length++)
+            for (int i = 0, offset = _offsets[length]; i < _counts[length]; i++, offset += length) {
+                for (int j = 0; j < length; j++)
+                    word[j] = _words.get(offset + j);
+                words.add(new String(word, 0, length, Charsets.UTF_8));
+            }
+
+        return words;
+    }
+
+    private int getOrdinal(int offset, int length) {
+        return _firstOrdinals[length] + (offset - _offsets[length]) / length;
+    }
+
+    private boolean isInPartition(int offset, int length) {
+        int partitionOffset = _offsets[length];
+        return offset >= partitionOffset && offset < partitionOffset + _counts[length] * length;
+    }
+
+    private boolean equalsAscii(String word, int offset) {
+        for (int i = 0, iMax = word.length(); i < iMax; i++)
+            if (_words.get(offset + i) != (byte) word.charAt(i))
+                return false;
+
+        return true;
+    }
+
+    private boolean equalsBytes(byte[] key, int offset) {
+        for (int i = 0; i < key.length; i++)
+            if (_words.get(offset + i) != key[i])
+                return false;
+
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return _name;
+    }
+}
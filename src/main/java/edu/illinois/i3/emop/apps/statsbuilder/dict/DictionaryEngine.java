@@ -0,0 +1,15 @@
+package edu.illinois.i3.emop.apps.statsbuilder.dict;
+
+/**
+ * The implementation used for dictionaries loaded from word lists
+ * (dictionary snapshots are always memory-mapped {@link CompactWordDictionary} instances)
+ */
+public enum DictionaryEngine {
+
+    /** Jazzy's {@link edu.illinois.i3.spellcheck.engine.SpellDictionaryHashMap} */
+    JAZZY,
+
+    /** {@link CompactWordDictionary} */
+    COMPACT
+
+}
@@ -0,0 +1,153 @@
+package edu.illinois.i3.emop.apps.statsbuilder.dict;
+
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+
+/**
+ * Answers "which dictionaries contain this word" for all the loaded dictionaries at once, as a bitmask
+ * where bit i is set if dictionary i contains the word.
+ *
+ * When there are several dictionaries, all in-memory {@link CompactWordDictionary} instances (the default for word
+ * lists), their words are merged into a single compact dictionary holding the bitmask of each word, so a lookup
+ * takes a single probe no matter how many dictionaries are loaded. Otherwise each dictionary is probed in turn;
+ * in particular, memory-mapped {@link DictionarySnapshot} instances are not copied onto the heap.
+ *
+ * Lookups can additionally go through a shared {@link VerdictCache} (see {@link #withVerdictCache}), which saves
+ * the lowercasing and the probes of each dictionary for the tokens seen over and over.
+ */
+public class DictionaryIndex {
+
+    public static final int MAX_DICTIONARIES = Long.SIZE;
+
+    private final String[] _names;
+    private final CompactWordDictionary _mergedWords;
+    private final long[] _masks;
+    private final WordDictionary[] _dictionaries;
+    private final VerdictCache _verdictCache;
+
+    private DictionaryIndex(String[] names, CompactWordDictionary mergedWords, long[] masks,
+                            WordDictionary[] dictionaries, VerdictCache verdictCache) {
+        _names = names;
+        _mergedWords = mergedWords;
+        _masks = masks;
+        _dictionaries = dictionaries;
+        _verdictCache = verdictCache;
+    }
+
+    /**
+     * @param dictionaries The dictionaries (at most {@link #MAX_DICTIONARIES})
+     * @return The index
+     */
+    public static DictionaryIndex build(WordDictionary[] dictionaries) {
+        if (dictionaries.length > MAX_DICTIONARIES)
+            throw new IllegalArgumentException(String.format("Too many dictionaries: %d (at most %d are supported)",
+                    dictionaries.length, MAX_DICTIONARIES));
+
+        String[] names = new String[dictionaries.length];
+        boolean mergeable = dictionaries.length > 1;
+        for (int i = 0; i < dictionaries.length; i++) {
+            names[i] = dictionaries[i].getName();
+            mergeable &= dictionaries[i] instanceof CompactWordDictionary && !(dictionaries[i] instanceof DictionarySnapshot);
+        }
+
+        if (!mergeable)
+            return new DictionaryIndex(names, null, null, dictionaries.clone(), null);
+
+        Map<String, Long> wordMasks = Maps.newHashMap();
+        for (int i = 0; i < dictionaries.length; i++) {
+            long bit = 1L << i;
+            for (String word : ((CompactWordDictionary) dictionaries[i]).getWords()) {
+                Long mask = wordMasks.get(word);
+                wordMasks.put(word, mask != null ? mask | bit : bit);
+            }
+        }
+
+        CompactWordDictionary mergedWords = CompactWordDictionary.build("merged", wordMasks.keySet());
+        long[] masks = new long[mergedWords.getWordCount()];
+        for (Map.Entry<String, Long> entry : wordMasks.entrySet())
+            masks[mergedWords.indexOf(entry.getKey())] = entry.getValue();
+
+        return new DictionaryIndex(names, mergedWords, masks, null, null);
+    }
+
+    /**
+     * @param capacity The maximum number of cached verdicts
+     * @return An index answering the same lookups as this one, through a new verdict cache
+     */
+    public DictionaryIndex withVerdictCache(int capacity) {
+        return new DictionaryIndex(_names, _mergedWords, _masks, _dictionaries, new VerdictCache(capacity));
+    }
+
+    /**
+     * @return The verdict cache, or null if lookups are not cached
+     */
+    public VerdictCache getVerdictCache() {
+        return _verdictCache;
+    }
+
+    /**
+     * @return The number of dictionaries
+     */
+    public int size() {
+        return _names.length;
+    }
+
+    /**
+     * @param index The dictionary position
+     * @return The name of the dictionary
+     */
+    public String getName(int index) {
+        return _names[index];
+    }
+
+    /**
+     * @return The dictionary names, by dictionary position
+     */
+    public String[] getNames() {
+        return _names.clone();
+    }
+
+    /**
+     * Equivalent to calling {@link WordDictionary#isCorrect} on each dictionary
+     *
+     * @param word The word
+     * @return The bitmask of the dictionaries containing the word (or its lowercase form)
+     */
+    public long lookup(String word) {
+        if (_verdictCache == null)
+            return probe(word);
+
+        Long cachedMask = _verdictCache.get(word);
+        if (cachedMask != null)
+            return cachedMask;
+
+        long mask = probe(word);
+        _verdictCache.put(word, mask);
+
+        return mask;
+    }
+
+    private long probe(String word) {
+        if (_mergedWords == null) {
+            long mask = 0;
+            for (int i = 0; i < _dictionaries.length; i++)
+                if (_dictionaries[i].isCorrect(word))
+                    mask |= 1L << i;
+
+            return mask;
+        }
+
+        long mask = getMask(word);
+        String lowerCaseWord = word.toLowerCase();
+        if (!lowerCaseWord.equals(word))
+            mask |= getMask(lowerCaseWord);
+
+        return mask;
+    }
+
+    private long getMask(String word) {
+        int index = _mergedWords.indexOf(word);
+        return index >= 0 ? _masks[index] : 0;
+    }
+}
@@ -0,0 +1,227 @@
+package edu.illinois.i3.emop.apps.statsbuilder.dict;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Sets;
+import edu.illinois.i3.emop.apps.statsbuilder.stats.Bin;
+import edu.illinois.i3.emop.apps.statsbuilder.stats.WordLengthBins;
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Set;
+
+/**
+ * A dictionary compiled into a compact binary file, which is memory-mapped (rather than parsed) when loaded,
+ * so that loading is nearly instant and the JVMs running on the same host share the dictionary through the page cache.
+ *
+ * The snapshot holds the name of the dictionary, the MD5 fingerprint of the word list it was compiled from,
+ * the word length statistics and bins, and the words, laid out as described in {@link CompactWordDictionary}.
+ *
+ * <pre>
+ * int     magic, version
+ * byte[]  fingerprint (16)
+ * long    n; double mean, secondMoment, min, max, sum      (word length statistics)
+ * int     bin count; { int min, int max } per bin           (NO_BOUND for open bins)
+ * int     name length; byte[] name (UTF-8)
+ * int     max word length; { int count, int offset } per word length, from 0 to max word length
+ * int     words length; byte[] words
+ * int     hash table size; int[] hash table
+ * </pre>
+ */
+public class DictionarySnapshot extends CompactWordDictionary {
+
+    public static final String EXTENSION = ".sbdict";
+
+    private static final int MAGIC = 0x53424443;    // "SBDC"
+    private static final int VERSION = 2;
+    private static final int NO_BOUND = Integer.MIN_VALUE;
+    private static final int FINGERPRINT_LENGTH = 16;
+
+    private final byte[] _fingerprint;
+    private final WordLengthStats _wordLengthStats;
+    private final Bin[] _wordLengthBins;
+
+    private DictionarySnapshot(String name, byte[] fingerprint, WordLengthStats wordLengthStats, Bin[] wordLengthBins,
+                               ByteBuffer words, int[] counts, int[] offsets, IntBuffer table) {
+        super(name, words, counts, offsets, table);
+
+        _fingerprint = fingerprint;
+        _wordLengthStats = wordLengthStats;
+        _wordLengthBins = wordLengthBins;
+    }
+
+    /**
+     * @param file The file
+     * @return True if the file is a dictionary snapshot, False otherwise
+     * @throws IOException If the file could not be read
+     */
+    public static boolean isSnapshot(File file) throws IOException {
+        try (DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+            return file.length() >= 4 && input.readInt() == MAGIC;
+        }
+    }
+
+    /**
+     * Memory-maps a dictionary snapshot
+     *
+     * @param file The snapshot file
+     * @return The dictionary
+     * @throws IOException If the snapshot could not be read, or is not valid
+     */
+    public static DictionarySnapshot open(File file) throws IOException {
+        MappedByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (raf.length() > Integer.MAX_VALUE)
+                throw new IOException("Dictionary snapshot too large: " + file);
+
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        }
+
+        try {
+            if (buffer.getInt() != MAGIC)
+                throw new IOException("Not a dictionary snapshot: " + file);
+
+            int version = buffer.getInt();
+            if (version != VERSION)
+                throw new IOException(String.format("Unsupported dictionary snapshot version %d: %s", version, file));
+
+            byte[] fingerprint = new byte[FINGERPRINT_LENGTH];
+            buffer.get(fingerprint);
+
+            WordLengthStats wordLengthStats = new WordLengthStats(buffer.getLong(), buffer.getDouble(), buffer.getDouble(),
+                    buffer.getDouble(), buffer.getDouble(), buffer.getDouble());
+
+            Bin[] wordLengthBins = new Bin[buffer.getInt()];
+            for (int i = 0; i < wordLengthBins.length; i++) {
+                int min = buffer.getInt();
+                int max = buffer.getInt();
+                wordLengthBins[i] = new Bin<>(min != NO_BOUND ? min : null, max != NO_BOUND ? max : null);
+            }
+
+            byte[] name = new byte[buffer.getInt()];
+            buffer.get(name);
+
+            int maxWordLength = buffer.getInt();
+            int[] counts = new int[maxWordLength + 1];
+            int[] offsets = new int[maxWordLength + 1];
+            for (int length = 0; length <= maxWordLength; length++) {
+                counts[length] = buffer.getInt();
+                offsets[length] = buffer.getInt();
+            }
+
+            ByteBuffer words = slice(buffer, buffer.getInt());
+            for (int length = 0; length <= maxWordLength; length++)
+                if (offsets[length] < 0 || (long) offsets[length] + (long) counts[length] * length > words.capacity())
+                    throw new IOException("Corrupt dictionary snapshot: " + file);
+
+            IntBuffer table = slice(buffer, buffer.getInt() * 4).asIntBuffer();
+
+            return new DictionarySnapshot(new String(name, Charsets.UTF_8), fingerprint, wordLengthStats, wordLengthBins,
+                    words, counts, offsets, table);
+        }
+        catch (RuntimeException e) {
+            // BufferUnderflowException, NegativeArraySizeException...
+            throw new IOException("Corrupt dictionary snapshot: " + file, e);
+        }
+    }
+
+    /**
+     * @return The next length bytes of the buffer, as a separate buffer; the position of the buffer is moved past them
+     */
+    private static ByteBuffer slice(ByteBuffer buffer, int length) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(slice.position() + length);
+        buffer.position(buffer.position() + length);
+
+        return slice.slice();
+    }
+
+    /**
+     * Compiles a word list (one word per line, UTF-8 encoded) into a dictionary snapshot
+     *
+     * @param wordList The word list
+     * @param name     The dictionary name
+     * @param snapshot The snapshot file to create
+     * @return The created snapshot
+     * @throws IOException If the word list could not be read, or the snapshot could not be written
+     */
+    public static DictionarySnapshot compile(File wordList, String name, File snapshot) throws IOException {
+        SummaryStatistics stats = new SummaryStatistics();
+        Set<String> words = Sets.newHashSet();
+
+        MessageDigest md5 = LoadedDictionary.newMD5();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new DigestInputStream(new FileInputStream(wordList), md5), Charsets.UTF_8))) {
+            String word;
+            while ((word = reader.readLine()) != null) {
+                stats.addValue(word.length());
+                if (!word.isEmpty())
+                    words.add(word);
+            }
+        }
+
+        byte[] fingerprint = md5.digest();
+
+        WordLengthStats wordLengthStats = WordLengthStats.of(stats);
+        Bin[] wordLengthBins = WordLengthBins.fromStatistics(stats);
+
+        CompactWordDictionary dictionary = CompactWordDictionary.build(name, words);
+        byte[] encodedName = name.getBytes(Charsets.UTF_8);
+
+        File tmpSnapshot = new File(snapshot.getPath() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpSnapshot)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.write(fingerprint);
+
+            output.writeLong(wordLengthStats.getN());
+            output.writeDouble(wordLengthStats.getMean());
+            output.writeDouble(wordLengthStats.getSecondMoment());
+            output.writeDouble(wordLengthStats.getMin());
+            output.writeDouble(wordLengthStats.getMax());
+            output.writeDouble(wordLengthStats.getSum());
+
+            output.writeInt(wordLengthBins.length);
+            for (Bin<Integer> bin : wordLengthBins) {
+                output.writeInt(bin.getMin() != null ? bin.getMin() : NO_BOUND);
+                output.writeInt(bin.getMax() != null ? bin.getMax() : NO_BOUND);
+            }
+
+            output.writeInt(encodedName.length);
+            output.write(encodedName);
+
+            dictionary.writeTo(output);
+        }
+
+        if (!tmpSnapshot.renameTo(snapshot)) {
+            tmpSnapshot.delete();
+            throw new IOException("Could not create: " + snapshot);
+        }
+
+        return open(snapshot);
+    }
+
+    /**
+     * @return The MD5 fingerprint of the word list the snapshot was compiled from
+     */
+    public byte[] getFingerprint() {
+        return _fingerprint.clone();
+    }
+
+    public WordLengthStats getWordLengthStats() {
+        return _wordLengthStats;
+    }
+
+    /**
+     * @return The word length bins computed from the word length statistics of this dictionary alone
+     */
+    public Bin[] getWordLengthBins() {
+        return _wordLengthBins.clone();
+    }
+}
@@ -0,0 +1,34 @@
+package edu.illinois.i3.emop.apps.statsbuilder.dict;
+
+import edu.illinois.i3.spellcheck.engine.SpellDictionary;
+
+/**
+ * A {@link WordDictionary} backed by a Jazzy {@link SpellDictionary}
+ */
+public class JazzyWordDictionary implements WordDictionary {
+
+    private final SpellDictionary _dictionary;
+
+    public JazzyWordDictionary(SpellDictionary dictionary) {
+        _dictionary = dictionary;
+    }
+
+    public SpellDictionary getSpellDictionary() {
+        return _dictionary;
+    }
+
+    @Override
+    public String getName() {
+        return _dictionary.getName();
+    }
+
+    @Override
+    public boolean isCorrect(String word) {
+        return _dictionary.isCorrect(word);
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+}
@@ -0,0 +1,167 @@
+package edu.illinois.i3.emop.apps.statsbuilder.dict;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import edu.illinois.i3.spellcheck.engine.SpellDictionary;
+import edu.illinois.i3.spellcheck.engine.SpellDictionaryHashMap;
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * A dictionary loaded from either a word list (one word per line) or a dictionary snapshot,
+ * together with the word length statistics and the fingerprint of its word list
+ */
+public class LoadedDictionary {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadedDictionary.class);
+
+    private final WordDictionary _dictionary;
+    private final WordLengthStats _wordLengthStats;
+    private final byte[] _fingerprint;
+
+    public LoadedDictionary(WordDictionary dictionary, WordLengthStats wordLengthStats, byte[] fingerprint) {
+        _dictionary = dictionary;
+        _wordLengthStats = wordLengthStats;
+        _fingerprint = fingerprint;
+    }
+
+    /**
+     * Loads a dictionary; dictionary snapshots are detected by their content, not their extension
+     *
+     * @param dictFile The word list or dictionary snapshot
+     * @param engine   The implementation to use if the dictionary is a word list
+     * @return The loaded dictionary
+     * @throws IOException If the dictionary could not be loaded
+     */
+    public static LoadedDictionary load(File dictFile, DictionaryEngine engine) throws IOException {
+        if (DictionarySnapshot.isSnapshot(dictFile)) {
+            log.info("Loading dictionary snapshot: {}", dictFile);
+            DictionarySnapshot snapshot = DictionarySnapshot.open(dictFile);
+            return new LoadedDictionary(snapshot, snapshot.getWordLengthStats(), snapshot.getFingerprint());
+        }
+
+        log.info("Loading dictionary: {}", dictFile);
+        String name = getDictionaryName(dictFile);
+        SpellDictionary jazzyDict = null;
+        List<String> words = null;
+
+        if (engine == DictionaryEngine.JAZZY) {
+            jazzyDict = new SpellDictionaryHashMap();
+            jazzyDict.setName(name);
+        }
+        else
+            words = Lists.newArrayList();
+
+        // a single pass over the word list fills the dictionary, and computes the word length statistics and the fingerprint
+        MessageDigest md5 = newMD5();
+        SummaryStatistics stats = new SummaryStatistics();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new DigestInputStream(new FileInputStream(dictFile), md5), Charsets.UTF_8))) {
+            String word;
+            while ((word = reader.readLine()) != null) {
+                stats.addValue(word.length());
+                if (word.isEmpty())
+                    continue;
+
+                if (jazzyDict != null)
+                    jazzyDict.addWord(word);
+                else
+                    words.add(word);
+            }
+        }
+
+        WordDictionary dictionary = jazzyDict != null ?
+                new JazzyWordDictionary(jazzyDict) : CompactWordDictionary.build(name, words);
+
+        return new LoadedDictionary(dictionary, WordLengthStats.of(stats), md5.digest());
+    }
+
+    /**
+     * Loads several dictionaries concurrently, so that loading takes about as long as loading the largest dictionary
+     *
+     * @param dictFiles The word lists or dictionary snapshots
+     * @param engine    The implementation to use for the dictionaries that are word lists
+     * @return The loaded dictionaries, in the same order as the given files
+     * @throws IOException If any of the dictionaries could not be loaded
+     */
+    public static LoadedDictionary[] loadAll(File[] dictFiles, final DictionaryEngine engine) throws IOException {
+        LoadedDictionary[] dictionaries = new LoadedDictionary[dictFiles.length];
+        if (dictFiles.length == 0)
+            return dictionaries;
+
+        int threadCount = Math.min(dictFiles.length, Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+
+        try {
+            List<Future<LoadedDictionary>> futures = Lists.newArrayListWithExpectedSize(dictFiles.length);
+            for (final File dictFile : dictFiles)
+                futures.add(executor.submit(new Callable<LoadedDictionary>() {
+                    @Override
+                    public LoadedDictionary call() throws IOException {
+                        return load(dictFile, engine);
+                    }
+                }));
+
+            for (int i = 0; i < dictionaries.length; i++)
+                dictionaries[i] = futures.get(i).get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading dictionaries");
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            throw new IOException("Error loading dictionaries", cause);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        return dictionaries;
+    }
+
+    static MessageDigest newMD5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param dictFile The word list
+     * @return The dictionary name (the name of the word list, without extension)
+     */
+    public static String getDictionaryName(File dictFile) {
+        String dictFileName = dictFile.getName();
+        int extIndex = dictFileName.lastIndexOf(".");
+
+        return extIndex > 0 ? dictFileName.substring(0, extIndex) : dictFileName;
+    }
+
+    public WordDictionary getDictionary() {
+        return _dictionary;
+    }
+
+    public WordLengthStats getWordLengthStats() {
+        return _wordLengthStats;
+    }
+
+    /**
+     * @return The MD5 fingerprint of the word list
+     */
+    public byte[] getFingerprint() {
+        return _fingerprint.clone();
+    }
+}
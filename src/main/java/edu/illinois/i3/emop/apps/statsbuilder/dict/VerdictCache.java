@@ -0,0 +1,142 @@
+package edu.illinois.i3.emop.apps.statsbuilder.dict;
+
+import edu.illinois.i3.emop.apps.statsbuilder.stats.FrequencySketch;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A bounded cache of spellcheck verdicts (the bitmask of the dictionaries containing a token), shared by all the
+ * worker threads. The cache is split into independently locked segments, each evicting its least recently used
+ * token, but only admitting a new token if it was seen more often recently than the token it would evict
+ * (TinyLFU), so that one-off OCR garbage does not push out the common words.
+ */
+public class VerdictCache {
+
+    private static final int MAX_SEGMENTS = 64;
+    private static final int MIN_SEGMENT_CAPACITY = 256;
+
+    private final Segment[] _segments;
+    private final int _segmentMask;
+
+    /**
+     * @param capacity The maximum number of cached verdicts
+     */
+    public VerdictCache(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+
+        int segmentCount = Math.min(MAX_SEGMENTS, Integer.highestOneBit(Math.max(1, capacity / MIN_SEGMENT_CAPACITY)));
+        int segmentCapacity = (capacity + segmentCount - 1) / segmentCount;
+
+        _segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++)
+            _segments[i] = new Segment(segmentCapacity);
+        _segmentMask = segmentCount - 1;
+    }
+
+    /**
+     * @param token The token
+     * @return The cached verdict, or null if not cached
+     */
+    public Long get(String token) {
+        int hash = spread(token.hashCode());
+        return segmentFor(hash).get(token, hash);
+    }
+
+    /**
+     * Caches a verdict, unless the token is less popular than the one it would evict
+     *
+     * @param token   The token
+     * @param verdict The verdict
+     */
+    public void put(String token, long verdict) {
+        int hash = spread(token.hashCode());
+        segmentFor(hash).put(token, hash, verdict);
+    }
+
+    public long getHitCount() {
+        long hits = 0;
+        for (Segment segment : _segments)
+            hits += segment.getHitCount();
+
+        return hits;
+    }
+
+    public long getMissCount() {
+        long misses = 0;
+        for (Segment segment : _segments)
+            misses += segment.getMissCount();
+
+        return misses;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : _segments)
+            size += segment.size();
+
+        return size;
+    }
+
+    private Segment segmentFor(int hash) {
+        return _segments[(hash >>> 16) & _segmentMask];
+    }
+
+    private static int spread(int hash) {
+        hash *= 0x9e3779b9;
+        return hash ^ (hash >>> 15);
+    }
+
+    private static final class Segment {
+        private final int _capacity;
+        private final LinkedHashMap<String, Long> _verdicts;
+        private final FrequencySketch _sketch;
+        private long _hits;
+        private long _misses;
+
+        private Segment(int capacity) {
+            _capacity = capacity;
+            _verdicts = new LinkedHashMap<>(capacity * 4 / 3 + 1, 0.75f, true);
+            _sketch = new FrequencySketch(capacity);
+        }
+
+        private synchronized Long get(String token, int hash) {
+            _sketch.increment(hash);
+
+            Long verdict = _verdicts.get(token);
+            if (verdict != null)
+                _hits++;
+            else
+                _misses++;
+
+            return verdict;
+        }
+
+        private synchronized void put(String token, int hash, long verdict) {
+            if (_verdicts.size() >= _capacity && !_verdicts.containsKey(token)) {
+                // the least recently used token is the candidate for eviction
+                Iterator<String> lru = _verdicts.keySet().iterator();
+                String victim = lru.next();
+                if (_sketch.frequency(hash) <= _sketch.frequency(spread(victim.hashCode())))
+                    return;
+
+                lru.remove();
+            }
+
+            _verdicts.put(token, verdict);
+        }
+
+        private synchronized long getHitCount() {
+            return _hits;
+        }
+
+        private synchronized long getMissCount() {
+            return _misses;
+        }
+
+        private synchronized int size() {
+            return _verdicts.size();
+        }
+    }
+}
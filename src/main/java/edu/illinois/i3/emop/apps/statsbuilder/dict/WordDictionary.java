@@ -0,0 +1,20 @@
+package edu.illinois.i3.emop.apps.statsbuilder.dict;
+
+/**
+ * A dictionary used for spellchecking page tokens. Implementations must be safe for concurrent lookups,
+ * since pages are processed on multiple threads.
+ */
+public interface WordDictionary {
+
+    /**
+     * @return The dictionary name (used as the name of the dictionary match column)
+     */
+    String getName();
+
+    /**
+     * @param word The word
+     * @return True if the word (or its lowercase form) is in the dictionary, False otherwise
+     */
+    boolean isCorrect(String word);
+
+}
@@ -0,0 +1,107 @@
+package edu.illinois.i3.emop.apps.statsbuilder.dict;
+
+import org.apache.commons.math3.stat.descriptive.AggregateSummaryStatistics;
+import org.apache.commons.math3.stat.descriptive.StatisticalSummary;
+import org.apache.commons.math3.stat.descriptive.StatisticalSummaryValues;
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * The word length statistics of a dictionary, holding just enough state (the moments) to be stored
+ * in a dictionary snapshot and aggregated with the statistics of other dictionaries
+ */
+public class WordLengthStats {
+
+    private final long _n;
+    private final double _mean;
+    private final double _secondMoment;
+    private final double _min;
+    private final double _max;
+    private final double _sum;
+
+    public WordLengthStats(long n, double mean, double secondMoment, double min, double max, double sum) {
+        _n = n;
+        _mean = mean;
+        _secondMoment = secondMoment;
+        _min = min;
+        _max = max;
+        _sum = sum;
+    }
+
+    public static WordLengthStats of(SummaryStatistics stats) {
+        return new WordLengthStats(stats.getN(), stats.getMean(), stats.getSecondMoment(),
+                stats.getMin(), stats.getMax(), stats.getSum());
+    }
+
+    public long getN() {
+        return _n;
+    }
+
+    public double getMean() {
+        return _mean;
+    }
+
+    public double getSecondMoment() {
+        return _secondMoment;
+    }
+
+    public double getMin() {
+        return _min;
+    }
+
+    public double getMax() {
+        return _max;
+    }
+
+    public double getSum() {
+        return _sum;
+    }
+
+    /**
+     * Aggregates the statistics of several dictionaries, the same way (and with the same results) as
+     * {@link AggregateSummaryStatistics#aggregate(Collection)} does for {@link SummaryStatistics}
+     *
+     * @param statistics The statistics to aggregate
+     * @return The aggregated statistics, or null if there are none
+     */
+    public static StatisticalSummary aggregate(Collection<WordLengthStats> statistics) {
+        Iterator<WordLengthStats> iterator = statistics.iterator();
+        if (!iterator.hasNext())
+            return null;
+
+        WordLengthStats current = iterator.next();
+        long n = current._n;
+        double min = current._min;
+        double sum = current._sum;
+        double max = current._max;
+        double m2 = current._secondMoment;
+        double mean = current._mean;
+
+        while (iterator.hasNext()) {
+            current = iterator.next();
+            if (current._min < min || Double.isNaN(min))
+                min = current._min;
+            if (current._max > max || Double.isNaN(max))
+                max = current._max;
+            sum += current._sum;
+            final double oldN = n;
+            final double curN = current._n;
+            n += curN;
+            final double meanDiff = current._mean - mean;
+            mean = sum / n;
+            m2 = m2 + current._secondMoment + meanDiff * meanDiff * oldN * curN / n;
+        }
+
+        final double variance;
+        if (n == 0)
+            variance = Double.NaN;
+        else if (n == 1)
+            variance = 0d;
+        else
+            variance = m2 / (n - 1);
+
+        return new StatisticalSummaryValues(mean, variance, n, max, min, sum);
+    }
+}
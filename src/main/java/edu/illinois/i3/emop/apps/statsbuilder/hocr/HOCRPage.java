@@ -1,23 +1,15 @@
 package edu.illinois.i3.emop.apps.statsbuilder.hocr;
 
-import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
 import edu.illinois.i3.emop.apps.statsbuilder.OCRPage;
+import edu.illinois.i3.emop.apps.statsbuilder.dict.DictionaryIndex;
 import edu.illinois.i3.emop.apps.statsbuilder.exceptions.PageParserException;
-import edu.illinois.i3.spellcheck.engine.SpellDictionary;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.xpath.*;
+import javax.xml.stream.XMLStreamException;
 import java.io.*;
+import java.nio.file.Files;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * @author capitanu
@@ -31,69 +23,34 @@ public class HOCRPage extends OCRPage<HOCRPageStats> {
     private final Integer _pageNumber;
     private final String _ocrEngine;
     private final Set<String> _ocrCapabilities;
-    private final Element _pageXml;
-    private final XPathExpression _xpathOCRPara;
-    private final XPathExpression _xpathOCRLine;
-    private final XPathExpression _xpathOCRXWord;
+    private final HOCRReader _reader;
+    private boolean _tokensRead;
 
     // Additional page stats
     private List<Integer> _linesPerParagraph;
     private List<Integer> _tokensPerLine;
 
 
-    private HOCRPage(String pageId, Integer pageNumber, Element pageXml, String ocrEngine, Set<String> ocrCapabilities) {
-        _pageId = pageId;
+    private HOCRPage(Integer pageNumber, HOCRReader reader) {
+        _pageId = reader.getPageId();
         _pageNumber = pageNumber;
-        _pageXml = pageXml;
-        _ocrEngine = ocrEngine;
-        _ocrCapabilities = ocrCapabilities;
-
-        XPathFactory xpathFactory = XPathFactory.newInstance();
-        XPath xpath = xpathFactory.newXPath();
-
-        try {
-            _xpathOCRPara = xpath.compile("descendant::*[@class='ocr_par']");
-            _xpathOCRLine = xpath.compile("descendant::*[@class='ocr_line']");
-            _xpathOCRXWord = xpath.compile("descendant::*[@class='ocrx_word']");
-        }
-        catch (XPathExpressionException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
-    private static Integer getPageNumber(File pageFile) {
-        Integer pageNumber = null;
-
-        String fileName = pageFile.getName();
-        Pattern pattern = Pattern.compile("^\\p{N}+");
-        Matcher matcher = pattern.matcher(fileName);
-        if (matcher.find())
-            pageNumber = Integer.parseInt(matcher.group());
-
-        return pageNumber;
+        _ocrEngine = reader.getOcrEngine();
+        _ocrCapabilities = reader.getOcrCapabilities();
+        _reader = reader;
     }
 
+    /**
+     * Reads the metadata of an hOCR page; its words are then read from the stream as the statistics are calculated,
+     * so the stream must stay open until then
+     *
+     * @param pageStream The hOCR page
+     * @param pageNumber The page number
+     * @return The page
+     * @throws PageParserException If the page could not be parsed
+     */
     public static HOCRPage parse(InputStream pageStream, Integer pageNumber) throws PageParserException {
         try {
-            DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-            documentBuilderFactory.setNamespaceAware(false);
-            documentBuilderFactory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
-            DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
-
-            Document document = documentBuilder.parse(pageStream);
-
-            XPathFactory xpathFactory = XPathFactory.newInstance();
-            XPath xpath = xpathFactory.newXPath();
-
-            String ocrEngine = (String) xpath.evaluate("/html/head/meta[@name='ocr-system']/@content", document, XPathConstants.STRING);
-            Set<String> ocrCapabilities = Sets.newHashSet();
-            String capabilities = (String) xpath.evaluate("/html/head/meta[@name='ocr-capabilities']/@content", document, XPathConstants.STRING);
-            ocrCapabilities.addAll(Arrays.asList(capabilities.split(" ")));
-
-            Element pageXml = (Element) xpath.evaluate("//*[@class='ocr_page']", document, XPathConstants.NODE);
-            String pageId = pageXml.getAttribute("id");
-
-            return new HOCRPage(pageId, pageNumber, pageXml, ocrEngine, ocrCapabilities);
+            return new HOCRPage(pageNumber, new HOCRReader(pageStream));
         }
         catch (Exception e) {
             log.error("HOCR parser error", e);
@@ -101,11 +58,19 @@ public class HOCRPage extends OCRPage<HOCRPageStats> {
         }
     }
 
+    /**
+     * @param collectConfidence True to also calculate the statistics of the confidence of the words (x_wconf)
+     */
+    public void setCollectConfidence(boolean collectConfidence) {
+        _reader.setCollectConfidence(collectConfidence);
+    }
+
     public static HOCRPage parse(File pageFile) throws PageParserException {
         try {
-            return parse(new FileInputStream(pageFile), getPageNumber(pageFile));
+            byte[] page = Files.readAllBytes(pageFile.toPath());
+            return parse(new ByteArrayInputStream(page), parsePageNumber(pageFile.getName()));
         }
-        catch (FileNotFoundException e) {
+        catch (IOException e) {
             throw new PageParserException(e);
         }
     }
@@ -130,9 +95,16 @@ public class HOCRPage extends OCRPage<HOCRPageStats> {
         return _tokensPerLine;
     }
 
+    /**
+     * @return The words of the lines of the page; the words are read from the page stream, so they can only be iterated once
+     */
     @Override
     public Iterator<HOCRToken> getTokenIterator() {
-        return new HOCRTokenIterator(_pageXml);
+        if (_tokensRead)
+            throw new IllegalStateException("The words of the page were already read");
+        _tokensRead = true;
+
+        return new HOCRTokenIterator(_reader);
     }
 
     @Override
@@ -141,45 +113,36 @@ public class HOCRPage extends OCRPage<HOCRPageStats> {
     }
 
     @Override
-    protected HOCRPageStats buildOCRPageStatsBean(SpellDictionary[] dictionaries, Map<String, String> replacementRules) {
+    protected HOCRPageStats buildOCRPageStatsBean(DictionaryIndex dictionaryIndex, Map<String, String> replacementRules) {
         return new HOCRPageStats();
     }
 
     @Override
-    public HOCRPageStats calculateStatistics(SpellDictionary[] dictionaries, Map<String,String> replacementRules) throws PageParserException {
-        int paragraphCount;
-        int linesCount;
-
+    public HOCRPageStats calculateStatistics(DictionaryIndex dictionaryIndex, Map<String,String> replacementRules) throws PageParserException {
         try {
-            NodeList paragraphs = (NodeList) _xpathOCRPara.evaluate(_pageXml, XPathConstants.NODESET);
-            paragraphCount = paragraphs.getLength();
-            _linesPerParagraph = Lists.newArrayListWithExpectedSize(paragraphCount);
-            _tokensPerLine = Lists.newArrayList();
-
-            for (int i = 0; i < paragraphCount; i++) {
-                Element xmlParagraph = (Element) paragraphs.item(i);
-                NodeList lines = (NodeList) _xpathOCRLine.evaluate(xmlParagraph, XPathConstants.NODESET);
-                int lineCount = lines.getLength();
-                _linesPerParagraph.add(lineCount);
-
-                for (int j = 0; j < lineCount; j++) {
-                    Element xmlLine = (Element) lines.item(j);
-                    NodeList tokens = (NodeList) _xpathOCRXWord.evaluate(xmlLine, XPathConstants.NODESET);
-                    int tokenCount = tokens.getLength();
-                    _tokensPerLine.add(tokenCount);
-                }
-            }
-
-            linesCount = _tokensPerLine.size();
+            // the paragraphs and lines are counted as the words are read
+            HOCRPageStats pageStats = super.calculateStatistics(dictionaryIndex, replacementRules);
 
-            HOCRPageStats pageStats = super.calculateStatistics(dictionaries, replacementRules);
-            pageStats.setLinesCount(linesCount);
-            pageStats.setParagraphCount(paragraphCount);
+            _linesPerParagraph = _reader.getLinesPerParagraph();
+            _tokensPerLine = _reader.getTokensPerLine();
+            pageStats.setLinesCount(_tokensPerLine.size());
+            pageStats.setParagraphCount(_linesPerParagraph.size());
+            _reader.setConfidenceStats(pageStats);
 
             return pageStats;
         }
-        catch (XPathExpressionException e) {
-            throw new PageParserException(e);
+        catch (RuntimeException e) {
+            if (e.getCause() instanceof XMLStreamException)
+                throw new PageParserException(e.getCause());
+            throw e;
+        }
+        finally {
+            try {
+                _reader.close();
+            }
+            catch (XMLStreamException e) {
+                log.warn("Could not close the HOCR reader", e);
+            }
         }
     }
 }
@@ -2,12 +2,31 @@ package edu.illinois.i3.emop.apps.statsbuilder.hocr;
 
 import edu.illinois.i3.emop.apps.statsbuilder.OCRPageStats;
 
+import java.util.List;
 import java.util.Map;
 
 public class HOCRPageStats extends OCRPageStats {
 
+    // words with a lower confidence (x_wconf) are counted as low confidence words
+    public static final double LOW_CONFIDENCE = 50;
+
+    // the columns added to the CSV entries, in the order they are put in them (see toCsvEntry);
+    // the confidence columns (from confTokens on) only when the confidence statistics were collected
+    public static final String[] HOCR_CSV_COLUMNS = {
+            "paragraphs", "lines", "confTokens", "confMean", "confStdDev", "confMin", "confLowP"
+    };
+
+    // the position of the first confidence column (confTokens) in HOCR_CSV_COLUMNS
+    public static final int CONFIDENCE_COLUMNS_START = 2;
+
     private int _linesCount;
     private int _paragraphCount;
+    private boolean _hasConfidenceStats;
+    private int _confidenceTokenCount;              // words having a confidence
+    private double _confidenceSum;
+    private double _confidenceSumSquares;
+    private double _confidenceMin = Double.POSITIVE_INFINITY;
+    private int _lowConfidenceTokenCount;           // words with a confidence < LOW_CONFIDENCE
 
     public int getLinesCount() {
         return _linesCount;
@@ -25,12 +44,97 @@ public class HOCRPageStats extends OCRPageStats {
         _paragraphCount = paragraphCount;
     }
 
+    public void setConfidenceStats(int confidenceTokenCount, double confidenceSum, double confidenceSumSquares,
+                                   double confidenceMin, int lowConfidenceTokenCount) {
+        _hasConfidenceStats = true;
+        _confidenceTokenCount = confidenceTokenCount;
+        _confidenceSum = confidenceSum;
+        _confidenceSumSquares = confidenceSumSquares;
+        _confidenceMin = confidenceMin;
+        _lowConfidenceTokenCount = lowConfidenceTokenCount;
+    }
+
+    /**
+     * @return True if the confidence statistics of the words were collected
+     */
+    public boolean hasConfidenceStats() {
+        return _hasConfidenceStats;
+    }
+
+    public int getConfidenceTokenCount() {
+        return _confidenceTokenCount;
+    }
+
+    public double getConfidenceMean() {
+        return _confidenceSum / _confidenceTokenCount;
+    }
+
+    public double getConfidenceStdDev() {
+        double mean = getConfidenceMean();
+        return Math.sqrt(Math.max(0, _confidenceSumSquares / _confidenceTokenCount - mean * mean));
+    }
+
+    public double getConfidenceMin() {
+        return _confidenceTokenCount > 0 ? _confidenceMin : Double.NaN;
+    }
+
+    public int getLowConfidenceTokenCount() {
+        return _lowConfidenceTokenCount;
+    }
+
+    public double getPercentLowConfidence() {
+        return (double) _lowConfidenceTokenCount / _confidenceTokenCount;
+    }
+
+    @Override
+    public HOCRPageStats createEmpty() {
+        HOCRPageStats stats = new HOCRPageStats();
+        stats.setPageCount(0);
+
+        return stats;
+    }
+
+    @Override
+    public void merge(OCRPageStats other) {
+        super.merge(other);
+
+        if (other instanceof HOCRPageStats) {
+            HOCRPageStats otherStats = (HOCRPageStats) other;
+            _linesCount += otherStats._linesCount;
+            _paragraphCount += otherStats._paragraphCount;
+            _hasConfidenceStats |= otherStats._hasConfidenceStats;
+            _confidenceTokenCount += otherStats._confidenceTokenCount;
+            _confidenceSum += otherStats._confidenceSum;
+            _confidenceSumSquares += otherStats._confidenceSumSquares;
+            _confidenceMin = Math.min(_confidenceMin, otherStats._confidenceMin);
+            _lowConfidenceTokenCount += otherStats._lowConfidenceTokenCount;
+        }
+    }
+
     @Override
     public Map<String, Object> toCsvEntry() {
         Map<String, Object> csvEntry = super.toCsvEntry();
         csvEntry.put("paragraphs", getParagraphCount());
         csvEntry.put("lines", getLinesCount());
+        if (_hasConfidenceStats) {
+            csvEntry.put("confTokens", getConfidenceTokenCount());
+            csvEntry.put("confMean", getConfidenceMean());
+            csvEntry.put("confStdDev", getConfidenceStdDev());
+            csvEntry.put("confMin", getConfidenceMin());
+            csvEntry.put("confLowP", getPercentLowConfidence());
+        }
 
         return csvEntry;
     }
+
+    @Override
+    public List<String> getAvailableColumns() {
+        List<String> columns = super.getAvailableColumns();
+        int columnCount = _hasConfidenceStats ? HOCR_CSV_COLUMNS.length : CONFIDENCE_COLUMNS_START;
+        for (int i = 0; i < columnCount; i++)
+            if (!columns.contains(HOCR_CSV_COLUMNS[i]))
+                columns.add(HOCR_CSV_COLUMNS[i]);
+
+        return columns;
+    }
 }
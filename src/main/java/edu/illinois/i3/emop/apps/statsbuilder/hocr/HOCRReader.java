@@ -0,0 +1,308 @@
+package edu.illinois.i3.emop.apps.statsbuilder.hocr;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reads the first page of an hOCR document in a single forward pass: the page metadata is read up to the start
+ * of the ocr_page element, and the words of the lines of the page (ocrx_word elements inside ocr_line elements)
+ * are then read one at a time, counting the paragraphs (ocr_par) and lines along the way.
+ * Only the current word is kept in memory, and the rest of the document after the page is not read.
+ */
+class HOCRReader {
+
+    private static final ThreadLocal<XMLInputFactory> XmlInputFactory = new ThreadLocal<XMLInputFactory>() {
+        @Override
+        protected XMLInputFactory initialValue() {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+            // do not load the (external) XHTML DTD - entities it would declare, such as &nbsp;, are skipped
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+            return factory;
+        }
+    };
+
+    // the kinds of the open elements of the page
+    private static final byte OTHER = 0;
+    private static final byte PARAGRAPH = 1;
+    private static final byte LINE = 2;
+    private static final byte WORD = 3;
+
+    private final XMLStreamReader _xmlReader;
+
+    private String _ocrEngine = "";
+    private String _ocrCapabilities = "";
+    private String _pageId;
+
+    private byte[] _openElements = new byte[64];
+    private int _depth;                                     // the depth of the current element inside the page
+    private boolean _pageEnded;
+
+    private final List<Integer> _linesPerParagraph = Lists.newArrayList();
+    private final List<Integer> _tokensPerLine = Lists.newArrayList();
+    private final List<Integer> _openParagraphs = Lists.newArrayList();  // by position in _linesPerParagraph
+    private final List<int[]> _openLines = Lists.newArrayList();        // the positions in _tokensPerLine of each open line
+
+    private final StringBuilder _wordText = new StringBuilder();
+    private int _wordDepth;                                 // the depth of the current word, or 0 outside words
+    private String _wordId;
+    private String _wordTitle;
+    private boolean _hasPendingWord;                        // the last word read is kept until known whether it is last on its line
+    private String _pendingWordId;
+    private String _pendingWordTitle;
+    private String _pendingWordText;
+    private HOCRToken _nextToken;
+
+    private boolean _collectConfidence;
+    private int _confidenceTokenCount;                      // the words having a confidence (x_wconf)
+    private double _confidenceSum;
+    private double _confidenceSumSquares;
+    private double _confidenceMin = Double.POSITIVE_INFINITY;
+    private int _lowConfidenceTokenCount;
+
+    /**
+     * Reads the page metadata, up to the start of the page
+     *
+     * @param pageStream The hOCR document
+     * @throws XMLStreamException If the document could not be parsed, or has no ocr_page element
+     */
+    HOCRReader(InputStream pageStream) throws XMLStreamException {
+        _xmlReader = XmlInputFactory.get().createXMLStreamReader(pageStream);
+
+        int headDepth = 0;
+        String[] path = new String[3];      // the names of the elements on the path to html/head/meta
+        while (_xmlReader.hasNext()) {
+            int event = _xmlReader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                if ("ocr_page".equals(_xmlReader.getAttributeValue(null, "class"))) {
+                    _pageId = _xmlReader.getAttributeValue(null, "id");
+                    if (_pageId == null)
+                        _pageId = "";
+                    return;
+                }
+
+                if (headDepth < path.length)
+                    path[headDepth] = _xmlReader.getLocalName();
+                headDepth++;
+
+                if (headDepth == 3 && "html".equals(path[0]) && "head".equals(path[1]) && "meta".equals(path[2])) {
+                    String name = _xmlReader.getAttributeValue(null, "name");
+                    String content = _xmlReader.getAttributeValue(null, "content");
+                    if (content == null)
+                        content = "";
+
+                    // (only the first meta element with a given name counts)
+                    if ("ocr-system".equals(name) && _ocrEngine.isEmpty())
+                        _ocrEngine = content;
+                    else if ("ocr-capabilities".equals(name) && _ocrCapabilities.isEmpty())
+                        _ocrCapabilities = content;
+                }
+            }
+            else if (event == XMLStreamConstants.END_ELEMENT)
+                headDepth--;
+        }
+
+        close();
+        throw new XMLStreamException("No ocr_page element found");
+    }
+
+    String getPageId() {
+        return _pageId;
+    }
+
+    String getOcrEngine() {
+        return _ocrEngine;
+    }
+
+    Set<String> getOcrCapabilities() {
+        return Sets.newHashSet(Arrays.asList(_ocrCapabilities.split(" ")));
+    }
+
+    /**
+     * @return The number of lines of each paragraph, in the order the paragraphs start (complete once all the words are read)
+     */
+    List<Integer> getLinesPerParagraph() {
+        return _linesPerParagraph;
+    }
+
+    /**
+     * @return The number of words of each line of each paragraph (complete once all the words are read)
+     */
+    List<Integer> getTokensPerLine() {
+        return _tokensPerLine;
+    }
+
+    /**
+     * @param collectConfidence True to collect the statistics of the confidence of the words as they are read
+     */
+    void setCollectConfidence(boolean collectConfidence) {
+        _collectConfidence = collectConfidence;
+    }
+
+    /**
+     * Sets the statistics of the confidence of the words read (if collected) on the page statistics
+     *
+     * @param pageStats The page statistics
+     */
+    void setConfidenceStats(HOCRPageStats pageStats) {
+        if (_collectConfidence)
+            pageStats.setConfidenceStats(_confidenceTokenCount, _confidenceSum, _confidenceSumSquares, _confidenceMin,
+                    _lowConfidenceTokenCount);
+    }
+
+    /**
+     * @return The next word of the page, or null if all the words were read (the page then having been read entirely)
+     * @throws XMLStreamException If the document could not be parsed
+     */
+    HOCRToken nextToken() throws XMLStreamException {
+        while (_nextToken == null && !_pageEnded)
+            readEvent();
+
+        HOCRToken token = _nextToken;
+        _nextToken = null;
+
+        return token;
+    }
+
+    void close() throws XMLStreamException {
+        _xmlReader.close();
+    }
+
+    private void readEvent() throws XMLStreamException {
+        if (!_xmlReader.hasNext())
+            throw new XMLStreamException("Unexpected end of the document inside the page");
+
+        switch (_xmlReader.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+                startElement();
+                break;
+
+            case XMLStreamConstants.END_ELEMENT:
+                endElement();
+                break;
+
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                if (_wordDepth > 0)
+                    _wordText.append(_xmlReader.getTextCharacters(), _xmlReader.getTextStart(), _xmlReader.getTextLength());
+                break;
+
+            default:
+                // comments, processing instructions and undeclared entities do not contribute to the text
+                break;
+        }
+    }
+
+    private void startElement() {
+        byte kind = OTHER;
+        if (_wordDepth == 0) {
+            String cssClass = _xmlReader.getAttributeValue(null, "class");
+            if ("ocr_par".equals(cssClass))
+                kind = PARAGRAPH;
+            else if ("ocr_line".equals(cssClass))
+                kind = LINE;
+            else if ("ocrx_word".equals(cssClass))
+                kind = WORD;
+        }
+
+        if (_depth == _openElements.length)
+            _openElements = Arrays.copyOf(_openElements, _depth * 2);
+        _openElements[_depth++] = kind;
+
+        switch (kind) {
+            case PARAGRAPH:
+                _openParagraphs.add(_linesPerParagraph.size());
+                _linesPerParagraph.add(0);
+                break;
+
+            case LINE:
+                // a line counts once for each paragraph containing it
+                int[] lineSlots = new int[_openParagraphs.size()];
+                for (int i = 0; i < lineSlots.length; i++) {
+                    int paragraph = _openParagraphs.get(i);
+                    _linesPerParagraph.set(paragraph, _linesPerParagraph.get(paragraph) + 1);
+                    lineSlots[i] = _tokensPerLine.size();
+                    _tokensPerLine.add(0);
+                }
+                _openLines.add(lineSlots);
+                break;
+
+            case WORD:
+                for (int[] openLineSlots : _openLines)
+                    for (int slot : openLineSlots)
+                        _tokensPerLine.set(slot, _tokensPerLine.get(slot) + 1);
+
+                // only the words of lines are read
+                if (!_openLines.isEmpty()) {
+                    _wordDepth = _depth;
+                    _wordId = _xmlReader.getAttributeValue(null, "id");
+                    _wordTitle = _xmlReader.getAttributeValue(null, "title");
+                    _wordText.setLength(0);
+                }
+                break;
+        }
+    }
+
+    private void endElement() {
+        if (_depth == 0) {
+            // end of the page
+            _pageEnded = true;
+            return;
+        }
+
+        switch (_openElements[--_depth]) {
+            case PARAGRAPH:
+                _openParagraphs.remove(_openParagraphs.size() - 1);
+                break;
+
+            case LINE:
+                _openLines.remove(_openLines.size() - 1);
+                if (_hasPendingWord)
+                    _nextToken = takePendingWord(true);
+                break;
+
+            case WORD:
+                if (_wordDepth == _depth + 1) {
+                    _wordDepth = 0;
+                    if (_hasPendingWord)
+                        _nextToken = takePendingWord(false);
+
+                    _hasPendingWord = true;
+                    _pendingWordId = _wordId;
+                    _pendingWordTitle = _wordTitle != null ? _wordTitle : "";
+                    _pendingWordText = _wordText.toString();
+                }
+                break;
+        }
+    }
+
+    private HOCRToken takePendingWord(boolean isLastTokenOnLine) {
+        _hasPendingWord = false;
+        HOCRToken token = new HOCRToken(_pendingWordId, _pendingWordTitle, _pendingWordText, isLastTokenOnLine);
+
+        if (_collectConfidence) {
+            double confidence = token.getConfidence();
+            if (!Double.isNaN(confidence)) {
+                _confidenceTokenCount++;
+                _confidenceSum += confidence;
+                _confidenceSumSquares += confidence * confidence;
+                _confidenceMin = Math.min(_confidenceMin, confidence);
+                if (confidence < HOCRPageStats.LOW_CONFIDENCE)
+                    _lowConfidenceTokenCount++;
+            }
+        }
+
+        return token;
+    }
+}
@@ -3,37 +3,47 @@ package edu.illinois.i3.emop.apps.statsbuilder.hocr;
 import edu.illinois.i3.emop.apps.statsbuilder.OCRToken;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Element;
 
 import java.util.Properties;
 
 /**
+ * The properties of a word (its title attribute) are only parsed when asked for; the bounding box and
+ * confidence are parsed straight from the title characters.
+ *
  * @author capitanu
  */
 public class HOCRToken implements OCRToken {
 
     private static final Logger log = LoggerFactory.getLogger(HOCRToken.class);
 
-    private final Element _tokenXml;
+    private static final String BBOX_PROPERTY = "bbox";
+    private static final String CONFIDENCE_PROPERTY = "x_wconf";
+
+    private final String _text;
     private final boolean _isLastTokenOnLine;
     private final String _tokenId;
-    private final Properties _tokenProperties;
+    private final String _title;
+    private Properties _tokenProperties;
+
+    private boolean _bboxParsed;
+    private boolean _hasBBox;
+    private int _bboxLeft;
+    private int _bboxTop;
+    private int _bboxRight;
+    private int _bboxBottom;
+    private int _scanPosition;
 
-    public HOCRToken(Element tokenXml, boolean isLastTokenOnLine) {
-        _tokenXml = tokenXml;
+    /**
+     * @param tokenId           The id of the ocrx_word element, or null if none
+     * @param title             The title of the ocrx_word element (its properties)
+     * @param text              The text content of the ocrx_word element
+     * @param isLastTokenOnLine True if this is the last word of its line
+     */
+    public HOCRToken(String tokenId, String title, String text, boolean isLastTokenOnLine) {
+        _text = text;
         _isLastTokenOnLine = isLastTokenOnLine;
-        _tokenId = _tokenXml.hasAttribute("id") ? _tokenXml.getAttribute("id") : null;
-
-        _tokenProperties = new Properties();
-        String title = _tokenXml.getAttribute("title");
-        String[] props = title.split(";");
-        for (String prop : props) {
-            prop = prop.trim();
-            int idx = prop.indexOf(" ");
-            String propName = prop.substring(0, idx);
-            String propValue = prop.substring(idx + 1);
-            _tokenProperties.put(propName, propValue);
-        }
+        _tokenId = tokenId;
+        _title = title;
     }
 
     public String getTokenId() {
@@ -41,11 +51,89 @@ public class HOCRToken implements OCRToken {
     }
 
     public Properties getTokenProperties() {
+        if (_tokenProperties == null) {
+            Properties tokenProperties = new Properties();
+            String[] props = _title.split(";");
+            for (String prop : props) {
+                prop = prop.trim();
+                int idx = prop.indexOf(" ");
+                String propName = prop.substring(0, idx);
+                String propValue = prop.substring(idx + 1);
+                tokenProperties.put(propName, propValue);
+            }
+
+            _tokenProperties = tokenProperties;
+        }
+
         return _tokenProperties;
     }
 
+    /**
+     * @return True if the word has a (valid) bounding box
+     */
+    public boolean hasBBox() {
+        parseBBox();
+        return _hasBBox;
+    }
+
+    public int getBBoxLeft() {
+        parseBBox();
+        return _bboxLeft;
+    }
+
+    public int getBBoxTop() {
+        parseBBox();
+        return _bboxTop;
+    }
+
+    public int getBBoxRight() {
+        parseBBox();
+        return _bboxRight;
+    }
+
+    public int getBBoxBottom() {
+        parseBBox();
+        return _bboxBottom;
+    }
+
+    /**
+     * @return The confidence of the OCR engine in the word (x_wconf, usually 0 to 100), or NaN if not given
+     */
+    public double getConfidence() {
+        int position = findProperty(_title, CONFIDENCE_PROPERTY);
+        if (position < 0)
+            return Double.NaN;
+
+        int length = _title.length();
+        while (position < length && _title.charAt(position) == ' ')
+            position++;
+
+        double value = 0;
+        double scale = 0;           // > 0 after the decimal point
+        boolean hasDigits = false;
+        for (; position < length; position++) {
+            char c = _title.charAt(position);
+            if (c == '.' && scale == 0) {
+                scale = 1;
+                continue;
+            }
+            if (c < '0' || c > '9')
+                break;
+
+            hasDigits = true;
+            if (scale == 0)
+                value = value * 10 + (c - '0');
+            else {
+                scale /= 10;
+                value += (c - '0') * scale;
+            }
+        }
+
+        return hasDigits ? value : Double.NaN;
+    }
+
     public String getText() {
-        return _tokenXml.getTextContent();
+        return _text;
     }
 
     public boolean isLastTokenOnLine() {
@@ -56,4 +144,81 @@ public class HOCRToken implements OCRToken {
     public String toString() {
         return getText();
     }
+
+    private void parseBBox() {
+        if (_bboxParsed)
+            return;
+        _bboxParsed = true;
+
+        _scanPosition = findProperty(_title, BBOX_PROPERTY);
+        if (_scanPosition < 0)
+            return;
+
+        long left = scanInt();
+        long top = scanInt();
+        long right = scanInt();
+        long bottom = scanInt();
+        if (left == Long.MIN_VALUE || top == Long.MIN_VALUE || right == Long.MIN_VALUE || bottom == Long.MIN_VALUE)
+            return;
+
+        _bboxLeft = (int) left;
+        _bboxTop = (int) top;
+        _bboxRight = (int) right;
+        _bboxBottom = (int) bottom;
+        _hasBBox = true;
+    }
+
+    /**
+     * Reads an integer from the title, starting at _scanPosition (skipping spaces)
+     *
+     * @return The integer, or Long.MIN_VALUE if there is none
+     */
+    private long scanInt() {
+        int length = _title.length();
+        int i = _scanPosition;
+        while (i < length && _title.charAt(i) == ' ')
+            i++;
+
+        boolean negative = i < length && _title.charAt(i) == '-';
+        if (negative)
+            i++;
+
+        int start = i;
+        long value = 0;
+        for (; i < length && i - start < 10; i++) {
+            char c = _title.charAt(i);
+            if (c < '0' || c > '9')
+                break;
+            value = value * 10 + (c - '0');
+        }
+
+        _scanPosition = i;
+
+        return i > start ? (negative ? -value : value) : Long.MIN_VALUE;
+    }
+
+    /**
+     * @param title The title of a word
+     * @param name  The name of a property
+     * @return The position of the value of the property in the title, or -1 if the title does not have the property
+     */
+    private static int findProperty(String title, String name) {
+        int length = title.length();
+        int nameLength = name.length();
+
+        for (int start = 0; start < length; ) {
+            while (start < length && Character.isWhitespace(title.charAt(start)))
+                start++;
+
+            if (title.startsWith(name, start) && start + nameLength < length && title.charAt(start + nameLength) == ' ')
+                return start + nameLength + 1;
+
+            int end = title.indexOf(';', start);
+            if (end < 0)
+                break;
+            start = end + 1;
+        }
+
+        return -1;
+    }
 }
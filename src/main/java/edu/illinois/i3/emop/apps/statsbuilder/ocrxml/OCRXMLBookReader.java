@@ -0,0 +1,153 @@
+package edu.illinois.i3.emop.apps.statsbuilder.ocrxml;
+
+import com.google.common.collect.Lists;
+import edu.illinois.i3.emop.apps.statsbuilder.exceptions.PageParserException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Reads the pages of a Gale OCR XML book (/book/text/page) one at a time, in a single forward pass over the book:
+ * only the words (pageContent//wd) of the page being read are kept in memory, so books of any size can be read.
+ * The pages are numbered by their position in the book, starting at 1.
+ */
+public class OCRXMLBookReader implements Closeable {
+
+    private static final ThreadLocal<XMLInputFactory> XmlInputFactory = new ThreadLocal<XMLInputFactory>() {
+        @Override
+        protected XMLInputFactory initialValue() {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+            // do not load any external DTD
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+            return factory;
+        }
+    };
+
+    // the path of the page elements, and of the page content inside a page
+    private static final String[] PAGE_PATH = { "book", "text", "page" };
+    private static final String PAGE_CONTENT = "pageContent";
+    private static final String WORD = "wd";
+
+    private final XMLStreamReader _xmlReader;
+
+    private final List<String> _openElements = Lists.newArrayList();
+    private int _pageCount;
+    private boolean _inPageContent;
+    private int _wordDepth;                                 // the depth of the current word, or 0 outside words
+    private final StringBuilder _wordText = new StringBuilder();
+
+    /**
+     * @param bookStream The book; it must stay open while the pages are read, and is not closed by the reader
+     * @throws PageParserException If the book could not be parsed
+     */
+    public OCRXMLBookReader(InputStream bookStream) throws PageParserException {
+        try {
+            // (some StAX implementations close the stream they read, which would end e.g. a whole archive)
+            _xmlReader = XmlInputFactory.get().createXMLStreamReader(new FilterInputStream(bookStream) {
+                @Override
+                public void close() { }
+            });
+        }
+        catch (XMLStreamException e) {
+            throw new PageParserException(e);
+        }
+    }
+
+    /**
+     * @return The next page of the book, or null if all the pages were read
+     * @throws PageParserException If the book could not be parsed; the pages already read are not affected
+     */
+    public OCRXMLPage nextPage() throws PageParserException {
+        try {
+            List<OCRXMLToken> tokens = null;
+
+            while (_xmlReader.hasNext()) {
+                switch (_xmlReader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        String name = _xmlReader.getLocalName();
+                        _openElements.add(name);
+                        int depth = _openElements.size();
+
+                        if (tokens == null && isPage())
+                            tokens = Lists.newArrayList();
+                        else if (tokens != null && depth == PAGE_PATH.length + 1 && PAGE_CONTENT.equals(name))
+                            _inPageContent = true;
+                        else if (_inPageContent && _wordDepth == 0 && WORD.equals(name)) {
+                            _wordDepth = depth;
+                            _wordText.setLength(0);
+                        }
+                        break;
+
+                    case XMLStreamConstants.END_ELEMENT:
+                        depth = _openElements.size();
+                        _openElements.remove(depth - 1);
+
+                        if (depth == _wordDepth) {
+                            _wordDepth = 0;
+                            tokens.add(new OCRXMLToken(_wordText.toString()));
+                        }
+                        else if (_inPageContent && depth == PAGE_PATH.length + 1)
+                            _inPageContent = false;
+                        else if (tokens != null && depth == PAGE_PATH.length)
+                            return new OCRXMLPage(++_pageCount, tokens);
+                        break;
+
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        if (_wordDepth > 0)
+                            _wordText.append(_xmlReader.getTextCharacters(), _xmlReader.getTextStart(), _xmlReader.getTextLength());
+                        break;
+
+                    default:
+                        break;
+                }
+            }
+
+            if (tokens != null)
+                throw new PageParserException("Unexpected end of the book inside page " + (_pageCount + 1));
+
+            return null;
+        }
+        catch (XMLStreamException e) {
+            throw new PageParserException("Error reading page " + (_pageCount + 1), e);
+        }
+    }
+
+    /**
+     * @return The number of pages read
+     */
+    public int getPageCount() {
+        return _pageCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            _xmlReader.close();
+        }
+        catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private boolean isPage() {
+        if (_openElements.size() != PAGE_PATH.length)
+            return false;
+
+        for (int i = 0; i < PAGE_PATH.length; i++)
+            if (!PAGE_PATH[i].equals(_openElements.get(i)))
+                return false;
+
+        return true;
+    }
+}
@@ -0,0 +1,39 @@
+package edu.illinois.i3.emop.apps.statsbuilder.ocrxml;
+
+import edu.illinois.i3.emop.apps.statsbuilder.OCRPage;
+import edu.illinois.i3.emop.apps.statsbuilder.OCRPageStats;
+import edu.illinois.i3.emop.apps.statsbuilder.OCRToken;
+import edu.illinois.i3.emop.apps.statsbuilder.dict.DictionaryIndex;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A page of a Gale OCR XML book, as read by {@link OCRXMLBookReader}
+ */
+public class OCRXMLPage extends OCRPage<OCRPageStats> {
+
+    private final Integer _pageNumber;
+    private final List<OCRXMLToken> _tokens;
+
+    OCRXMLPage(Integer pageNumber, List<OCRXMLToken> tokens) {
+        _pageNumber = pageNumber;
+        _tokens = tokens;
+    }
+
+    @Override
+    public Iterator<? extends OCRToken> getTokenIterator() {
+        return _tokens.iterator();
+    }
+
+    @Override
+    public Integer getPageNumber() {
+        return _pageNumber;
+    }
+
+    @Override
+    protected OCRPageStats buildOCRPageStatsBean(DictionaryIndex dictionaryIndex, Map<String, String> replacementRules) {
+        return new OCRPageStats();
+    }
+}
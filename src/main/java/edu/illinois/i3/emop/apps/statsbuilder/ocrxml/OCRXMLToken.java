@@ -0,0 +1,27 @@
+package edu.illinois.i3.emop.apps.statsbuilder.ocrxml;
+
+import edu.illinois.i3.emop.apps.statsbuilder.OCRToken;
+
+public class OCRXMLToken implements OCRToken {
+
+    private final String _text;
+
+    public OCRXMLToken(String text) {
+        _text = text;
+    }
+
+    @Override
+    public String getText() {
+        return _text;
+    }
+
+    @Override
+    public boolean isLastTokenOnLine() {
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return getText();
+    }
+}
@@ -0,0 +1,133 @@
+package edu.illinois.i3.emop.apps.statsbuilder.pipeline;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Streams the pages stored in .zip, .tar, .tar.gz (.tgz) archives, and single (per-page) .gz files,
+ * reading each archive sequentially, in a single pass.
+ *
+ * Each page is given a path as if the archive had been extracted into a directory named after it (i.e. the archive
+ * path without its extension), so that "book.zip" containing "0001.txt" yields "book/0001.txt", and "0001.txt.gz"
+ * yields "0001.txt". This way the same file filter can be used for both extracted and archived corpora.
+ */
+public class ArchiveReader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public enum ArchiveType {
+        ZIP(".zip"), TAR(".tar"), TAR_GZ(".tar.gz"), TGZ(".tgz"), GZ(".gz");
+
+        private final String _extension;
+
+        ArchiveType(String extension) {
+            _extension = extension;
+        }
+
+        public String getExtension() {
+            return _extension;
+        }
+    }
+
+    public interface EntryHandler {
+        /**
+         * @param path         The path of the page, as if the archive had been extracted
+         * @param name         The name of the page (the last component of the path)
+         * @param lastModified The modification time of the page
+         * @param content      The page content; only valid until the handler returns
+         * @return True to continue with the next page, False to stop reading the archive
+         * @throws IOException If the page could not be handled; stops reading the archive
+         */
+        boolean handle(Path path, String name, long lastModified, InputStream content) throws IOException;
+    }
+
+    /**
+     * @param file The file
+     * @return The archive type of the file (based on its extension), or null if the file is not an archive
+     */
+    public static ArchiveType getArchiveType(Path file) {
+        String fileName = file.getFileName().toString().toLowerCase();
+
+        // check .tar.gz before .gz
+        for (ArchiveType type : ArchiveType.values())
+            if (fileName.endsWith(type.getExtension()) && fileName.length() > type.getExtension().length())
+                return type;
+
+        return null;
+    }
+
+    /**
+     * Reads the pages stored in an archive.
+     *
+     * @param archive The archive
+     * @param attrs   The archive file attributes
+     * @param handler The handler receiving the pages
+     * @throws IOException If the archive could not be read, or the handler failed
+     */
+    public static void read(Path archive, BasicFileAttributes attrs, EntryHandler handler) throws IOException {
+        ArchiveType type = getArchiveType(archive);
+        if (type == null)
+            throw new IllegalArgumentException("Not an archive: " + archive);
+
+        String fileName = archive.getFileName().toString();
+        Path extractedPath = archive.resolveSibling(fileName.substring(0, fileName.length() - type.getExtension().length()));
+        long archiveLastModified = attrs.lastModifiedTime().toMillis();
+
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(archive), BUFFER_SIZE)) {
+            switch (type) {
+                case ZIP:
+                    readZip(new ZipInputStream(input), extractedPath, archiveLastModified, handler);
+                    break;
+
+                case TAR:
+                    readTar(new TarArchiveInputStream(input), extractedPath, handler);
+                    break;
+
+                case TAR_GZ:
+                case TGZ:
+                    readTar(new TarArchiveInputStream(new GZIPInputStream(input, BUFFER_SIZE)), extractedPath, handler);
+                    break;
+
+                case GZ:
+                    handler.handle(extractedPath, extractedPath.getFileName().toString(), archiveLastModified,
+                            new GZIPInputStream(input, BUFFER_SIZE));
+                    break;
+            }
+        }
+    }
+
+    private static void readZip(ZipInputStream zip, Path extractedPath, long archiveLastModified, EntryHandler handler) throws IOException {
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            if (entry.isDirectory())
+                continue;
+
+            Path path = extractedPath.resolve(entry.getName()).normalize();
+            long lastModified = entry.getTime() != -1 ? entry.getTime() : archiveLastModified;
+            if (!handler.handle(path, path.getFileName().toString(), lastModified, zip))
+                return;
+        }
+    }
+
+    private static void readTar(TarArchiveInputStream tar, Path extractedPath, EntryHandler handler) throws IOException {
+        TarArchiveEntry entry;
+        while ((entry = tar.getNextTarEntry()) != null) {
+            if (!entry.isFile())
+                continue;
+
+            Path path = extractedPath.resolve(entry.getName()).normalize();
+            if (!handler.handle(path, path.getFileName().toString(), entry.getModTime().getTime(), tar))
+                return;
+        }
+    }
+}
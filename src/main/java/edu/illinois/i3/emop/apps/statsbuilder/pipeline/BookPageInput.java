@@ -0,0 +1,69 @@
+package edu.illinois.i3.emop.apps.statsbuilder.pipeline;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A page of a multi-page book file (e.g. a Gale OCR XML book). The pages of a book are parsed while reading
+ * the book, so their content cannot be opened on its own.
+ */
+public class BookPageInput implements PageInput {
+
+    private final String _bookId;
+    private final String _bookName;
+    private final int _pageNumber;
+    private final long _bookSize;
+    private final long _lastModified;
+
+    /**
+     * @param bookId       The id of the book (e.g. the file path)
+     * @param bookName     The name of the book (file name, without any directories)
+     * @param pageNumber   The position of the page in the book
+     * @param bookSize     The size of the book, in bytes (or -1 if not known)
+     * @param lastModified The time the book was last modified, in milliseconds since the epoch
+     */
+    public BookPageInput(String bookId, String bookName, int pageNumber, long bookSize, long lastModified) {
+        _bookId = bookId;
+        _bookName = bookName;
+        _pageNumber = pageNumber;
+        _bookSize = bookSize;
+        _lastModified = lastModified;
+    }
+
+    @Override
+    public String getId() {
+        return _bookId + "#" + _pageNumber;
+    }
+
+    @Override
+    public String getName() {
+        return _bookName;
+    }
+
+    public int getPageNumber() {
+        return _pageNumber;
+    }
+
+    /**
+     * @return The size of the book the page is part of
+     */
+    @Override
+    public long getSize() {
+        return _bookSize;
+    }
+
+    @Override
+    public long getLastModified() {
+        return _lastModified;
+    }
+
+    @Override
+    public InputStream openStream() throws IOException {
+        throw new IOException("The pages of a book can only be read along with the book: " + this);
+    }
+
+    @Override
+    public String toString() {
+        return getId();
+    }
+}
@@ -0,0 +1,64 @@
+package edu.illinois.i3.emop.apps.statsbuilder.pipeline;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A page whose content was already read into memory (e.g. a page extracted from an archive)
+ */
+public class ByteArrayPageInput implements PageInput {
+
+    private final String _id;
+    private final String _name;
+    private final byte[] _content;
+    private final long _lastModified;
+
+    public ByteArrayPageInput(String id, String name, byte[] content, long lastModified) {
+        _id = id;
+        _name = name;
+        _content = content;
+        _lastModified = lastModified;
+    }
+
+    @Override
+    public String getId() {
+        return _id;
+    }
+
+    @Override
+    public String getName() {
+        return _name;
+    }
+
+    @Override
+    public long getSize() {
+        return _content.length;
+    }
+
+    @Override
+    public long getLastModified() {
+        return _lastModified;
+    }
+
+    @Override
+    public InputStream openStream() {
+        return new ByteArrayInputStream(_content) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                onStreamClosed();
+            }
+        };
+    }
+
+    /**
+     * Called every time a stream returned by {@link #openStream()} is closed
+     */
+    protected void onStreamClosed() { }
+
+    @Override
+    public String toString() {
+        return _id;
+    }
+}
@@ -0,0 +1,158 @@
+package edu.illinois.i3.emop.apps.statsbuilder.pipeline;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import edu.illinois.i3.emop.apps.statsbuilder.OCRDocument;
+import edu.illinois.i3.emop.apps.statsbuilder.OCRPageStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rolls the statistics of the pages of each document up into document statistics, and hands each document
+ * to a handler as soon as all its pages are processed. Pages may complete in any order, on any thread.
+ *
+ * A document is complete once it is sealed (no more pages will be submitted for it) and all the pages submitted
+ * for it completed. When the pages are enumerated sequentially, the pages of a document are expected to be
+ * enumerated consecutively (e.g. one directory per document), so a document is sealed as soon as a page of another
+ * document is submitted; otherwise documents are only sealed by {@link #finish}.
+ */
+public class DocumentTracker {
+
+    private static final Logger log = LoggerFactory.getLogger(DocumentTracker.class);
+
+    public interface DocumentHandler {
+        void handle(OCRDocument<OCRPageStats> document) throws IOException;
+    }
+
+    private final boolean _keepPages;
+    private final boolean _sealOnDocumentChange;
+    private final DocumentHandler _documentHandler;
+
+    private final Map<String, OpenDocument> _openDocuments = Maps.newLinkedHashMap();
+    private final List<OpenDocument> _sealedDocuments = Lists.newLinkedList();
+    private final Set<String> _handledDocIds = Sets.newHashSet();
+    private String _lastDocId;
+    private int _handledCount;
+
+    /**
+     * @param keepPages            True to keep the statistics of each page of the documents
+     * @param sealOnDocumentChange True if the pages of each document are enumerated consecutively
+     * @param documentHandler      The handler for the completed documents (called while holding the lock on the tracker)
+     */
+    public DocumentTracker(boolean keepPages, boolean sealOnDocumentChange, DocumentHandler documentHandler) {
+        _keepPages = keepPages;
+        _sealOnDocumentChange = sealOnDocumentChange;
+        _documentHandler = documentHandler;
+    }
+
+    /**
+     * Records that a page of a document was submitted for processing; must be called before the page completes
+     *
+     * @param docId The document id
+     */
+    public synchronized void pageSubmitted(String docId) {
+        if (_sealOnDocumentChange && _lastDocId != null && !_lastDocId.equals(docId))
+            seal(_lastDocId);
+        _lastDocId = docId;
+
+        OpenDocument document = _openDocuments.get(docId);
+        if (document == null) {
+            if (_handledDocIds.contains(docId))
+                log.warn("More pages found for document {} after it was completed - " +
+                        "its statistics will be split over several rows", docId);
+
+            document = new OpenDocument(new OCRDocument<>(docId, _keepPages));
+            _openDocuments.put(docId, document);
+        }
+
+        document._submittedPages++;
+    }
+
+    /**
+     * Adds the statistics of a processed page to its document, and hands the documents now complete to the handler
+     *
+     * @param docId     The document id
+     * @param pageStats The page statistics, or null if the page could not be processed
+     * @throws IOException If the handler failed
+     */
+    public synchronized void pageCompleted(String docId, OCRPageStats pageStats) throws IOException {
+        OpenDocument document = _openDocuments.get(docId);
+        if (document == null)
+            throw new IllegalStateException("Page completed for unknown document: " + docId);
+
+        if (pageStats != null)
+            document._document.addPageStats(pageStats);
+        document._completedPages++;
+
+        handleCompletedDocuments();
+    }
+
+    /**
+     * Seals all the documents, once all the pages were processed, and hands them to the handler
+     *
+     * @throws IOException If the handler failed
+     */
+    public synchronized void finish() throws IOException {
+        for (String docId : Lists.newArrayList(_openDocuments.keySet()))
+            seal(docId);
+
+        handleCompletedDocuments();
+
+        if (!_openDocuments.isEmpty())
+            log.warn("{} documents have pages that were not processed: {}", _openDocuments.size(), _openDocuments.keySet());
+    }
+
+    /**
+     * @return The number of documents handed to the handler
+     */
+    public synchronized int getHandledCount() {
+        return _handledCount;
+    }
+
+    private void seal(String docId) {
+        OpenDocument document = _openDocuments.get(docId);
+        if (document != null && !document._sealed) {
+            document._sealed = true;
+            _sealedDocuments.add(document);
+        }
+    }
+
+    private void handleCompletedDocuments() throws IOException {
+        for (Iterator<OpenDocument> iterator = _sealedDocuments.iterator(); iterator.hasNext(); ) {
+            OpenDocument document = iterator.next();
+            if (document._completedPages < document._submittedPages)
+                continue;
+
+            iterator.remove();
+            String docId = document._document.getDocId();
+            _openDocuments.remove(docId);
+            _handledDocIds.add(docId);
+
+            if (document._document.getDocumentStats() == null) {
+                log.warn("None of the pages of document {} could be processed", docId);
+                continue;
+            }
+
+            _documentHandler.handle(document._document);
+            _handledCount++;
+        }
+    }
+
+    private static final class OpenDocument {
+        private final OCRDocument<OCRPageStats> _document;
+        private int _submittedPages;
+        private int _completedPages;
+        private boolean _sealed;
+
+        private OpenDocument(OCRDocument<OCRPageStats> document) {
+            _document = document;
+        }
+    }
+}
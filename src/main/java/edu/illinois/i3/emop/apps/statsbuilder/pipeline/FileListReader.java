@@ -0,0 +1,83 @@
+package edu.illinois.i3.emop.apps.statsbuilder.pipeline;
+
+import com.google.common.base.Charsets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Reads the files to process from a list of paths (e.g. the output of <code>find</code>), instead of walking a directory.
+ * Paths are separated by newlines, or by NUL characters (as produced by <code>find -print0</code>): the first
+ * newline or NUL character of the list decides which, so that the paths are handled as they are streamed.
+ */
+public class FileListReader {
+
+    private static final Logger log = LoggerFactory.getLogger(FileListReader.class);
+
+    private static final int UNKNOWN_DELIMITER = -1;
+
+    /**
+     * Reads the file list, passing each (existing, regular) file to the handler as soon as it was read.
+     *
+     * @param fileList The file list
+     * @param baseDir  The directory relative paths are resolved against
+     * @param handler  The handler
+     * @throws IOException If the list could not be read, or the handler failed
+     */
+    public static void read(InputStream fileList, Path baseDir, PageFileHandler handler) throws IOException {
+        Reader reader = new InputStreamReader(fileList, Charsets.UTF_8);
+        char[] buffer = new char[8192];
+        StringBuilder entry = new StringBuilder();
+        int delimiter = UNKNOWN_DELIMITER;
+
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            for (int i = 0; i < read; i++) {
+                char c = buffer[i];
+                if (delimiter == UNKNOWN_DELIMITER && (c == '\n' || c == '\0'))
+                    delimiter = c;
+
+                if (c == delimiter) {
+                    if (!handleEntry(entry, delimiter, baseDir, handler))
+                        return;
+                    entry.setLength(0);
+                } else
+                    entry.append(c);
+            }
+        }
+
+        handleEntry(entry, delimiter, baseDir, handler);
+    }
+
+    private static boolean handleEntry(StringBuilder entry, int delimiter, Path baseDir, PageFileHandler handler) throws IOException {
+        String name = entry.toString();
+        if (delimiter != '\0' && name.endsWith("\r"))
+            name = name.substring(0, name.length() - 1);
+
+        if (name.isEmpty())
+            return true;
+
+        Path file = baseDir.resolve(name).normalize();
+
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        }
+        catch (NoSuchFileException e) {
+            log.warn("File not found: {}", file);
+            return true;
+        }
+
+        if (!attrs.isRegularFile()) {
+            log.warn("Not a regular file: {}", file);
+            return true;
+        }
+
+        return handler.handle(file, attrs);
+    }
+}
@@ -0,0 +1,56 @@
+package edu.illinois.i3.emop.apps.statsbuilder.pipeline;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A page read directly from its file, in the thread that parses it
+ */
+public class FilePageInput implements PageInput {
+
+    private final Path _path;
+    private final long _size;
+    private final long _lastModified;
+
+    public FilePageInput(Path path, long size, long lastModified) {
+        _path = path;
+        _size = size;
+        _lastModified = lastModified;
+    }
+
+    public Path getPath() {
+        return _path;
+    }
+
+    @Override
+    public String getId() {
+        return _path.toString();
+    }
+
+    @Override
+    public String getName() {
+        return _path.getFileName().toString();
+    }
+
+    @Override
+    public long getSize() {
+        return _size;
+    }
+
+    @Override
+    public long getLastModified() {
+        return _lastModified;
+    }
+
+    @Override
+    public InputStream openStream() throws IOException {
+        return Files.newInputStream(_path);
+    }
+
+    @Override
+    public String toString() {
+        return _path.toString();
+    }
+}
@@ -0,0 +1,205 @@
+package edu.illinois.i3.emop.apps.statsbuilder.pipeline;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.*;
+
+/**
+ * Reads page files ahead of time on a dedicated pool of I/O threads, so that waiting on (network) storage
+ * overlaps with the CPU-bound page processing. The total size of the pages that were read (or are being read)
+ * but not yet parsed is bounded by the configured prefetch depth; pages extracted from archives count
+ * against the same bound (see {@link #buffer}).
+ */
+public class FilePrefetcher implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(FilePrefetcher.class);
+
+    private final ExecutorService _ioThreads;
+    private final long _prefetchBytes;
+    private long _availableBytes;
+
+    public FilePrefetcher(int ioThreadCount, long prefetchBytes) {
+        if (ioThreadCount < 1)
+            throw new IllegalArgumentException("Invalid I/O thread count: " + ioThreadCount);
+
+        if (prefetchBytes < 1)
+            throw new IllegalArgumentException("Invalid prefetch size: " + prefetchBytes);
+
+        _prefetchBytes = _availableBytes = prefetchBytes;
+        _ioThreads = Executors.newFixedThreadPool(ioThreadCount, new ThreadFactory() {
+            private int _count = 0;
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "page-reader-" + (++_count));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Schedules a page file to be read, blocking while the prefetch depth is exhausted.
+     *
+     * @param path         The page file
+     * @param size         The size of the page file, in bytes
+     * @param lastModified The modification time of the page file
+     * @return The page, whose content becomes available once the file was read
+     * @throws InterruptedIOException If interrupted while waiting for prefetch space to become available
+     */
+    public PageInput prefetch(final Path path, long size, long lastModified) throws InterruptedIOException {
+        // pages larger than the prefetch depth are still read, but only when nothing else is buffered
+        final long reservedBytes = Math.max(1, Math.min(size, _prefetchBytes));
+        reserve(reservedBytes);
+
+        try {
+            Future<byte[]> content = _ioThreads.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws IOException {
+                    return Files.readAllBytes(path);
+                }
+            });
+
+            return new PrefetchedPageInput(new FilePageInput(path, size, lastModified), content, reservedBytes);
+        }
+        catch (RejectedExecutionException e) {
+            release(reservedBytes);
+            throw e;
+        }
+    }
+
+    /**
+     * Accounts for a page that was already read into memory (e.g. extracted from an archive) against the prefetch
+     * depth, blocking while the prefetch depth is exhausted. The space is given back once the page was parsed.
+     *
+     * @param id           The page id
+     * @param name         The page name
+     * @param content      The page content
+     * @param lastModified The modification time of the page
+     * @return The page
+     * @throws InterruptedIOException If interrupted while waiting for prefetch space to become available
+     */
+    public PageInput buffer(String id, String name, byte[] content, long lastModified) throws InterruptedIOException {
+        final long reservedBytes = Math.max(1, Math.min(content.length, _prefetchBytes));
+        reserve(reservedBytes);
+
+        return new ByteArrayPageInput(id, name, content, lastModified) {
+            private boolean _released;
+
+            @Override
+            protected synchronized void onStreamClosed() {
+                if (_released)
+                    return;
+
+                _released = true;
+                release(reservedBytes);
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        _ioThreads.shutdownNow();
+    }
+
+    private synchronized void reserve(long bytes) throws InterruptedIOException {
+        try {
+            while (_availableBytes < bytes)
+                wait();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for prefetch space");
+        }
+
+        _availableBytes -= bytes;
+    }
+
+    private synchronized void release(long bytes) {
+        _availableBytes += bytes;
+        notifyAll();
+    }
+
+    private final class PrefetchedPageInput implements PageInput {
+        private final FilePageInput _file;
+        private final Future<byte[]> _content;
+        private final long _reservedBytes;
+        private boolean _released;
+
+        private PrefetchedPageInput(FilePageInput file, Future<byte[]> content, long reservedBytes) {
+            _file = file;
+            _content = content;
+            _reservedBytes = reservedBytes;
+        }
+
+        @Override
+        public String getId() {
+            return _file.getId();
+        }
+
+        @Override
+        public String getName() {
+            return _file.getName();
+        }
+
+        @Override
+        public long getSize() {
+            return _file.getSize();
+        }
+
+        @Override
+        public long getLastModified() {
+            return _file.getLastModified();
+        }
+
+        @Override
+        public InputStream openStream() throws IOException {
+            byte[] content;
+            try {
+                content = _content.get();
+            }
+            catch (InterruptedException e) {
+                releaseOnce();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading: " + _file);
+            }
+            catch (ExecutionException e) {
+                releaseOnce();
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException)
+                    throw (IOException) cause;
+                throw new IOException("Error reading: " + _file, cause);
+            }
+
+            // the prefetch space is given back once the page was parsed and the stream is closed
+            return new ByteArrayInputStream(content) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    releaseOnce();
+                }
+            };
+        }
+
+        private synchronized void releaseOnce() {
+            if (_released)
+                return;
+
+            _released = true;
+            release(_reservedBytes);
+        }
+
+        @Override
+        public String toString() {
+            return _file.toString();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package edu.illinois.i3.emop.apps.statsbuilder.pipeline;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Receives the candidate page files found while enumerating the corpus. Depending on how the corpus
+ * is enumerated, the handler may be called concurrently from multiple threads.
+ */
+public interface PageFileHandler {
+
+    /**
+     * @param file  The file
+     * @param attrs The file attributes
+     * @return True to continue with the next file, False to stop the enumeration
+     * @throws IOException If the file could not be handled; stops the enumeration
+     */
+    boolean handle(Path file, BasicFileAttributes attrs) throws IOException;
+
+}
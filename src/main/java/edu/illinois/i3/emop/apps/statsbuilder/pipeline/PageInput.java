@@ -0,0 +1,39 @@
+package edu.illinois.i3.emop.apps.statsbuilder.pipeline;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The raw content of a single page, as handed to the page parsers
+ */
+public interface PageInput {
+
+    /**
+     * @return A unique identifier for the page (e.g. the file path)
+     */
+    String getId();
+
+    /**
+     * @return The name of the page (file name, without any directories), used for extracting the page number
+     */
+    String getName();
+
+    /**
+     * @return The size of the page content, in bytes
+     */
+    long getSize();
+
+    /**
+     * @return The time the page was last modified, in milliseconds since the epoch
+     */
+    long getLastModified();
+
+    /**
+     * Opens the page content; the caller must close the returned stream once the page was parsed.
+     *
+     * @return The page content
+     * @throws IOException If the page content could not be read
+     */
+    InputStream openStream() throws IOException;
+
+}
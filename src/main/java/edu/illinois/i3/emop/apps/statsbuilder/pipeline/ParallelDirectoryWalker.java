@@ -0,0 +1,113 @@
+package edu.illinois.i3.emop.apps.statsbuilder.pipeline;
+
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Walks a directory tree using a fork-join pool, listing sibling subdirectories concurrently. Files are passed
+ * to the handler as soon as they are found, from the walker threads, so the handler must be thread-safe.
+ * Unlike {@link Files#walkFileTree}, the order in which files are found is not deterministic.
+ *
+ * As with {@link Files#walkFileTree}, symbolic links are not followed.
+ */
+public class ParallelDirectoryWalker {
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelDirectoryWalker.class);
+
+    private final int _threadCount;
+
+    public ParallelDirectoryWalker(int threadCount) {
+        if (threadCount < 1)
+            throw new IllegalArgumentException("Invalid thread count: " + threadCount);
+
+        _threadCount = threadCount;
+    }
+
+    /**
+     * Walks the directory tree, stopping early if the handler asks to stop, or fails.
+     *
+     * @param root    The root of the directory tree
+     * @param handler The handler receiving the files
+     * @throws IOException If a directory could not be read, or the handler failed
+     */
+    public void walk(Path root, PageFileHandler handler) throws IOException {
+        WalkState state = new WalkState(handler);
+        ForkJoinPool pool = new ForkJoinPool(_threadCount);
+
+        try {
+            pool.invoke(new DirectoryWalkTask(root, state));
+        }
+        finally {
+            pool.shutdown();
+        }
+
+        if (state._failure != null)
+            throw state._failure;
+    }
+
+    private static final class WalkState {
+        private final PageFileHandler _handler;
+        private volatile boolean _stopped;
+        private volatile IOException _failure;
+
+        private WalkState(PageFileHandler handler) {
+            _handler = handler;
+        }
+
+        private synchronized void fail(IOException e) {
+            if (_failure == null)
+                _failure = e;
+            _stopped = true;
+        }
+    }
+
+    private static final class DirectoryWalkTask extends RecursiveAction {
+        private final Path _dir;
+        private final WalkState _state;
+
+        private DirectoryWalkTask(Path dir, WalkState state) {
+            _dir = dir;
+            _state = state;
+        }
+
+        @Override
+        protected void compute() {
+            List<DirectoryWalkTask> subdirTasks = Lists.newArrayList();
+
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(_dir)) {
+                for (Path entry : entries) {
+                    if (_state._stopped)
+                        break;
+
+                    BasicFileAttributes attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    if (attrs.isDirectory()) {
+                        // start listing the subdirectory right away, while we continue with the current directory
+                        DirectoryWalkTask subdirTask = new DirectoryWalkTask(entry, _state);
+                        subdirTask.fork();
+                        subdirTasks.add(subdirTask);
+                    }
+                    else if (!_state._handler.handle(entry, attrs))
+                        _state._stopped = true;
+                }
+            }
+            catch (IOException e) {
+                log.error("Error processing directory: " + _dir, e);
+                _state.fail(e);
+            }
+
+            for (DirectoryWalkTask subdirTask : subdirTasks)
+                subdirTask.join();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package edu.illinois.i3.emop.apps.statsbuilder.pipeline;
+
+import com.google.common.collect.Maps;
+import edu.illinois.i3.emop.apps.statsbuilder.OCRPageStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Runs page processing tasks on a fixed pool of worker threads and hands the results, one at a time,
+ * to a single writer thread. Results are delivered either in submission order (using a reorder buffer)
+ * or as soon as they complete.
+ *
+ * The number of pages that have been submitted but not yet handed to the writer is bounded, so a fast
+ * producer (e.g. the directory walker) blocks instead of queueing up the whole corpus.
+ */
+public class ParallelPageProcessor implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelPageProcessor.class);
+
+    private static final int IN_FLIGHT_PAGES_PER_THREAD = 4;
+    private static final PageResult END_OF_RESULTS = new PageResult(-1, null, null, null);
+
+    public interface ResultHandler {
+        /**
+         * @param docId     The document id associated with the page
+         * @param pageInput The page
+         * @param pageStats The page statistics, or null if the page could not be processed
+         * @throws IOException If the results could not be written
+         */
+        void handle(String docId, PageInput pageInput, OCRPageStats pageStats) throws IOException;
+    }
+
+    private final ExecutorService _workers;
+    private final Thread _writer;
+    private final BlockingQueue<PageResult> _completed;
+    private final Semaphore _inFlight;
+    private final boolean _preserveOrder;
+    private final ResultHandler _resultHandler;
+
+    private volatile Throwable _failure;
+    private long _nextSequence;
+    private boolean _closed;
+
+    public ParallelPageProcessor(int threadCount, boolean preserveOrder, ResultHandler resultHandler) {
+        if (threadCount < 1)
+            throw new IllegalArgumentException("Invalid thread count: " + threadCount);
+
+        _preserveOrder = preserveOrder;
+        _resultHandler = resultHandler;
+        _inFlight = new Semaphore(threadCount * IN_FLIGHT_PAGES_PER_THREAD);
+        _completed = new LinkedBlockingQueue<>();
+        _workers = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+            private int _count = 0;
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "page-worker-" + (++_count));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        _writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeResults();
+            }
+        }, "page-writer");
+        _writer.setDaemon(true);
+        _writer.start();
+    }
+
+    /**
+     * Schedules a page for processing, blocking while the maximum number of in-flight pages is reached.
+     *
+     * @param docId     The document id associated with the page
+     * @param pageInput The page to process
+     * @param task      The task computing the page statistics (may return null if the page could not be processed)
+     * @throws IOException If an earlier page failed or the results could not be written
+     * @throws InterruptedException If interrupted while waiting for a free slot
+     */
+    public void submit(final String docId, final PageInput pageInput, final Callable<? extends OCRPageStats> task) throws IOException, InterruptedException {
+        if (_closed)
+            throw new IllegalStateException("Processor already closed");
+
+        checkFailure();
+        _inFlight.acquire();
+
+        final long sequence = _nextSequence++;
+        _workers.execute(new Runnable() {
+            @Override
+            public void run() {
+                OCRPageStats pageStats = null;
+                try {
+                    // tasks still run after a failure, so that they release any resources held by their input
+                    pageStats = task.call();
+                }
+                catch (Throwable e) {
+                    log.error("Error processing page: " + pageInput, e);
+                    _failure = e;
+                }
+                finally {
+                    _completed.add(new PageResult(sequence, docId, pageInput, pageStats));
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits for all submitted pages to be processed and written.
+     *
+     * @throws IOException If any page failed or the results could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (_closed)
+            return;
+
+        _closed = true;
+        _workers.shutdown();
+
+        try {
+            _workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            _completed.add(END_OF_RESULTS);
+            _writer.join();
+        }
+        catch (InterruptedException e) {
+            _workers.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for page processing to finish", e);
+        }
+
+        checkFailure();
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable failure = _failure;
+        if (failure == null)
+            return;
+
+        if (failure instanceof IOException)
+            throw (IOException) failure;
+
+        throw new IOException("Page processing failed", failure);
+    }
+
+    private void writeResults() {
+        // reorder buffer holding results that completed ahead of the next expected sequence number
+        Map<Long, PageResult> pending = Maps.newHashMap();
+        long nextSequence = 0;
+
+        try {
+            while (true) {
+                PageResult result = _completed.take();
+                if (result == END_OF_RESULTS)
+                    break;
+
+                if (!_preserveOrder) {
+                    write(result);
+                    continue;
+                }
+
+                pending.put(result._sequence, result);
+                while ((result = pending.remove(nextSequence)) != null) {
+                    write(result);
+                    nextSequence++;
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            log.error("Page writer interrupted", e);
+            _failure = e;
+        }
+    }
+
+    private void write(PageResult result) {
+        try {
+            if (_failure == null)
+                _resultHandler.handle(result._docId, result._pageInput, result._pageStats);
+        }
+        catch (Throwable e) {
+            log.error("Error writing results for page: " + result._pageInput, e);
+            _failure = e;
+        }
+        finally {
+            _inFlight.release();
+        }
+    }
+
+    private static final class PageResult {
+        private final long _sequence;
+        private final String _docId;
+        private final PageInput _pageInput;
+        private final OCRPageStats _pageStats;
+
+        private PageResult(long sequence, String docId, PageInput pageInput, OCRPageStats pageStats) {
+            _sequence = sequence;
+            _docId = docId;
+            _pageInput = pageInput;
+            _pageStats = pageStats;
+        }
+    }
+}
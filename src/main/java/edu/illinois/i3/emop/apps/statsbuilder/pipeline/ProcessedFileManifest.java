@@ -0,0 +1,218 @@
+package edu.illinois.i3.emop.apps.statsbuilder.pipeline;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records which pages were processed (and written to the output) so that an interrupted or repeated run can
+ * skip the pages that did not change since. Pages are identified by their id (path), size and modification time,
+ * and the manifest as a whole is tied to a fingerprint of the processing configuration (dictionaries,
+ * replacement rules, word length bins, ...) - a manifest created with a different configuration cannot be resumed.
+ *
+ * The manifest is an append-only text file:
+ * <pre>
+ * #fingerprint &lt;fingerprint&gt;
+ * &lt;size&gt;\t&lt;lastModified&gt;\t&lt;id&gt;
+ * ...
+ * #commit &lt;outputLength&gt;
+ * </pre>
+ * Entries only become effective once followed by a commit line, which records the length of the output file
+ * at the time both files were synced to disk. On resume, anything past the last commit (in both the manifest
+ * and the output) is discarded.
+ */
+public class ProcessedFileManifest implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessedFileManifest.class);
+
+    private static final String FINGERPRINT_PREFIX = "#fingerprint ";
+    private static final String COMMIT_PREFIX = "#commit ";
+
+    // commits (and the fsyncs they require) are batched
+    private static final int COMMIT_INTERVAL_ENTRIES = 1000;
+    private static final long COMMIT_INTERVAL_MILLIS = 10000;
+
+    private final File _manifestFile;
+    private final Map<String, FileState> _processed;
+    private final long _committedOutputLength;
+    private final FileOutputStream _manifestStream;
+    private final Writer _manifestWriter;
+    private int _uncommittedCount;
+    private long _lastCommitTime;
+
+    private ProcessedFileManifest(File manifestFile, Map<String, FileState> processed, long committedOutputLength,
+                                  long committedManifestLength, String fingerprint) throws IOException {
+        _manifestFile = manifestFile;
+        _processed = processed;
+        _committedOutputLength = committedOutputLength;
+
+        boolean append = committedManifestLength > 0;
+        _manifestStream = new FileOutputStream(manifestFile, append);
+        if (append)
+            _manifestStream.getChannel().truncate(committedManifestLength);
+
+        _manifestWriter = new BufferedWriter(new OutputStreamWriter(_manifestStream, Charsets.UTF_8));
+        _lastCommitTime = System.currentTimeMillis();
+        if (!append) {
+            _manifestWriter.write(FINGERPRINT_PREFIX + fingerprint + "\n");
+            _manifestWriter.flush();
+        }
+    }
+
+    /**
+     * Creates a new (empty) manifest, replacing any existing one.
+     *
+     * @param manifestFile The manifest file
+     * @param fingerprint  The fingerprint of the processing configuration
+     * @return The manifest
+     * @throws IOException If the manifest could not be created
+     */
+    public static ProcessedFileManifest create(File manifestFile, String fingerprint) throws IOException {
+        return new ProcessedFileManifest(manifestFile, Maps.<String, FileState>newHashMap(), 0, 0, fingerprint);
+    }
+
+    /**
+     * Opens an existing manifest for resuming a run, discarding any entries that were not committed.
+     *
+     * @param manifestFile The manifest file
+     * @param fingerprint  The fingerprint of the current processing configuration
+     * @return The manifest
+     * @throws IOException If the manifest could not be read, or was created with a different configuration
+     */
+    public static ProcessedFileManifest resume(File manifestFile, String fingerprint) throws IOException {
+        Map<String, FileState> processed = Maps.newHashMap();
+        List<String[]> uncommitted = Lists.newArrayList();
+        long committedOutputLength = 0;
+        long committedManifestLength = 0;
+        long manifestLength = 0;
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(manifestFile), Charsets.UTF_8))) {
+            String line = reader.readLine();
+            if (line == null || !line.startsWith(FINGERPRINT_PREFIX))
+                throw new IOException("Invalid manifest: " + manifestFile);
+
+            if (!line.substring(FINGERPRINT_PREFIX.length()).equals(fingerprint))
+                throw new IOException(String.format("Manifest %s was created with different dictionaries, replacement rules " +
+                        "or settings - cannot resume", manifestFile));
+
+            manifestLength += line.getBytes(Charsets.UTF_8).length + 1;
+            committedManifestLength = manifestLength;
+
+            while ((line = reader.readLine()) != null) {
+                manifestLength += line.getBytes(Charsets.UTF_8).length + 1;
+
+                if (line.startsWith(COMMIT_PREFIX)) {
+                    for (String[] entry : uncommitted)
+                        processed.put(entry[2], new FileState(Long.parseLong(entry[0]), Long.parseLong(entry[1])));
+                    uncommitted.clear();
+
+                    committedOutputLength = Long.parseLong(line.substring(COMMIT_PREFIX.length()));
+                    committedManifestLength = manifestLength;
+                    continue;
+                }
+
+                String[] entry = line.split("\t", 3);
+                if (entry.length != 3) {
+                    // most likely a partially written line at the end of the manifest
+                    log.warn("Ignoring invalid manifest entry: {}", line);
+                    continue;
+                }
+
+                uncommitted.add(entry);
+            }
+        }
+
+        if (!uncommitted.isEmpty())
+            log.info("Discarding {} uncommitted manifest entries", uncommitted.size());
+
+        log.info("Resuming from manifest {} ({} processed files)", manifestFile, processed.size());
+
+        return new ProcessedFileManifest(manifestFile, processed, committedOutputLength, committedManifestLength, fingerprint);
+    }
+
+    public File getManifestFile() {
+        return _manifestFile;
+    }
+
+    /**
+     * @return The length of the output file, as of the last commit; any output past this length should be discarded
+     */
+    public long getCommittedOutputLength() {
+        return _committedOutputLength;
+    }
+
+    /**
+     * Checks whether a page was processed already, and did not change since.
+     *
+     * @param id           The page id
+     * @param size         The current size of the page
+     * @param lastModified The current modification time of the page
+     * @return True if the page can be skipped, False otherwise
+     */
+    public boolean isProcessed(String id, long size, long lastModified) {
+        FileState state = _processed.get(id);
+        return state != null && state._size == size && state._lastModified == lastModified;
+    }
+
+    /**
+     * Records a page as processed; the entry becomes effective with the next commit.
+     *
+     * @param id           The page id
+     * @param size         The size of the page
+     * @param lastModified The modification time of the page
+     * @throws IOException If the entry could not be written
+     */
+    public void add(String id, long size, long lastModified) throws IOException {
+        _manifestWriter.write(Long.toString(size));
+        _manifestWriter.write('\t');
+        _manifestWriter.write(Long.toString(lastModified));
+        _manifestWriter.write('\t');
+        _manifestWriter.write(id);
+        _manifestWriter.write('\n');
+        _uncommittedCount++;
+    }
+
+    /**
+     * @return True if enough entries were added, or enough time passed, since the last commit
+     */
+    public boolean isCommitDue() {
+        return _uncommittedCount >= COMMIT_INTERVAL_ENTRIES ||
+                (_uncommittedCount > 0 && System.currentTimeMillis() - _lastCommitTime >= COMMIT_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Makes all entries added so far effective. The caller must make sure that the output corresponding to these entries
+     * was already synced to disk.
+     *
+     * @param outputLength The length of the output file
+     * @throws IOException If the commit could not be written
+     */
+    public void commit(long outputLength) throws IOException {
+        _manifestWriter.write(COMMIT_PREFIX + outputLength + "\n");
+        _manifestWriter.flush();
+        _manifestStream.getChannel().force(false);
+        _uncommittedCount = 0;
+        _lastCommitTime = System.currentTimeMillis();
+    }
+
+    @Override
+    public void close() throws IOException {
+        _manifestWriter.close();
+    }
+
+    private static final class FileState {
+        private final long _size;
+        private final long _lastModified;
+
+        private FileState(long size, long lastModified) {
+            _size = size;
+            _lastModified = lastModified;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package edu.illinois.i3.emop.apps.statsbuilder.pipeline;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Deterministically assigns documents to one of N shards, so that a corpus can be split across several nodes
+ * without any coordination. Assignment is based on a hash of the document id, so all the pages of a document
+ * end up on the same shard, regardless of where the corpus is mounted on each node.
+ */
+public class Shard {
+
+    private static final Pattern ShardSpecPattern = Pattern.compile("^(\\d+)/(\\d+)$");
+    private static final HashFunction DocIdHashFunction = Hashing.murmur3_32();
+
+    private final int _index;
+    private final int _count;
+
+    public Shard(int index, int count) {
+        if (count < 1 || index < 0 || index >= count)
+            throw new IllegalArgumentException(String.format("Invalid shard %d/%d (expected 0 <= index < count)", index, count));
+
+        _index = index;
+        _count = count;
+    }
+
+    /**
+     * Parses a shard specification of the form "i/N", where 0 &lt;= i &lt; N
+     *
+     * @param spec The shard specification
+     * @return The shard
+     */
+    public static Shard parse(String spec) {
+        Matcher matcher = ShardSpecPattern.matcher(spec.trim());
+        if (!matcher.matches())
+            throw new IllegalArgumentException("Invalid shard specification: " + spec + " (expected i/N)");
+
+        return new Shard(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+    }
+
+    public int getIndex() {
+        return _index;
+    }
+
+    public int getCount() {
+        return _count;
+    }
+
+    /**
+     * @param docId The document id
+     * @return True if the document belongs to this shard, False otherwise
+     */
+    public boolean contains(String docId) {
+        int hash = DocIdHashFunction.hashString(docId, Charsets.UTF_8).asInt();
+        return (hash & Integer.MAX_VALUE) % _count == _index;
+    }
+
+    @Override
+    public String toString() {
+        return _index + "/" + _count;
+    }
+}
@@ -0,0 +1,73 @@
+package edu.illinois.i3.emop.apps.statsbuilder.stats;
+
+/**
+ * A count-min sketch of 4-bit counters estimating how often items were seen recently, as used by TinyLFU admission:
+ * once the number of recorded occurrences reaches the sample size, all counters are halved, so the estimates
+ * favour recent popularity. Not thread-safe.
+ */
+public class FrequencySketch {
+
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = { 0x97cb3127, 0xb2a4f1c3, 0x5bd1e995, 0x9e3779b9 };
+
+    private final byte[] _counters;
+    private final int _widthMask;
+    private final int _sampleSize;
+    private int _additions;
+
+    /**
+     * @param expectedItems The number of distinct items expected to be tracked (e.g. the cache capacity)
+     */
+    public FrequencySketch(int expectedItems) {
+        int width = Integer.highestOneBit(Math.max(8, expectedItems - 1)) << 1;
+
+        _counters = new byte[DEPTH * width];
+        _widthMask = width - 1;
+        _sampleSize = 10 * Math.max(1, expectedItems);
+    }
+
+    /**
+     * Records an occurrence of an item
+     *
+     * @param hash The hash code of the item
+     */
+    public void increment(int hash) {
+        boolean added = false;
+        for (int i = 0; i < DEPTH; i++) {
+            int index = indexOf(hash, i);
+            if (_counters[index] < MAX_COUNT) {
+                _counters[index]++;
+                added = true;
+            }
+        }
+
+        if (added && ++_additions >= _sampleSize)
+            reset();
+    }
+
+    /**
+     * @param hash The hash code of the item
+     * @return The estimated number of recent occurrences of the item (at most 15)
+     */
+    public int frequency(int hash) {
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < DEPTH; i++)
+            frequency = Math.min(frequency, _counters[indexOf(hash, i)]);
+
+        return frequency;
+    }
+
+    private int indexOf(int hash, int row) {
+        int h = hash * SEEDS[row];
+        h ^= h >>> 17;
+        return row * (_widthMask + 1) + (h & _widthMask);
+    }
+
+    private void reset() {
+        for (int i = 0; i < _counters.length; i++)
+            _counters[i] >>= 1;
+
+        _additions /= 2;
+    }
+}
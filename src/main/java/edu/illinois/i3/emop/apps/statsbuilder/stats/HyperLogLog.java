@@ -0,0 +1,141 @@
+package edu.illinois.i3.emop.apps.statsbuilder.stats;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.util.Arrays;
+
+/**
+ * Estimates the number of distinct tokens of a stream with a HyperLogLog sketch (Flajolet et al., "HyperLogLog:
+ * the analysis of a near-optimal cardinality estimation algorithm"). A sketch of precision p uses 2^p bytes,
+ * and its estimates have a standard error of about 1.04 / sqrt(2^p) (e.g. 1.6% for p = 12, 0.4% for p = 16).
+ *
+ * Sketches of the same precision can be merged, and serialized with {@link #toBytes}. Not thread-safe.
+ */
+public class HyperLogLog {
+
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 18;
+
+    private static final HashFunction TokenHashFunction = Hashing.murmur3_128();
+
+    private final int _precision;
+    private final byte[] _registers;
+
+    /**
+     * @param precision The precision p (the sketch has 2^p registers)
+     */
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION)
+            throw new IllegalArgumentException(String.format("Invalid precision %d (expected %d <= precision <= %d)",
+                    precision, MIN_PRECISION, MAX_PRECISION));
+
+        _precision = precision;
+        _registers = new byte[1 << precision];
+    }
+
+    private HyperLogLog(int precision, byte[] registers) {
+        _precision = precision;
+        _registers = registers;
+    }
+
+    /**
+     * Restores a sketch serialized with {@link #toBytes}
+     *
+     * @param bytes The serialized sketch
+     * @return The sketch
+     */
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        int precision = bytes.length > 0 ? bytes[0] : -1;
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION || bytes.length != (1 << precision) + 1)
+            throw new IllegalArgumentException("Invalid HyperLogLog sketch");
+
+        return new HyperLogLog(precision, Arrays.copyOfRange(bytes, 1, bytes.length));
+    }
+
+    /**
+     * @param token The token
+     */
+    public void offer(String token) {
+        long hash = TokenHashFunction.hashString(token, Charsets.UTF_8).asLong();
+
+        // the first p bits select the register, which keeps the largest position of the first 1 bit in the rest
+        int register = (int) (hash >>> (64 - _precision));
+        int rank = Long.numberOfLeadingZeros((hash << _precision) | (1L << (_precision - 1))) + 1;
+        if (rank > _registers[register])
+            _registers[register] = (byte) rank;
+    }
+
+    /**
+     * Adds the tokens of another sketch to this one
+     *
+     * @param other The sketch to add (of the same precision)
+     */
+    public void merge(HyperLogLog other) {
+        if (other._precision != _precision)
+            throw new IllegalArgumentException(String.format("Cannot merge sketches of different precisions (%d and %d)",
+                    _precision, other._precision));
+
+        for (int i = 0; i < _registers.length; i++)
+            if (other._registers[i] > _registers[i])
+                _registers[i] = other._registers[i];
+    }
+
+    /**
+     * @return The estimated number of distinct tokens
+     */
+    public long estimate() {
+        int m = _registers.length;
+        double sum = 0;
+        int zeroCount = 0;
+        for (byte register : _registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0)
+                zeroCount++;
+        }
+
+        double estimate = getAlpha(m) * m * m / sum;
+
+        // small cardinalities are better estimated by linear counting (a 64 bit hash needs no large range correction)
+        if (estimate <= 2.5 * m && zeroCount > 0)
+            estimate = m * Math.log((double) m / zeroCount);
+
+        return Math.round(estimate);
+    }
+
+    public int getPrecision() {
+        return _precision;
+    }
+
+    public HyperLogLog copy() {
+        return new HyperLogLog(_precision, _registers.clone());
+    }
+
+    /**
+     * @return The serialized sketch: the precision, followed by the registers
+     */
+    public byte[] toBytes() {
+        byte[] bytes = new byte[_registers.length + 1];
+        bytes[0] = (byte) _precision;
+        System.arraycopy(_registers, 0, bytes, 1, _registers.length);
+
+        return bytes;
+    }
+
+    private static double getAlpha(int m) {
+        switch (m) {
+            case 16:
+                return 0.673;
+
+            case 32:
+                return 0.697;
+
+            case 64:
+                return 0.709;
+
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+}
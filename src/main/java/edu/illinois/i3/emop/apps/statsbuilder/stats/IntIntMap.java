@@ -0,0 +1,100 @@
+package edu.illinois.i3.emop.apps.statsbuilder.stats;
+
+/**
+ * A map from non-negative ints (such as {@link SymbolTable} ids) to int values, using an open-addressing hash table.
+ * Absent keys map to 0. Not thread-safe.
+ */
+public class IntIntMap {
+
+    private int[] _keys;        // key + 1 for used slots, 0 for empty slots
+    private int[] _values;
+    private int _size;
+
+    public IntIntMap() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize The expected number of keys
+     */
+    public IntIntMap(int expectedSize) {
+        int capacity = Math.max(4, Integer.highestOneBit(Math.max(1, expectedSize) * 2 - 1) << 1);
+        _keys = new int[capacity];
+        _values = new int[capacity];
+    }
+
+    /**
+     * @param key The key
+     * @return The value of the key, or 0 if absent
+     */
+    public int get(int key) {
+        int mask = _keys.length - 1;
+        for (int slot = SymbolTable.mix(key) & mask; _keys[slot] != 0; slot = (slot + 1) & mask)
+            if (_keys[slot] == key + 1)
+                return _values[slot];
+
+        return 0;
+    }
+
+    /**
+     * Adds to the value of a key (absent keys having the value 0)
+     *
+     * @param key   The key (>= 0)
+     * @param delta The value to add
+     * @return The new value
+     */
+    public int add(int key, int delta) {
+        if (key < 0)
+            throw new IllegalArgumentException("Invalid key: " + key);
+
+        int mask = _keys.length - 1;
+        int slot = SymbolTable.mix(key) & mask;
+        for (; _keys[slot] != 0; slot = (slot + 1) & mask)
+            if (_keys[slot] == key + 1)
+                return _values[slot] += delta;
+
+        _keys[slot] = key + 1;
+        _values[slot] = delta;
+        if (2 * ++_size > _keys.length)
+            resize();
+
+        return delta;
+    }
+
+    /**
+     * @return The number of keys
+     */
+    public int size() {
+        return _size;
+    }
+
+    /**
+     * @return The keys, in no particular order
+     */
+    public int[] keys() {
+        int[] keys = new int[_size];
+        int i = 0;
+        for (int entry : _keys)
+            if (entry != 0)
+                keys[i++] = entry - 1;
+
+        return keys;
+    }
+
+    private void resize() {
+        int[] keys = _keys;
+        int[] values = _values;
+        _keys = new int[keys.length * 2];
+        _values = new int[values.length * 2];
+        int mask = _keys.length - 1;
+
+        for (int i = 0; i < keys.length; i++)
+            if (keys[i] != 0) {
+                int slot = SymbolTable.mix(keys[i] - 1) & mask;
+                while (_keys[slot] != 0)
+                    slot = (slot + 1) & mask;
+                _keys[slot] = keys[i];
+                _values[slot] = values[i];
+            }
+    }
+}
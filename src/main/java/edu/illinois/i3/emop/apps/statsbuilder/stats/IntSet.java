@@ -0,0 +1,86 @@
+package edu.illinois.i3.emop.apps.statsbuilder.stats;
+
+/**
+ * A set of non-negative ints (such as {@link SymbolTable} ids), using an open-addressing hash table. Not thread-safe.
+ */
+public class IntSet {
+
+    private int[] _slots;       // value + 1 for used slots, 0 for empty slots
+    private int _size;
+
+    public IntSet() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize The expected number of values
+     */
+    public IntSet(int expectedSize) {
+        _slots = new int[Math.max(4, Integer.highestOneBit(Math.max(1, expectedSize) * 2 - 1) << 1)];
+    }
+
+    /**
+     * @param value The value (>= 0)
+     * @return True if the value was added, False if the set already contained it
+     */
+    public boolean add(int value) {
+        if (value < 0)
+            throw new IllegalArgumentException("Invalid value: " + value);
+
+        int mask = _slots.length - 1;
+        int slot = SymbolTable.mix(value) & mask;
+        for (; _slots[slot] != 0; slot = (slot + 1) & mask)
+            if (_slots[slot] == value + 1)
+                return false;
+
+        _slots[slot] = value + 1;
+        if (2 * ++_size > _slots.length)
+            resize();
+
+        return true;
+    }
+
+    /**
+     * @param value The value
+     * @return True if the set contains the value, False otherwise
+     */
+    public boolean contains(int value) {
+        int mask = _slots.length - 1;
+        for (int slot = SymbolTable.mix(value) & mask; _slots[slot] != 0; slot = (slot + 1) & mask)
+            if (_slots[slot] == value + 1)
+                return true;
+
+        return false;
+    }
+
+    public int size() {
+        return _size;
+    }
+
+    /**
+     * @return The values, in no particular order
+     */
+    public int[] toArray() {
+        int[] values = new int[_size];
+        int i = 0;
+        for (int entry : _slots)
+            if (entry != 0)
+                values[i++] = entry - 1;
+
+        return values;
+    }
+
+    private void resize() {
+        int[] slots = _slots;
+        _slots = new int[slots.length * 2];
+        int mask = _slots.length - 1;
+
+        for (int entry : slots)
+            if (entry != 0) {
+                int slot = SymbolTable.mix(entry - 1) & mask;
+                while (_slots[slot] != 0)
+                    slot = (slot + 1) & mask;
+                _slots[slot] = entry;
+            }
+    }
+}
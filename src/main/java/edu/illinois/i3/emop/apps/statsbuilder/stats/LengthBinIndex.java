@@ -0,0 +1,45 @@
+package edu.illinois.i3.emop.apps.statsbuilder.stats;
+
+/**
+ * Maps lengths to the position of the first length bin containing them, using a lookup table:
+ * beyond the largest finite bin bound, every length falls into the same bin.
+ */
+public class LengthBinIndex {
+
+    private final int[] _binIndexes;
+
+    /**
+     * @param bins The length bins; a length L falls into a bin if min < L <= max (a null bound being unbounded)
+     */
+    public LengthBinIndex(Bin<Integer>[] bins) {
+        int maxBound = -1;
+        for (Bin<Integer> bin : bins) {
+            if (bin.getMin() != null)
+                maxBound = Math.max(maxBound, bin.getMin());
+            if (bin.getMax() != null)
+                maxBound = Math.max(maxBound, bin.getMax());
+        }
+
+        _binIndexes = new int[maxBound + 2];
+        for (int length = 0; length < _binIndexes.length; length++) {
+            _binIndexes[length] = -1;
+            for (int i = 0; i < bins.length; i++) {
+                Integer min = bins[i].getMin();
+                Integer max = bins[i].getMax();
+
+                if ((min == null || length > min) && (max == null || length <= max)) {
+                    _binIndexes[length] = i;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param length The length
+     * @return The position of the first bin containing the length, or -1 if none does
+     */
+    public int indexOf(int length) {
+        return _binIndexes[Math.min(length, _binIndexes.length - 1)];
+    }
+}
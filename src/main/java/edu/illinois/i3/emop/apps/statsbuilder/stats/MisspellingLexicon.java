@@ -0,0 +1,194 @@
+package edu.illinois.i3.emop.apps.statsbuilder.stats;
+
+import com.google.common.base.Charsets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Tallies the misspelled tokens of a whole corpus within a bounded amount of memory. The counts are kept in memory
+ * until their estimated size exceeds the memory budget, at which point they are spilled to disk as a run sorted
+ * by token (see {@link SpilledRuns}); at the end, the runs are merged into a single file of tab-separated token and
+ * count lines, sorted by token.
+ *
+ * The tokens are expected not to contain tabs or line breaks (the tokenizers split on whitespace).
+ */
+public class MisspellingLexicon implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(MisspellingLexicon.class);
+
+    // the estimated memory used by each token besides its characters (String, char[] header, table slots and count)
+    private static final int ENTRY_OVERHEAD_BYTES = 80;
+
+    private static final Comparator<Entry> ENTRY_ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry entry1, Entry entry2) {
+            return entry1._token.compareTo(entry2._token);
+        }
+    };
+
+    /**
+     * Entries are written as (UTF-8 byte length, UTF-8 bytes, count)
+     */
+    private static final SpilledRuns.RecordCodec<Entry> ENTRY_CODEC = new SpilledRuns.RecordCodec<Entry>() {
+        @Override
+        public void write(DataOutput output, Entry entry) throws IOException {
+            byte[] bytes = entry._token.getBytes(Charsets.UTF_8);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+            output.writeLong(entry._count);
+        }
+
+        @Override
+        public Entry read(DataInput input) throws IOException {
+            byte[] bytes = new byte[input.readInt()];
+            input.readFully(bytes);
+
+            return new Entry(new String(bytes, Charsets.UTF_8), input.readLong());
+        }
+    };
+
+    private final long _memoryBudget;
+    private final SpilledRuns<Entry> _runs;
+
+    private SymbolTable _tokens = new SymbolTable();
+    private long[] _counts = new long[1024];
+    private long _memoryUsed;
+
+    /**
+     * @param memoryBudget The (approximate) number of bytes of memory to use for the counts
+     * @param spillDir     The directory for the temporary runs
+     */
+    public MisspellingLexicon(long memoryBudget, File spillDir) {
+        _memoryBudget = memoryBudget;
+        _runs = new SpilledRuns<>("misspellings", spillDir, ENTRY_ORDER, ENTRY_CODEC);
+    }
+
+    /**
+     * Adds the misspellings of a page
+     *
+     * @param misspellings The misspelled tokens
+     * @param counts       The number of occurrences of each misspelled token, by position in misspellings
+     * @throws IOException If the counts could not be spilled to disk
+     */
+    public synchronized void add(String[] misspellings, int[] counts) throws IOException {
+        for (int i = 0; i < misspellings.length; i++) {
+            int id = _tokens.intern(misspellings[i]);
+            if (id == _counts.length)
+                _counts = Arrays.copyOf(_counts, _counts.length * 2);
+
+            if (_counts[id] == 0)
+                _memoryUsed += ENTRY_OVERHEAD_BYTES + 2L * misspellings[i].length();
+            _counts[id] += counts[i];
+        }
+
+        if (_memoryUsed > _memoryBudget)
+            spill();
+    }
+
+    /**
+     * Writes the misspelled tokens of all the pages added, and their total counts, sorted by token
+     *
+     * @param outputFile The output file
+     * @return The number of distinct misspelled tokens
+     * @throws IOException If the output could not be written
+     */
+    public synchronized long write(File outputFile) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFile), Charsets.UTF_8))) {
+            // the counts of a token spilled to several runs are merged into a single line
+            EntryWriter entryWriter = new EntryWriter(writer);
+            if (_runs.size() == 0)
+                writeSorted(entryWriter);
+            else {
+                spill();
+                _runs.merge(null, entryWriter);
+            }
+            entryWriter.flush();
+
+            return entryWriter._distinctCount;
+        }
+    }
+
+    /**
+     * Deletes the temporary runs left
+     */
+    @Override
+    public synchronized void close() {
+        _runs.close();
+    }
+
+    private void spill() throws IOException {
+        if (_tokens.size() == 0)
+            return;
+
+        try (SpilledRuns.RunWriter<Entry> runWriter = _runs.newRun()) {
+            log.debug("Spilling {} misspellings to {}", _tokens.size(), runWriter.getRun());
+            writeSorted(runWriter);
+        }
+
+        _tokens = new SymbolTable();
+        _counts = new long[1024];
+        _memoryUsed = 0;
+    }
+
+    private void writeSorted(SpilledRuns.RecordSink<Entry> sink) throws IOException {
+        String[] tokens = new String[_tokens.size()];
+        for (int id = 0; id < tokens.length; id++)
+            tokens[id] = _tokens.get(id);
+        Arrays.sort(tokens);
+
+        for (String token : tokens)
+            sink.write(new Entry(token, _counts[_tokens.intern(token)]));
+    }
+
+    private static final class Entry {
+        private final String _token;
+        private final long _count;
+
+        private Entry(String token, long count) {
+            _token = token;
+            _count = count;
+        }
+    }
+
+    /**
+     * Writes the entries, sorted by token, as lines; consecutive entries of the same token are added up
+     */
+    private static final class EntryWriter implements SpilledRuns.RecordSink<Entry> {
+        private final Writer _writer;
+        private String _token;
+        private long _count;
+        private long _distinctCount;
+
+        private EntryWriter(Writer writer) {
+            _writer = writer;
+        }
+
+        @Override
+        public void write(Entry entry) throws IOException {
+            if (entry._token.equals(_token)) {
+                _count += entry._count;
+                return;
+            }
+
+            flush();
+            _token = entry._token;
+            _count = entry._count;
+        }
+
+        private void flush() throws IOException {
+            if (_token == null)
+                return;
+
+            _writer.write(_token);
+            _writer.write('\t');
+            _writer.write(Long.toString(_count));
+            _writer.write('\n');
+            _distinctCount++;
+            _token = null;
+        }
+    }
+}
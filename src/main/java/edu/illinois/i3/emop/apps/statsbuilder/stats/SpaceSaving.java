@@ -0,0 +1,233 @@
+package edu.illinois.i3.emop.apps.statsbuilder.stats;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the most frequent tokens of a weighted stream in constant memory, using the Space-Saving algorithm
+ * (Metwally et al., "Efficient Computation of Frequent and Top-k Elements in Data Streams"): at most capacity tokens
+ * are counted, and an untracked token replaces the tracked token with the smallest count, inheriting that count
+ * as its (over)estimation error. The count of a tracked token is at most its error above its true count, and
+ * any token occurring more than (total count / capacity) times is tracked.
+ *
+ * Summaries can be merged (Agarwal et al., "Mergeable Summaries"). Not thread-safe.
+ */
+public class SpaceSaving {
+
+    private static final Comparator<Entry> BY_COUNT_DESCENDING = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry entry1, Entry entry2) {
+            int cmp = Long.compare(entry2._count, entry1._count);
+            return cmp != 0 ? cmp : Long.compare(entry1._error, entry2._error);
+        }
+    };
+
+    private final int _capacity;
+    private final Map<String, Integer> _positions;      // position of each tracked token in the heap
+    private final String[] _tokens;                     // min-heap of the tracked tokens, by count
+    private final long[] _counts;
+    private final long[] _errors;
+    private int _size;
+    private long _totalCount;
+    private long _maxUntrackedCount;                    // the maximum number of occurrences of an untracked token
+
+    /**
+     * @param capacity The maximum number of tokens tracked
+     */
+    public SpaceSaving(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+
+        _capacity = capacity;
+        _positions = Maps.newHashMapWithExpectedSize(capacity);
+        _tokens = new String[capacity];
+        _counts = new long[capacity];
+        _errors = new long[capacity];
+    }
+
+    /**
+     * @param token The token
+     * @param count The number of occurrences of the token (> 0)
+     */
+    public void offer(String token, long count) {
+        _totalCount += count;
+
+        Integer position = _positions.get(token);
+        if (position != null) {
+            _counts[position] += count;
+            siftDown(position);
+        }
+        else if (_size < _capacity) {
+            _tokens[_size] = token;
+            _counts[_size] = count;
+            _errors[_size] = 0;
+            _positions.put(token, _size);
+            siftUp(_size++);
+        }
+        else {
+            // replace the token with the smallest count
+            _positions.remove(_tokens[0]);
+            _maxUntrackedCount = Math.max(_maxUntrackedCount, _counts[0]);
+            _tokens[0] = token;
+            _errors[0] = _counts[0];
+            _counts[0] += count;
+            _positions.put(token, 0);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Adds the tokens of another summary to this one
+     *
+     * @param other The summary to add
+     */
+    public void merge(SpaceSaving other) {
+        // a token not tracked by a summary may have occurred up to its maximum untracked count times
+        long minCount = _maxUntrackedCount;
+        long otherMinCount = other._maxUntrackedCount;
+
+        Map<String, Entry> entries = Maps.newHashMapWithExpectedSize(_size + other._size);
+        for (int i = 0; i < _size; i++)
+            entries.put(_tokens[i], new Entry(_tokens[i], _counts[i] + otherMinCount, _errors[i] + otherMinCount));
+
+        for (int i = 0; i < other._size; i++) {
+            Entry entry = entries.get(other._tokens[i]);
+            if (entry != null) {
+                entry._count += other._counts[i] - otherMinCount;
+                entry._error += other._errors[i] - otherMinCount;
+            }
+            else
+                entries.put(other._tokens[i],
+                        new Entry(other._tokens[i], other._counts[i] + minCount, other._errors[i] + minCount));
+        }
+
+        List<Entry> merged = Lists.newArrayList(entries.values());
+        Collections.sort(merged, BY_COUNT_DESCENDING);
+
+        _maxUntrackedCount = minCount + otherMinCount;
+        if (merged.size() > _capacity)
+            _maxUntrackedCount = Math.max(_maxUntrackedCount, merged.get(_capacity)._count);
+
+        _positions.clear();
+        _size = 0;
+        for (Entry entry : merged.subList(0, Math.min(_capacity, merged.size()))) {
+            _tokens[_size] = entry._token;
+            _counts[_size] = entry._count;
+            _errors[_size] = entry._error;
+            _positions.put(entry._token, _size);
+            siftUp(_size++);
+        }
+
+        _totalCount += other._totalCount;
+    }
+
+    /**
+     * @return The tracked tokens, by decreasing count
+     */
+    public List<Entry> getEntries() {
+        List<Entry> entries = Lists.newArrayListWithCapacity(_size);
+        for (int i = 0; i < _size; i++)
+            entries.add(new Entry(_tokens[i], _counts[i], _errors[i]));
+        Collections.sort(entries, BY_COUNT_DESCENDING);
+
+        return entries;
+    }
+
+    /**
+     * @return The maximum number of occurrences of an untracked token, which also bounds the errors of the counts
+     */
+    public long getMaxError() {
+        return _maxUntrackedCount;
+    }
+
+    /**
+     * @return The total number of occurrences offered
+     */
+    public long getTotalCount() {
+        return _totalCount;
+    }
+
+    public int size() {
+        return _size;
+    }
+
+    private void siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (_counts[parent] <= _counts[position])
+                break;
+
+            swap(position, parent);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        while (true) {
+            int smallest = position;
+            int left = 2 * position + 1;
+            int right = left + 1;
+            if (left < _size && _counts[left] < _counts[smallest])
+                smallest = left;
+            if (right < _size && _counts[right] < _counts[smallest])
+                smallest = right;
+            if (smallest == position)
+                break;
+
+            swap(position, smallest);
+            position = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        String token = _tokens[i];
+        _tokens[i] = _tokens[j];
+        _tokens[j] = token;
+
+        long count = _counts[i];
+        _counts[i] = _counts[j];
+        _counts[j] = count;
+
+        long error = _errors[i];
+        _errors[i] = _errors[j];
+        _errors[j] = error;
+
+        _positions.put(_tokens[i], i);
+        _positions.put(_tokens[j], j);
+    }
+
+    public static final class Entry {
+        private final String _token;
+        private long _count;
+        private long _error;
+
+        private Entry(String token, long count, long error) {
+            _token = token;
+            _count = count;
+            _error = error;
+        }
+
+        public String getToken() {
+            return _token;
+        }
+
+        /**
+         * @return The estimated number of occurrences of the token (never less than the true number)
+         */
+        public long getCount() {
+            return _count;
+        }
+
+        /**
+         * @return The maximum overestimation of the count
+         */
+        public long getError() {
+            return _error;
+        }
+    }
+}
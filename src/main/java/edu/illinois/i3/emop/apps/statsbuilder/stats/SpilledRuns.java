@@ -0,0 +1,267 @@
+package edu.illinois.i3.emop.apps.statsbuilder.stats;
+
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sorted runs of records spilled to temporary files, for sorting or aggregating more records than fit in memory.
+ * The runs are merged k ways at a time into a single sorted sequence; records that compare equal are taken from
+ * the earlier runs first, so that a stable sort of chunks of the records in order gives a stable sort of all of them.
+ *
+ * Run files are sequences of records (as written by the codec), each preceded by a true boolean, and end with
+ * a false boolean.
+ */
+public class SpilledRuns<T> implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(SpilledRuns.class);
+
+    // the maximum number of runs merged at once, each needing its own read buffer
+    private static final int MERGE_FAN_IN = 64;
+
+    private static final int RUN_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Writes and reads the records of the runs
+     */
+    public interface RecordCodec<T> {
+        void write(DataOutput output, T record) throws IOException;
+
+        T read(DataInput input) throws IOException;
+    }
+
+    public interface RecordSink<T> {
+        void write(T record) throws IOException;
+    }
+
+    private final String _prefix;
+    private final File _spillDir;
+    private final Comparator<? super T> _order;
+    private final RecordCodec<T> _codec;
+    private final List<File> _runs = Lists.newArrayList();
+
+    /**
+     * @param prefix   The prefix of the names of the run files
+     * @param spillDir The directory for the run files
+     * @param order    The order of the records in the runs
+     * @param codec    The codec of the records
+     */
+    public SpilledRuns(String prefix, File spillDir, Comparator<? super T> order, RecordCodec<T> codec) {
+        _prefix = prefix;
+        _spillDir = spillDir;
+        _order = order;
+        _codec = codec;
+    }
+
+    /**
+     * @return The number of runs
+     */
+    public int size() {
+        return _runs.size();
+    }
+
+    /**
+     * Starts a new run, after the existing ones
+     *
+     * @return The writer of the run, to which the records must be written in order
+     * @throws IOException If the run file could not be created
+     */
+    public RunWriter<T> newRun() throws IOException {
+        File run = createRun();
+        _runs.add(run);
+
+        return new RunWriter<>(run, _codec);
+    }
+
+    /**
+     * Merges the runs, and deletes them
+     *
+     * @param memoryRun The sorted records of a last run kept in memory (may be null)
+     * @param sink      The sink of the merged records
+     * @throws IOException If the runs could not be read, or the merged records written
+     */
+    public void merge(final Iterator<T> memoryRun, RecordSink<T> sink) throws IOException {
+        try {
+            while (_runs.size() > MERGE_FAN_IN) {
+                List<File> runs = Lists.newArrayList(_runs.subList(0, MERGE_FAN_IN));
+                _runs.subList(0, MERGE_FAN_IN).clear();
+
+                // the merged run takes the place of the runs merged, before the later ones
+                File run = createRun();
+                _runs.add(0, run);
+
+                log.debug("Merging {} runs into {}", runs.size(), run);
+                try {
+                    List<RecordSource<T>> sources = open(runs);
+                    try (RunWriter<T> runWriter = new RunWriter<>(run, _codec)) {
+                        merge(sources, runWriter);
+                    }
+                }
+                finally {
+                    delete(runs);
+                }
+            }
+
+            List<RecordSource<T>> sources = open(_runs);
+            if (memoryRun != null)
+                sources.add(new RecordSource<T>() {
+                    @Override
+                    public T next() {
+                        return memoryRun.hasNext() ? memoryRun.next() : null;
+                    }
+
+                    @Override
+                    public void close() {
+                    }
+                });
+
+            merge(sources, sink);
+        }
+        finally {
+            close();
+        }
+    }
+
+    /**
+     * Deletes the runs left
+     */
+    @Override
+    public void close() {
+        delete(_runs);
+        _runs.clear();
+    }
+
+    private void merge(List<RecordSource<T>> sources, RecordSink<T> sink) throws IOException {
+        PriorityQueue<SourceHead<T>> heads = new PriorityQueue<>(Math.max(1, sources.size()), new Comparator<SourceHead<T>>() {
+            @Override
+            public int compare(SourceHead<T> h1, SourceHead<T> h2) {
+                int c = _order.compare(h1._record, h2._record);
+                return c != 0 ? c : Integer.compare(h1._source, h2._source);
+            }
+        });
+
+        try {
+            for (int i = 0, iMax = sources.size(); i < iMax; i++) {
+                T record = sources.get(i).next();
+                if (record != null)
+                    heads.add(new SourceHead<>(i, record));
+            }
+
+            while (!heads.isEmpty()) {
+                SourceHead<T> head = heads.poll();
+                sink.write(head._record);
+
+                T record = sources.get(head._source).next();
+                if (record != null)
+                    heads.add(new SourceHead<>(head._source, record));
+            }
+        }
+        finally {
+            for (RecordSource<T> source : sources)
+                source.close();
+        }
+    }
+
+    private List<RecordSource<T>> open(List<File> runs) throws IOException {
+        List<RecordSource<T>> sources = Lists.newArrayListWithCapacity(runs.size() + 1);
+        try {
+            for (File run : runs)
+                sources.add(new RunReader<>(run, _codec));
+        }
+        catch (IOException e) {
+            for (RecordSource<T> source : sources)
+                source.close();
+            throw e;
+        }
+
+        return sources;
+    }
+
+    private File createRun() throws IOException {
+        File run = File.createTempFile(_prefix, ".run", _spillDir);
+        run.deleteOnExit();
+
+        return run;
+    }
+
+    private static void delete(List<File> runs) {
+        for (File run : runs)
+            if (!run.delete())
+                log.warn("Could not delete {}", run);
+    }
+
+    private interface RecordSource<T> extends Closeable {
+        /**
+         * @return The next record, or null at the end
+         */
+        T next() throws IOException;
+    }
+
+    private static final class SourceHead<T> {
+        private final int _source;
+        private final T _record;
+
+        private SourceHead(int source, T record) {
+            _source = source;
+            _record = record;
+        }
+    }
+
+    public static final class RunWriter<T> implements RecordSink<T>, Closeable {
+        private final File _run;
+        private final RecordCodec<T> _codec;
+        private final DataOutputStream _output;
+
+        private RunWriter(File run, RecordCodec<T> codec) throws IOException {
+            _run = run;
+            _codec = codec;
+            _output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), RUN_BUFFER_SIZE));
+        }
+
+        public File getRun() {
+            return _run;
+        }
+
+        @Override
+        public void write(T record) throws IOException {
+            _output.writeBoolean(true);
+            _codec.write(_output, record);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                _output.writeBoolean(false);
+            }
+            finally {
+                _output.close();
+            }
+        }
+    }
+
+    private static final class RunReader<T> implements RecordSource<T> {
+        private final RecordCodec<T> _codec;
+        private final DataInputStream _input;
+
+        private RunReader(File run, RecordCodec<T> codec) throws IOException {
+            _codec = codec;
+            _input = new DataInputStream(new BufferedInputStream(new FileInputStream(run), RUN_BUFFER_SIZE));
+        }
+
+        @Override
+        public T next() throws IOException {
+            return _input.readBoolean() ? _codec.read(_input) : null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            _input.close();
+        }
+    }
+}
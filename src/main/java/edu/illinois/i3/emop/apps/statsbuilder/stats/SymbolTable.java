@@ -0,0 +1,143 @@
+package edu.illinois.i3.emop.apps.statsbuilder.stats;
+
+import com.google.common.base.Charsets;
+
+import java.util.Arrays;
+
+/**
+ * Interns strings to dense int ids (0, 1, 2...), using an open-addressing hash table. Not thread-safe.
+ */
+public class SymbolTable {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private String[] _symbols;
+    private int[] _slots;       // id + 1 for used slots, 0 for empty slots
+    private int _size;
+
+    public SymbolTable() {
+        _symbols = new String[INITIAL_CAPACITY / 2];
+        _slots = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * @param symbol The string
+     * @return The id of the string, assigning the next id if the string was not seen before
+     */
+    public int intern(String symbol) {
+        int mask = _slots.length - 1;
+        for (int slot = mix(symbol.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+            int entry = _slots[slot];
+            if (entry == 0)
+                break;
+
+            if (_symbols[entry - 1].equals(symbol))
+                return entry - 1;
+        }
+
+        return add(symbol);
+    }
+
+    /**
+     * Same as {@link #intern(String)} for the string of the given ASCII characters, without creating the string
+     * unless it was not seen before
+     *
+     * @param ascii  The ASCII characters (bytes < 0x80)
+     * @param offset The position of the first character
+     * @param length The number of characters
+     * @return The id of the string
+     */
+    public int intern(byte[] ascii, int offset, int length) {
+        int id = find(ascii, offset, length);
+        return id >= 0 ? id : add(new String(ascii, offset, length, Charsets.US_ASCII));
+    }
+
+    /**
+     * @param ascii  The ASCII characters (bytes < 0x80)
+     * @param offset The position of the first character
+     * @param length The number of characters
+     * @return The id of the string of the given characters, or -1 if it was not interned
+     */
+    public int find(byte[] ascii, int offset, int length) {
+        // the hash code of the string
+        int hash = 0;
+        for (int i = offset, iMax = offset + length; i < iMax; i++)
+            hash = 31 * hash + ascii[i];
+
+        int mask = _slots.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int entry = _slots[slot];
+            if (entry == 0)
+                return -1;
+
+            if (equals(_symbols[entry - 1], ascii, offset, length))
+                return entry - 1;
+        }
+    }
+
+    private int add(String symbol) {
+        // keep the table at most half full
+        if (_size == _symbols.length) {
+            _symbols = Arrays.copyOf(_symbols, _size * 2);
+            _slots = new int[_slots.length * 2];
+            for (int id = 0; id < _size; id++)
+                insert(id);
+        }
+
+        _symbols[_size] = symbol;
+        insert(_size);
+
+        return _size++;
+    }
+
+    /**
+     * @param id The id
+     * @return The string with the given id
+     */
+    public String get(int id) {
+        if (id < 0 || id >= _size)
+            throw new IndexOutOfBoundsException("Invalid symbol id: " + id);
+
+        return _symbols[id];
+    }
+
+    /**
+     * @return The number of interned strings
+     */
+    public int size() {
+        return _size;
+    }
+
+    /**
+     * Forgets all the interned strings; the ids previously assigned are reused
+     */
+    public void clear() {
+        _symbols = new String[INITIAL_CAPACITY / 2];
+        _slots = new int[INITIAL_CAPACITY];
+        _size = 0;
+    }
+
+    private static boolean equals(String symbol, byte[] ascii, int offset, int length) {
+        if (symbol.length() != length)
+            return false;
+
+        for (int i = 0; i < length; i++)
+            if (symbol.charAt(i) != ascii[offset + i])
+                return false;
+
+        return true;
+    }
+
+    private void insert(int id) {
+        int mask = _slots.length - 1;
+        int slot = mix(_symbols[id].hashCode()) & mask;
+        while (_slots[slot] != 0)
+            slot = (slot + 1) & mask;
+        _slots[slot] = id + 1;
+    }
+
+    static int mix(int hash) {
+        hash *= 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,113 @@
+package edu.illinois.i3.emop.apps.statsbuilder.stats;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.BaseEncoding;
+
+import java.util.List;
+
+/**
+ * The {@link HyperLogLog} sketches of the unique tokens, unique correct tokens and unique misspelled tokens
+ * of pages, documents or a whole corpus.
+ *
+ * The sketches are serialized as CSV rows of (id, unique, uniqueCorrect, uniqueMisspelled), each sketch
+ * being base64 encoded, so the sketches of several runs (e.g. shards) can be combined.
+ */
+public class UniqueTokenSketches {
+
+    public static final String[] CSV_HEADER = { "docId", "unique", "uniqueCorrect", "uniqueMisspelled" };
+
+    // the id of the sketches of a whole corpus
+    public static final String CORPUS_ID = "#corpus";
+
+    private final HyperLogLog _unique;
+    private final HyperLogLog _uniqueCorrect;
+    private final HyperLogLog _uniqueMisspelled;
+
+    /**
+     * @param precision The precision of the sketches (see {@link HyperLogLog})
+     */
+    public UniqueTokenSketches(int precision) {
+        this(new HyperLogLog(precision), new HyperLogLog(precision), new HyperLogLog(precision));
+    }
+
+    private UniqueTokenSketches(HyperLogLog unique, HyperLogLog uniqueCorrect, HyperLogLog uniqueMisspelled) {
+        _unique = unique;
+        _uniqueCorrect = uniqueCorrect;
+        _uniqueMisspelled = uniqueMisspelled;
+    }
+
+    /**
+     * @param precision           The precision of the sketches
+     * @param uniqueTokens        The unique tokens
+     * @param uniqueCorrectTokens The unique correct tokens
+     * @param misspellings        The unique misspelled tokens
+     * @return The sketches of the given tokens
+     */
+    public static UniqueTokenSketches of(int precision, String[] uniqueTokens, String[] uniqueCorrectTokens, String[] misspellings) {
+        UniqueTokenSketches sketches = new UniqueTokenSketches(precision);
+        for (String token : uniqueTokens)
+            sketches._unique.offer(token);
+        for (String token : uniqueCorrectTokens)
+            sketches._uniqueCorrect.offer(token);
+        for (String token : misspellings)
+            sketches._uniqueMisspelled.offer(token);
+
+        return sketches;
+    }
+
+    /**
+     * @param row A CSV row, as created by {@link #toCsvRow}
+     * @return The sketches
+     */
+    public static UniqueTokenSketches fromCsvRow(List<String> row) {
+        if (row.size() != CSV_HEADER.length)
+            throw new IllegalArgumentException("Invalid sketches row: " + row);
+
+        BaseEncoding base64 = BaseEncoding.base64();
+
+        return new UniqueTokenSketches(
+                HyperLogLog.fromBytes(base64.decode(row.get(1))),
+                HyperLogLog.fromBytes(base64.decode(row.get(2))),
+                HyperLogLog.fromBytes(base64.decode(row.get(3))));
+    }
+
+    public HyperLogLog getUnique() {
+        return _unique;
+    }
+
+    public HyperLogLog getUniqueCorrect() {
+        return _uniqueCorrect;
+    }
+
+    public HyperLogLog getUniqueMisspelled() {
+        return _uniqueMisspelled;
+    }
+
+    /**
+     * Adds the tokens of other sketches to these
+     *
+     * @param other The sketches to add
+     */
+    public void merge(UniqueTokenSketches other) {
+        _unique.merge(other._unique);
+        _uniqueCorrect.merge(other._uniqueCorrect);
+        _uniqueMisspelled.merge(other._uniqueMisspelled);
+    }
+
+    public UniqueTokenSketches copy() {
+        return new UniqueTokenSketches(_unique.copy(), _uniqueCorrect.copy(), _uniqueMisspelled.copy());
+    }
+
+    /**
+     * @param id The id of the sketches (a document id, or CORPUS_ID)
+     * @return The CSV row for the sketches, matching CSV_HEADER
+     */
+    public List<String> toCsvRow(String id) {
+        BaseEncoding base64 = BaseEncoding.base64();
+
+        return Lists.newArrayList(id,
+                base64.encode(_unique.toBytes()),
+                base64.encode(_uniqueCorrect.toBytes()),
+                base64.encode(_uniqueMisspelled.toBytes()));
+    }
+}
@@ -0,0 +1,45 @@
+package edu.illinois.i3.emop.apps.statsbuilder.stats;
+
+import org.apache.commons.math3.stat.descriptive.StatisticalSummary;
+
+/**
+ * Computes the word length bins based on the word length statistics of the dictionaries
+ */
+public class WordLengthBins {
+
+    public static final BinFactory<Integer> WordLengthBinFactory = new BinFactory<Integer>() {
+        @Override
+        public Bin<Integer> createBin(Double min, Double max) {
+            return new Bin<>(
+                    min != null ? (int) Math.ceil(min) : null,
+                    max != null ? (int) Math.ceil(max) : null
+            );
+        }
+    };
+
+    /**
+     * @param stat The word length statistics
+     * @return The word length bins
+     */
+    public static Bin[] fromStatistics(StatisticalSummary stat) {
+        return getStatisticalBins(stat, WordLengthBinFactory);
+    }
+
+    public static Bin[] getStatisticalBins(StatisticalSummary stat, BinFactory binFactory) {
+        Bin[] bins = new Bin[8];
+
+        double mean = stat.getMean();
+        double stdev = stat.getStandardDeviation();
+
+        Double low = null;
+        for (int i = -3; i <= 3; i++) {
+            double high = mean + i * stdev;
+            bins[i+3] = binFactory.createBin(low, high);
+            low = high;
+        }
+
+        bins[7] = binFactory.createBin(low, null);
+
+        return bins;
+    }
+}
@@ -0,0 +1,216 @@
+package edu.illinois.i3.emop.apps.statsbuilder.txt;
+
+import com.google.common.base.Charsets;
+import edu.illinois.i3.emop.apps.statsbuilder.PageStatsAccumulator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+import static edu.illinois.i3.emop.apps.statsbuilder.txt.TxtTokenIterator.OTHER;
+import static edu.illinois.i3.emop.apps.statsbuilder.txt.TxtTokenIterator.WHITESPACE;
+
+/**
+ * Tokenizes UTF-8 text as it is read, producing the same tokens as {@link TxtTokenIterator}, and adds them to the
+ * statistics of a page. The ASCII characters are tokenized on the bytes of the text, and the tokens made of them
+ * only are added from those bytes, without being decoded; the runs of other bytes are decoded (the same way
+ * an InputStreamReader would decode them), and the tokens containing them are added as strings.
+ */
+class TxtByteTokenizer {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    // the character class of each ASCII character
+    private static final int[] ASCII_CLASSES = new int[128];
+
+    static {
+        for (int i = 0; i < ASCII_CLASSES.length; i++)
+            ASCII_CLASSES[i] = TxtTokenIterator.getCharClass((char) i);
+    }
+
+    private final InputStream _stream;
+    private final CharsetDecoder _decoder = Charsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private byte[] _buffer = new byte[BUFFER_SIZE];
+    private CharBuffer _chars = CharBuffer.allocate(256);
+    private int _position;                  // the position in the buffer of the next byte to read
+    private int _limit;                     // the end of the bytes in the buffer
+    private boolean _endOfText;
+
+    private int _state = WHITESPACE;        // the class of the last character read
+    private char _previousChar;
+    private boolean _mixedToken;            // true if the current token has non-ASCII characters
+    private int _tokenStart;                // the position in the buffer of the current ASCII token
+    private int _tokenEnd;
+    private final StringBuilder _tokenText = new StringBuilder();   // the current non-ASCII token
+
+    /**
+     * @param stream The text (UTF-8)
+     */
+    TxtByteTokenizer(InputStream stream) {
+        _stream = stream;
+    }
+
+    /**
+     * Reads the whole text, adding its tokens to the page statistics
+     *
+     * @param accumulator The page statistics
+     * @throws IOException If the text could not be read
+     */
+    void addTokens(PageStatsAccumulator accumulator) throws IOException {
+        while (true) {
+            if (_position == _limit && (_endOfText || !fill(getKeepStart())))
+                break;
+
+            byte b = _buffer[_position];
+            if (b >= 0) {
+                addChar(accumulator, (char) b, ASCII_CLASSES[b], _position);
+                _position++;
+                continue;
+            }
+
+            // a run of non-ASCII bytes: decode it whole, as it may end with an incomplete character
+            int end = _position + 1;
+            while (end < _limit && _buffer[end] < 0)
+                end++;
+
+            if (end == _limit && !_endOfText) {
+                fill(Math.min(getKeepStart(), _position));
+                continue;
+            }
+
+            addChars(accumulator, end);
+        }
+
+        if (_state != WHITESPACE)
+            addToken(accumulator);
+    }
+
+    /**
+     * Decodes and tokenizes the non-ASCII bytes from the current position
+     *
+     * @param accumulator The page statistics
+     * @param end         The end of the non-ASCII bytes
+     */
+    private void addChars(PageStatsAccumulator accumulator, int end) {
+        // the ASCII character that ends the run (if any) is decoded along with it, so that an incomplete character
+        // at the end of the run is replaced the same way it would be when decoding the whole text
+        boolean terminated = end < _limit;
+        int length = end - _position + (terminated ? 1 : 0);
+
+        if (_chars.capacity() < length)
+            _chars = CharBuffer.allocate(Math.max(length, _chars.capacity() * 2));
+        _chars.clear();
+
+        _decoder.reset();
+        _decoder.decode(ByteBuffer.wrap(_buffer, _position, length), _chars, true);
+        _decoder.flush(_chars);
+        _chars.flip();
+
+        int charCount = _chars.limit();
+        if (terminated && charCount > 0 && _chars.get(charCount - 1) == (char) _buffer[end])
+            // the ASCII character is tokenized from its byte
+            charCount--;
+        else
+            end = _position + length;
+
+        for (int i = 0; i < charCount; i++) {
+            char c = _chars.get(i);
+            addChar(accumulator, c, TxtTokenIterator.getCharClass(c), -1);
+        }
+
+        _position = end;
+    }
+
+    /**
+     * @param accumulator The page statistics
+     * @param c           The character
+     * @param charClass   The class of the character
+     * @param position    The position of the character in the buffer, or -1 if it is not an ASCII character
+     */
+    private void addChar(PageStatsAccumulator accumulator, char c, int charClass, int position) {
+        if (_state == WHITESPACE) {
+            if (charClass != WHITESPACE)
+                startToken(c, position);
+        }
+        else if (charClass != _state || charClass == OTHER && c != _previousChar) {
+            addToken(accumulator);
+            startToken(c, position);
+        }
+        else if (_mixedToken)
+            _tokenText.append(c);
+        else if (position < 0) {
+            // the ASCII token continues with a non-ASCII character
+            _mixedToken = true;
+            _tokenText.setLength(0);
+            for (int i = _tokenStart; i < _tokenEnd; i++)
+                _tokenText.append((char) _buffer[i]);
+            _tokenText.append(c);
+        }
+        else
+            _tokenEnd = position + 1;
+
+        _state = charClass;
+        _previousChar = c;
+    }
+
+    private void startToken(char c, int position) {
+        _mixedToken = position < 0;
+        if (_mixedToken) {
+            _tokenText.setLength(0);
+            _tokenText.append(c);
+        }
+        else {
+            _tokenStart = position;
+            _tokenEnd = position + 1;
+        }
+    }
+
+    private void addToken(PageStatsAccumulator accumulator) {
+        if (_mixedToken)
+            accumulator.add(_tokenText.toString().trim());
+        else
+            accumulator.addAscii(_buffer, _tokenStart, _tokenEnd - _tokenStart);
+    }
+
+    /**
+     * @return The position of the first byte in the buffer that is still needed
+     */
+    private int getKeepStart() {
+        return _state != WHITESPACE && !_mixedToken ? _tokenStart : _position;
+    }
+
+    /**
+     * Reads more bytes, keeping those from the given position
+     *
+     * @param keepStart The position of the first byte to keep
+     * @return False if there are no more bytes to read
+     */
+    private boolean fill(int keepStart) throws IOException {
+        int keep = _limit - keepStart;
+        if (keep == _buffer.length)
+            _buffer = Arrays.copyOf(_buffer, _buffer.length * 2);
+        else if (keep > 0)
+            System.arraycopy(_buffer, keepStart, _buffer, 0, keep);
+
+        _tokenStart -= keepStart;
+        _tokenEnd -= keepStart;
+        _position -= keepStart;
+        _limit = keep;
+
+        int count = _stream.read(_buffer, _limit, _buffer.length - _limit);
+        if (count < 0) {
+            _endOfText = true;
+            return false;
+        }
+
+        _limit += count;
+
+        return true;
+    }
+}
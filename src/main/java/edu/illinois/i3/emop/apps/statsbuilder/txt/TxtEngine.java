@@ -0,0 +1,14 @@
+package edu.illinois.i3.emop.apps.statsbuilder.txt;
+
+/**
+ * The implementation used for tokenizing text pages (both give the same statistics)
+ */
+public enum TxtEngine {
+
+    /** {@link TxtPage#streamBytes}: ASCII tokens are tokenized and counted on the bytes of the text */
+    BYTES,
+
+    /** {@link TxtPage#stream}: the text is decoded into characters before being tokenized */
+    CHARS
+
+}
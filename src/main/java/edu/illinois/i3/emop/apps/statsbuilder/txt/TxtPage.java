@@ -6,8 +6,9 @@ import com.google.common.collect.Lists;
 import edu.illinois.i3.emop.apps.statsbuilder.OCRPage;
 import edu.illinois.i3.emop.apps.statsbuilder.OCRPageStats;
 import edu.illinois.i3.emop.apps.statsbuilder.OCRToken;
+import edu.illinois.i3.emop.apps.statsbuilder.PageStatsAccumulator;
+import edu.illinois.i3.emop.apps.statsbuilder.dict.DictionaryIndex;
 import edu.illinois.i3.emop.apps.statsbuilder.exceptions.PageParserException;
-import edu.illinois.i3.spellcheck.engine.SpellDictionary;
 import opennlp.tools.tokenize.Tokenizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,8 +17,6 @@ import java.io.*;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class TxtPage extends OCRPage<OCRPageStats> {
 
@@ -25,15 +24,51 @@ public class TxtPage extends OCRPage<OCRPageStats> {
 
     private final Integer _pageNumber;
     private final List<TxtToken> _tokens;
+    private final InputStream _pageStream;  // the page text, when tokenized as it is read
+    private final boolean _byteTokenized;   // true if the ASCII tokens are added from the bytes of the text
+    private boolean _tokensRead;
 
     private TxtPage(Integer pageNumber, String[] tokens) {
         _pageNumber = pageNumber;
+        _pageStream = null;
+        _byteTokenized = false;
 
         _tokens = Lists.newArrayListWithExpectedSize(tokens.length);
         for (String token : tokens)
             _tokens.add(new TxtToken(token));
     }
 
+    private TxtPage(Integer pageNumber, InputStream pageStream, boolean byteTokenized) {
+        _pageNumber = pageNumber;
+        _pageStream = pageStream;
+        _byteTokenized = byteTokenized;
+        _tokens = null;
+    }
+
+    /**
+     * Creates a page whose text is tokenized as its statistics are calculated, the same way SimpleTokenizer
+     * would tokenize it, without reading the whole text into memory; the stream must stay open until then
+     *
+     * @param pageStream The page text (UTF-8)
+     * @param pageNumber The page number
+     * @return The page
+     */
+    public static TxtPage stream(InputStream pageStream, Integer pageNumber) {
+        return new TxtPage(pageNumber, pageStream, false);
+    }
+
+    /**
+     * Same as {@link #stream}, except that the tokens made of ASCII characters only are tokenized, classified and
+     * counted on the bytes of the text, without decoding them; the statistics are the same
+     *
+     * @param pageStream The page text (UTF-8)
+     * @param pageNumber The page number
+     * @return The page
+     */
+    public static TxtPage streamBytes(InputStream pageStream, Integer pageNumber) {
+        return new TxtPage(pageNumber, pageStream, true);
+    }
+
     public static TxtPage parse(InputStream pageStream, Integer pageNumber, Tokenizer tokenizer) throws PageParserException {
         try (BufferedReader reader = new BufferedReader(new InputStreamReader(pageStream, Charsets.UTF_8))) {
             StringBuilder sb = new StringBuilder();
@@ -52,28 +87,41 @@ public class TxtPage extends OCRPage<OCRPageStats> {
 
     public static TxtPage parse(File pageFile, Tokenizer tokenizer) throws PageParserException {
         try {
-            return parse(new FileInputStream(pageFile), getPageNumber(pageFile), tokenizer);
+            return parse(new FileInputStream(pageFile), parsePageNumber(pageFile.getName()), tokenizer);
         }
         catch (FileNotFoundException e) {
             throw new PageParserException(e);
         }
     }
 
-    private static Integer getPageNumber(File pageFile) {
-        Integer pageNumber = null;
+    /**
+     * @return The tokens of the page; if the page is tokenized as it is read, they can only be iterated once
+     */
+    @Override
+    public Iterator<? extends OCRToken> getTokenIterator() {
+        if (_tokens != null)
+            return _tokens.iterator();
 
-        String fileName = pageFile.getName();
-        Pattern pattern = Pattern.compile("^\\p{N}+");
-        Matcher matcher = pattern.matcher(fileName);
-        if (matcher.find())
-            pageNumber = Integer.parseInt(matcher.group());
+        checkTokensNotRead();
 
-        return pageNumber;
+        return new TxtTokenIterator(new InputStreamReader(_pageStream, Charsets.UTF_8));
     }
 
     @Override
-    public Iterator<? extends OCRToken> getTokenIterator() {
-        return _tokens.iterator();
+    protected void addTokens(PageStatsAccumulator accumulator) {
+        if (!_byteTokenized) {
+            super.addTokens(accumulator);
+            return;
+        }
+
+        checkTokensNotRead();
+
+        try {
+            new TxtByteTokenizer(_pageStream).addTokens(accumulator);
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     @Override
@@ -82,7 +130,27 @@ public class TxtPage extends OCRPage<OCRPageStats> {
     }
 
     @Override
-    protected OCRPageStats buildOCRPageStatsBean(SpellDictionary[] dictionaries, Map<String, String> replacementRules) {
+    public OCRPageStats calculateStatistics(DictionaryIndex dictionaryIndex, Map<String, String> replacementRules) throws PageParserException {
+        try {
+            return super.calculateStatistics(dictionaryIndex, replacementRules);
+        }
+        catch (RuntimeException e) {
+            if (e.getCause() instanceof IOException) {
+                log.error("Txt reader error", e.getCause());
+                throw new PageParserException(e.getCause());
+            }
+            throw e;
+        }
+    }
+
+    private void checkTokensNotRead() {
+        if (_tokensRead)
+            throw new IllegalStateException("The tokens of the page were already read");
+        _tokensRead = true;
+    }
+
+    @Override
+    protected OCRPageStats buildOCRPageStatsBean(DictionaryIndex dictionaryIndex, Map<String, String> replacementRules) {
         return new OCRPageStats();
     }
 }
@@ -0,0 +1,145 @@
+package edu.illinois.i3.emop.apps.statsbuilder.txt;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Tokenizes text as it is read, producing the same tokens as OpenNLP's SimpleTokenizer would for the whole text:
+ * tokens are the runs of letters, of digits, or of the same other (non-whitespace) character.
+ * Only a buffer of characters is kept in memory, which grows only for tokens longer than it.
+ *
+ * Errors reading the text are rethrown as RuntimeExceptions, caused by the IOException.
+ */
+public class TxtTokenIterator implements Iterator<TxtToken> {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    // the character classes of SimpleTokenizer
+    static final int WHITESPACE = 0;
+    static final int ALPHABETIC = 1;
+    static final int NUMERIC = 2;
+    static final int OTHER = 3;
+
+    private final Reader _reader;
+    private char[] _buffer = new char[BUFFER_SIZE];
+    private int _position;                  // the position in the buffer of the next character to read
+    private int _limit;                     // the end of the characters in the buffer
+    private int _tokenStart;                // the position in the buffer of the start of the current token
+    private int _state = WHITESPACE;        // the class of the last character read
+    private char _previousChar;
+    private boolean _endOfText;
+    private TxtToken _nextToken;
+
+    public TxtTokenIterator(Reader reader) {
+        _reader = reader;
+
+        advance();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return _nextToken != null;
+    }
+
+    @Override
+    public TxtToken next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+
+        TxtToken token = _nextToken;
+
+        // Advance to next token
+        advance();
+
+        return token;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    protected void advance() {
+        try {
+            _nextToken = readToken();
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private TxtToken readToken() throws IOException {
+        while (true) {
+            if (_position == _limit) {
+                if (_endOfText || !fill()) {
+                    _endOfText = true;
+                    if (_state == WHITESPACE)
+                        return null;
+
+                    // the last token ends with the text
+                    _state = WHITESPACE;
+                    return new TxtToken(new String(_buffer, _tokenStart, _limit - _tokenStart));
+                }
+            }
+
+            char c = _buffer[_position];
+            int charClass = getCharClass(c);
+
+            TxtToken token = null;
+            if (_state == WHITESPACE) {
+                if (charClass != WHITESPACE)
+                    _tokenStart = _position;
+            }
+            else if (charClass != _state || charClass == OTHER && c != _previousChar) {
+                token = new TxtToken(new String(_buffer, _tokenStart, _position - _tokenStart));
+                _tokenStart = _position;
+            }
+
+            _state = charClass;
+            _previousChar = c;
+            _position++;
+
+            if (token != null)
+                return token;
+        }
+    }
+
+    /**
+     * Reads more characters, keeping those of the current token
+     *
+     * @return False if there are no more characters to read
+     */
+    private boolean fill() throws IOException {
+        int keep = _state != WHITESPACE ? _limit - _tokenStart : 0;
+        if (keep == _buffer.length)
+            _buffer = Arrays.copyOf(_buffer, _buffer.length * 2);
+        else if (keep > 0)
+            System.arraycopy(_buffer, _tokenStart, _buffer, 0, keep);
+
+        _tokenStart = 0;
+        _position = _limit = keep;
+
+        int count = _reader.read(_buffer, _limit, _buffer.length - _limit);
+        if (count < 0)
+            return false;
+
+        _limit += count;
+
+        return true;
+    }
+
+    static int getCharClass(char c) {
+        // (the whitespace of SimpleTokenizer also includes the space separators, e.g. no-break spaces)
+        if (Character.isWhitespace(c) || Character.getType(c) == Character.SPACE_SEPARATOR)
+            return WHITESPACE;
+        if (Character.isLetter(c))
+            return ALPHABETIC;
+        if (Character.isDigit(c))
+            return NUMERIC;
+
+        return OTHER;
+    }
+}